@@ -18,6 +18,11 @@ public class ConfigReader {
     private final Map<String, JsonObject> dataSources = new HashMap<>();
     private final Map<String, String> prefixes = new HashMap<>();
     private final String baseURL;
+    private final JsonObject admission;
+    private final JsonObject accessLog;
+    private final JsonObject cache;
+    private final JsonObject admin;
+    private final JsonObject sparql;
 
     /**
      * Creates a new configuration reader.
@@ -27,6 +32,11 @@ public class ConfigReader {
     public ConfigReader(Reader configReader) {
         JsonObject root = new JsonParser().parse(configReader).getAsJsonObject();
         this.baseURL = root.has("baseURL") ? root.getAsJsonPrimitive("baseURL").getAsString() : null;
+        this.admission = root.has("admission") ? root.getAsJsonObject("admission") : null;
+        this.accessLog = root.has("accessLog") ? root.getAsJsonObject("accessLog") : null;
+        this.cache = root.has("cache") ? root.getAsJsonObject("cache") : null;
+        this.admin = root.has("admin") ? root.getAsJsonObject("admin") : null;
+        this.sparql = root.has("sparql") ? root.getAsJsonObject("sparql") : null;
         
         for (Entry<String, JsonElement> entry : root.getAsJsonObject("datasources").entrySet()) {
             JsonObject dataSource = entry.getValue().getAsJsonObject();
@@ -58,4 +68,49 @@ public class ConfigReader {
     public String getBaseURL() {
         return baseURL;
     }
+
+    /**
+     * Gets the admission control and rate limiting settings.
+     *
+     * @return the settings, or null if all requests are admitted
+     */
+    public JsonObject getAdmission() {
+        return admission;
+    }
+
+    /**
+     * Gets the access log settings.
+     *
+     * @return the settings, or null if requests are not logged
+     */
+    public JsonObject getAccessLog() {
+        return accessLog;
+    }
+
+    /**
+     * Gets the response cache settings.
+     *
+     * @return the settings, or null if responses are not cached
+     */
+    public JsonObject getCache() {
+        return cache;
+    }
+
+    /**
+     * Gets the settings of the admin endpoint, which updates data sources.
+     *
+     * @return the settings, or null if updates are not allowed
+     */
+    public JsonObject getAdmin() {
+        return admin;
+    }
+
+    /**
+     * Gets the settings of the preemptable SPARQL endpoint.
+     *
+     * @return the settings, or null if SPARQL queries are not evaluated
+     */
+    public JsonObject getSparql() {
+        return sparql;
+    }
 }
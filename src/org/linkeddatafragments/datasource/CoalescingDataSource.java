@@ -0,0 +1,85 @@
+package org.linkeddatafragments.datasource;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.linkeddatafragments.util.SingleFlight;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+
+/**
+ * Wraps a data source, so identical concurrent fragment requests only
+ * query the underlying data source once and share its result.
+ * <p>
+ * Every caller gets its own copy of the triples, since the servlet adds
+ * metadata and controls to the model it receives.</p>
+ *
+ * @author Bart Hanssens
+ */
+public class CoalescingDataSource implements IDataSource {
+    private final IDataSource dataSource;
+    private final SingleFlight<List<Object>, TriplePatternFragment> inFlight = new SingleFlight<>();
+
+    /**
+     * Creates a new CoalescingDataSource.
+     *
+     * @param dataSource the data source to wrap
+     */
+    public CoalescingDataSource(IDataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Gets the wrapped data source.
+     *
+     * @return the data source
+     */
+    public IDataSource getDataSource() {
+        return dataSource;
+    }
+
+    @Override
+    public TriplePatternFragment getFragment(final Resource subject, final Property predicate,
+            final RDFNode object, final long offset, final long limit) {
+        // compare terms as nodes, so equal terms of different types share a key
+        List<Object> key = Arrays.<Object>asList(
+                subject == null ? null : subject.asNode(),
+                predicate == null ? null : predicate.asNode(),
+                object == null ? null : object.asNode(),
+                offset, limit);
+
+        TriplePatternFragment fragment;
+        try {
+            fragment = inFlight.get(key, new Callable<TriplePatternFragment>() {
+                @Override
+                public TriplePatternFragment call() {
+                    return dataSource.getFragment(subject, predicate, object, offset, limit);
+                }
+            });
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        }
+
+        Model triples = ModelFactory.createDefaultModel().add(fragment.getTriples());
+        return new TriplePatternFragmentBase(triples, fragment.getTotalSize(), fragment.isComplete());
+    }
+
+    @Override
+    public String getTitle() {
+        return dataSource.getTitle();
+    }
+
+    @Override
+    public String getDescription() {
+        return dataSource.getDescription();
+    }
+}
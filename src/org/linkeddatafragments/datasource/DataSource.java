@@ -1,5 +1,10 @@
 package org.linkeddatafragments.datasource;
 
+import com.hp.hpl.jena.rdf.model.Property;
+import java.util.ArrayList;
+import java.util.List;
+import org.linkeddatafragments.util.CommonResources;
+
 /**
  *
  * @author mielvandersande
@@ -8,6 +13,10 @@ package org.linkeddatafragments.datasource;
 public abstract class DataSource implements IDataSource {
     protected String title;
     protected String description; 
+    protected long timeout = 0;
+
+    // deadline of the fragment requests of the current thread, if any
+    private final static ThreadLocal<Long> requestDeadline = new ThreadLocal<>();
 
     /**
      * 
@@ -23,6 +32,76 @@ public abstract class DataSource implements IDataSource {
         }
     }
     
+    /**
+     * Sets the time budget of a fragment request. When it is exceeded,
+     * the data source returns what it has, or gives up.
+     * 
+     * @param timeout time budget in milliseconds (0 for no limit)
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Limits the fragment requests of the current thread to a deadline, on
+     * top of the time budget of every data source, for callers with a
+     * budget of their own.
+     * 
+     * @param deadline deadline in milliseconds since the epoch (0 for none)
+     */
+    public static void setRequestDeadline(long deadline) {
+        if (deadline > 0) {
+            requestDeadline.set(deadline);
+        } else {
+            requestDeadline.remove();
+        }
+    }
+
+    /**
+     * Gets the deadline of a fragment request starting now.
+     * 
+     * @return deadline in milliseconds since the epoch
+     */
+    protected long getDeadline() {
+        long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+        Long request = requestDeadline.get();
+        return request == null ? deadline : Math.min(deadline, request);
+    }
+
+    /**
+     * Checks if a deadline has passed.
+     * 
+     * @param deadline deadline in milliseconds since the epoch
+     * @return true if the deadline has passed
+     */
+    protected static boolean isExpired(long deadline) {
+        return deadline != Long.MAX_VALUE && System.currentTimeMillis() > deadline;
+    }
+
+    /**
+     * Gets the order of the matches of a pattern read from an index: the
+     * components of the index order that are not bound.
+     * 
+     * @param order component order of the index (0 subject, 1 predicate, 2 object)
+     * @param subject whether the subject is bound
+     * @param predicate whether the predicate is bound
+     * @param object whether the object is bound
+     * @return the unbound components, most significant first
+     */
+    protected static List<Property> getOrder(int[] order, boolean subject, boolean predicate, boolean object) {
+        boolean[] bound = { subject, predicate, object };
+        Property[] components = {
+            CommonResources.RDF_SUBJECT, CommonResources.RDF_PREDICATE, CommonResources.RDF_OBJECT
+        };
+        List<Property> sorted = new ArrayList<>();
+        for (int component : order) {
+            if (!bound[component]) {
+                sorted.add(components[component]);
+            }
+        }
+        return sorted;
+    }
+
     public DataSource(String title, String description) {
         this.title = title;
         this.description = description;
@@ -1,8 +1,13 @@
 package org.linkeddatafragments.datasource;
 
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import org.linkeddatafragments.exceptions.DataSourceException;
 import org.linkeddatafragments.exceptions.UnknownDataSourceTypeException;
 
@@ -13,7 +18,11 @@ import org.linkeddatafragments.exceptions.UnknownDataSourceTypeException;
  */
 public class DataSourceFactory {
     public final static String HDT = "HdtDatasource";
+    public final static String HDT_SHARDED = "ShardedHdtDatasource";
+    public final static String HDT_VERSIONED = "VersionedHdtDatasource";
     public final static String JENA_TDB = "JenaTDBDatasource";
+    public final static String REMOTE = "RemoteDatasource";
+    public final static String MEMORY = "MemoryDatasource";
 
     /**
      * Create a datasource using a JSON config
@@ -23,6 +32,28 @@ public class DataSourceFactory {
      * @throws DataSourceException 
      */
     public static IDataSource create(JsonObject config) throws DataSourceException {
+        IDataSource dataSource = createDataSource(config);
+
+        // optionally limit the time spent on a single fragment
+        if (config.has("timeout") && dataSource instanceof DataSource) {
+            ((DataSource) dataSource).setTimeout(config.getAsJsonPrimitive("timeout").getAsLong());
+        }
+
+        // optionally share results between identical concurrent requests
+        if (config.has("coalesce") && config.getAsJsonPrimitive("coalesce").getAsBoolean()) {
+            dataSource = new CoalescingDataSource(dataSource);
+        }
+        return dataSource;
+    }
+
+    /**
+     * Create the datasource of the configured type
+     * 
+     * @param config
+     * @return datasource interface
+     * @throws DataSourceException 
+     */
+    private static IDataSource createDataSource(JsonObject config) throws DataSourceException {
         String title = config.getAsJsonPrimitive("title").getAsString();
         String description = config.getAsJsonPrimitive("description").getAsString();
         String type = config.getAsJsonPrimitive("type").getAsString();
@@ -33,14 +64,105 @@ public class DataSourceFactory {
             case HDT:
                 try {
                     File file = new File(settings.getAsJsonPrimitive("file").getAsString());
-                    return new HdtDataSource(title, description, file.getAbsolutePath());
+                    HdtDataSource hdt = new HdtDataSource(title, description, file.getAbsolutePath());
+                    if (settings.has("textIndex") && settings.getAsJsonPrimitive("textIndex").getAsBoolean()) {
+                        hdt.enableTextIndex();
+                    }
+                    if (settings.has("prefetch")) {
+                        JsonObject prefetch = settings.getAsJsonObject("prefetch");
+                        hdt.enablePrefetch(
+                            prefetch.has("threads") ? prefetch.getAsJsonPrimitive("threads").getAsInt() : 1,
+                            prefetch.has("queue") ? prefetch.getAsJsonPrimitive("queue").getAsInt() : 16,
+                            prefetch.has("pages") ? prefetch.getAsJsonPrimitive("pages").getAsInt() : 256);
+                    }
+                    // optionally keep changes in memory, on top of the file
+                    if (settings.has("delta")) {
+                        JsonObject delta = settings.getAsJsonObject("delta");
+                        File patch = delta.has("patch")
+                                ? new File(delta.getAsJsonPrimitive("patch").getAsString())
+                                : null;
+                        return new DeltaHdtDataSource(hdt, patch,
+                            delta.has("interval") ? delta.getAsJsonPrimitive("interval").getAsLong() : 10,
+                            delta.has("compactThreshold") ? delta.getAsJsonPrimitive("compactThreshold").getAsLong() : 100000);
+                    }
+                    return hdt;
                 } catch (IOException ex) {
                     throw new DataSourceException(ex);
                 }
                 
+            case HDT_SHARDED:
+                try {
+                    List<String> files = new ArrayList<>();
+                    for (JsonElement shard : settings.getAsJsonArray("files")) {
+                        files.add(new File(shard.getAsString()).getAbsolutePath());
+                    }
+                    int threads = settings.has("threads")
+                            ? settings.getAsJsonPrimitive("threads").getAsInt()
+                            : files.size();
+                    return new ShardedHdtDataSource(title, description, files, threads);
+                } catch (IOException ex) {
+                    throw new DataSourceException(ex);
+                }
+
+            case HDT_VERSIONED:
+                try {
+                    File file = new File(settings.getAsJsonPrimitive("file").getAsString());
+                    HdtDataSource hdt = new HdtDataSource(title, description, file.getAbsolutePath());
+                    String baseVersion = settings.has("baseVersion")
+                            ? settings.getAsJsonPrimitive("baseVersion").getAsString()
+                            : "base";
+                    // the patch of every next version, in order
+                    Map<String, File> patches = new LinkedHashMap<>();
+                    if (settings.has("versions")) {
+                        for (JsonElement version : settings.getAsJsonArray("versions")) {
+                            JsonObject object = version.getAsJsonObject();
+                            patches.put(object.getAsJsonPrimitive("name").getAsString(),
+                                    new File(object.getAsJsonPrimitive("patch").getAsString()));
+                        }
+                    }
+                    return new VersionedHdtDataSource(hdt, baseVersion, patches);
+                } catch (IOException | IllegalArgumentException ex) {
+                    throw new DataSourceException(ex);
+                }
+
             case JENA_TDB:                
                 File file = new File(settings.getAsJsonPrimitive("directory").getAsString());
+                // optionally read in transactions, so the store can be updated while serving
+                if (settings.has("transactional") && settings.getAsJsonPrimitive("transactional").getAsBoolean()) {
+                    return new TransactionalTDBDataSource(title, description, file);
+                }
                 return new JenaTDBDataSource(title, description, file);
+
+            case REMOTE:
+                String url = settings.getAsJsonPrimitive("url").getAsString();
+                File cacheDir = settings.has("cacheDirectory")
+                        ? new File(settings.getAsJsonPrimitive("cacheDirectory").getAsString())
+                        : null;
+                long cacheTTL = settings.has("cacheTTL")
+                        ? settings.getAsJsonPrimitive("cacheTTL").getAsLong()
+                        : 3600;
+                long cacheSize = settings.has("cacheSize")
+                        ? settings.getAsJsonPrimitive("cacheSize").getAsLong()
+                        : 1024;
+                long pageSize = settings.has("pageSize")
+                        ? settings.getAsJsonPrimitive("pageSize").getAsLong()
+                        : 100;
+                int maxConnections = settings.has("maxConnections")
+                        ? settings.getAsJsonPrimitive("maxConnections").getAsInt()
+                        : 20;
+                return new RemoteDataSource(title, description, url, pageSize,
+                        cacheDir, cacheTTL, cacheSize * 1024 * 1024, maxConnections);
+
+            case MEMORY:
+                File rdf = new File(settings.getAsJsonPrimitive("file").getAsString());
+                File snapshot = settings.has("snapshot")
+                        ? new File(settings.getAsJsonPrimitive("snapshot").getAsString())
+                        : null;
+                try {
+                    return new MemoryDataSource(title, description, rdf, snapshot);
+                } catch (IOException ex) {
+                    throw new DataSourceException(ex);
+                }
                 
             default:
                 throw new UnknownDataSourceTypeException(type);
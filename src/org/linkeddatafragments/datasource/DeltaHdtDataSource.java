@@ -0,0 +1,738 @@
+package org.linkeddatafragments.datasource;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RiotException;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.linkeddatafragments.exceptions.FragmentTimeoutException;
+import org.rdfhdt.hdt.enums.ResultEstimationType;
+import org.rdfhdt.hdt.enums.TripleComponentRole;
+import org.rdfhdt.hdt.exceptions.ParserException;
+import org.rdfhdt.hdt.hdt.HDT;
+import org.rdfhdt.hdt.hdt.HDTManager;
+import org.rdfhdt.hdt.options.HDTSpecification;
+import org.rdfhdt.hdt.triples.IteratorTripleID;
+import org.rdfhdt.hdt.triples.IteratorTripleString;
+import org.rdfhdt.hdt.triples.TripleID;
+import org.rdfhdt.hdt.triples.TripleString;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+
+/**
+ * An HDT data source of Basic Linked Data Fragments that can be updated,
+ * by keeping the changes to the read-only HDT file in memory.
+ * <p>
+ * The delta consists of the added triples, as sorted term strings, and the
+ * deleted triples of the HDT file, as sorted IDs. A fragment lists the
+ * matching added triples first, followed by the matching triples of the HDT
+ * file that were not deleted. Patterns without deleted matches are paged by
+ * the HDT index directly; otherwise the deleted triples are skipped one by
+ * one.</p>
+ * <p>
+ * Changes come from patches, which are appended to a patch file if one is
+ * configured. The patch file is watched for changes by other processes, and
+ * is replayed on start, since replaying it on the HDT file with or without
+ * the changes gives the same result. When the delta grows too large, the HDT
+ * file is rebuilt with the changes in the background and replaced. Text
+ * search is not supported, since it would miss the changes.</p>
+ *
+ * @author Bart Hanssens
+ */
+public class DeltaHdtDataSource extends DataSource implements ITermDataSource, IPatchDataSource {
+    // number of iterations between deadline checks
+    private final static int CHECK_INTERVAL = 4096;
+    // number of bytes of the patch file read at once
+    private final static int PATCH_CHUNK = 8 * 1024 * 1024;
+    private final static String BASE_URI = "http://linkeddatafragments.org/";
+    // minimum milliseconds before closing a replaced HDT file
+    private final static long CLOSE_DELAY = 60 * 1000;
+
+    private final static Comparator<String[]> TERM_ORDER = new Comparator<String[]>() {
+        @Override
+        public int compare(String[] a, String[] b) {
+            for (int i = 0; i < 3; i++) {
+                int cmp = a[i].compareTo(b[i]);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return 0;
+        }
+    };
+
+    private final static Comparator<TripleID> ID_ORDER = new Comparator<TripleID>() {
+        @Override
+        public int compare(TripleID a, TripleID b) {
+            return compareIds(a.getSubject(), a.getPredicate(), a.getObject(),
+                    b.getSubject(), b.getPredicate(), b.getObject());
+        }
+    };
+
+    /**
+     * The addition or deletion of a triple
+     */
+    static class Change {
+        private final boolean add;
+        private final String[] triple;
+
+        Change(boolean add, String subject, String predicate, String object) {
+            this.add = add;
+            this.triple = new String[] { subject, predicate, object };
+        }
+
+        /**
+         * @return true for an addition, false for a deletion
+         */
+        boolean isAddition() {
+            return add;
+        }
+
+        /**
+         * @return subject, predicate and object string
+         */
+        String[] getTriple() {
+            return triple;
+        }
+    }
+
+    /**
+     * An HDT file with its changes, which is never modified, so a request
+     * sees the same data from start to end.
+     */
+    static class State {
+        private final HdtDataSource base;
+        // subject, predicate and object of every added triple, in SPO order
+        private final String[] added;
+        // subject, predicate and object ID of every deleted triple, in SPO order
+        private final int[] deleted;
+        private final long modified;
+
+        State(HdtDataSource base, String[] added, int[] deleted, long modified) {
+            this.base = base;
+            this.added = added;
+            this.deleted = deleted;
+            this.modified = modified;
+        }
+
+        /**
+         * Gets the number of changes.
+         *
+         * @return number of added and deleted triples
+         */
+        int size() {
+            return (added.length + deleted.length) / 3;
+        }
+
+        /**
+         * Applies changes, ignoring additions of existing triples and
+         * deletions of missing triples.
+         *
+         * @param changes the changes, in order
+         * @return the state with the changes
+         */
+        State apply(List<Change> changes) {
+            TreeSet<String[]> addedSet = new TreeSet<>(TERM_ORDER);
+            for (int i = 0; i < added.length; i += 3) {
+                addedSet.add(Arrays.copyOfRange(added, i, i + 3));
+            }
+            TreeSet<TripleID> deletedSet = new TreeSet<>(ID_ORDER);
+            for (int i = 0; i < deleted.length; i += 3) {
+                deletedSet.add(new TripleID(deleted[i], deleted[i + 1], deleted[i + 2]));
+            }
+
+            for (Change change : changes) {
+                // added triples are never in the HDT file, deleted ones always are
+                String[] triple = change.triple;
+                TripleID id = base.toTripleID(triple[0], triple[1], triple[2]);
+                boolean inBase = id != null && base.search(id).hasNext();
+                if (change.add && inBase) {
+                    deletedSet.remove(id);
+                } else if (change.add) {
+                    addedSet.add(triple);
+                } else if (inBase) {
+                    deletedSet.add(id);
+                } else {
+                    addedSet.remove(triple);
+                }
+            }
+
+            String[] newAdded = new String[3 * addedSet.size()];
+            int i = 0;
+            for (String[] triple : addedSet) {
+                System.arraycopy(triple, 0, newAdded, i, 3);
+                i += 3;
+            }
+            int[] newDeleted = new int[3 * deletedSet.size()];
+            i = 0;
+            for (TripleID id : deletedSet) {
+                newDeleted[i++] = id.getSubject();
+                newDeleted[i++] = id.getPredicate();
+                newDeleted[i++] = id.getObject();
+            }
+            return new State(base, newAdded, newDeleted, System.currentTimeMillis());
+        }
+
+        /**
+         * Finds the added triples matching the pattern.
+         *
+         * @param subject the subject (null to match any subject)
+         * @param predicate the predicate (null to match any predicate)
+         * @param object the object (null to match any object)
+         * @return the numbers of the matching triples, in order
+         */
+        int[] matchAdded(String subject, String predicate, String object) {
+            int from = 0;
+            int to = added.length / 3;
+            if (subject != null) {
+                // the triples of a subject are adjacent
+                int low = 0;
+                int high = to;
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (added[3 * mid].compareTo(subject) < 0) {
+                        low = mid + 1;
+                    } else {
+                        high = mid;
+                    }
+                }
+                from = low;
+                for (to = from; to < added.length / 3 && added[3 * to].equals(subject); to++) {
+                }
+            }
+            int[] matches = new int[to - from];
+            int size = 0;
+            for (int i = from; i < to; i++) {
+                if ((subject == null || subject.equals(added[3 * i]))
+                        && (predicate == null || predicate.equals(added[3 * i + 1]))
+                        && (object == null || object.equals(added[3 * i + 2]))) {
+                    matches[size++] = i;
+                }
+            }
+            return Arrays.copyOf(matches, size);
+        }
+
+        /**
+         * Counts the deleted triples matching the HDT pattern.
+         *
+         * @param pattern the HDT pattern
+         * @return number of matching deleted triples
+         */
+        int countDeleted(TripleID pattern) {
+            int count = 0;
+            for (int i = 0; i < deleted.length; i += 3) {
+                if (new TripleID(deleted[i], deleted[i + 1], deleted[i + 2]).match(pattern)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Checks if a triple of the HDT file was deleted.
+         *
+         * @param id the triple
+         * @return true if deleted
+         */
+        boolean isDeleted(TripleID id) {
+            int low = 0;
+            int high = deleted.length / 3 - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compareIds(deleted[3 * mid], deleted[3 * mid + 1], deleted[3 * mid + 2],
+                        id.getSubject(), id.getPredicate(), id.getObject());
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Gets a page of the fragment matching the pattern: the added
+         * triples, followed by the remaining triples of the HDT file.
+         *
+         * @param subject the subject (null to match any subject)
+         * @param predicate the predicate (null to match any predicate)
+         * @param object the object (null to match any object)
+         * @param offset the triple index at which to start the page
+         * @param limit the number of triples on the page
+         * @param deadline deadline in milliseconds since the epoch
+         * @return the page of the fragment
+         */
+        TripleIDPage getFragment(String subject, String predicate, String object,
+                long offset, long limit, long deadline) {
+            // added triples get negative IDs, pointing to their strings
+            final List<String> strings = new ArrayList<>();
+            int[] ids = new int[(int) (3 * limit)];
+            int size = 0;
+
+            int[] addedMatches = matchAdded(subject, predicate, object);
+            for (long i = offset; i < addedMatches.length && size < limit; i++, size++) {
+                for (int c = 0; c < 3; c++) {
+                    strings.add(added[3 * addedMatches[(int) i] + c]);
+                    ids[3 * size + c] = -strings.size();
+                }
+            }
+
+            long total = addedMatches.length;
+            boolean complete = true;
+            TripleID pattern = base.toTripleID(subject, predicate, object);
+            if (pattern != null) {
+                long baseOffset = Math.max(0, offset - addedMatches.length);
+                int deletedMatches = countDeleted(pattern);
+                if (deletedMatches == 0) {
+                    // the HDT index can jump to the offset
+                    TripleIDPage page = (TripleIDPage) base.getFragment(pattern, baseOffset,
+                            Math.max(1, limit - size));
+                    int[] baseIds = page.getIds();
+                    int count = (int) Math.min(baseIds.length / 3, limit - size);
+                    System.arraycopy(baseIds, 0, ids, 3 * size, 3 * count);
+                    size += count;
+                    total += page.getTotalSize();
+                } else {
+                    // skip the deleted triples on the way to the offset
+                    IteratorTripleID matches = base.search(pattern);
+                    for (long i = 0; size < limit && matches.hasNext(); i++) {
+                        if (i % CHECK_INTERVAL == 0 && isExpired(deadline)) {
+                            throw new FragmentTimeoutException("Skipping deleted triples took too long");
+                        }
+                        TripleID match = matches.next();
+                        if (isDeleted(match)) {
+                            continue;
+                        }
+                        if (baseOffset > 0) {
+                            baseOffset--;
+                            continue;
+                        }
+                        ids[3 * size] = match.getSubject();
+                        ids[3 * size + 1] = match.getPredicate();
+                        ids[3 * size + 2] = match.getObject();
+                        size++;
+                    }
+                    total += Math.max(0, base.count(pattern, deadline) - deletedMatches);
+                    // the count falls back to the estimate when out of time
+                    complete = !isExpired(deadline);
+                }
+            }
+
+            final IdDictionary dictionary = base.getIdDictionary();
+            IdDictionary pageDictionary = new IdDictionary() {
+                @Override
+                public Node getNode(int id, TripleComponentRole role) {
+                    return id < 0
+                            ? TermStrings.toNode(strings.get(-id - 1))
+                            : dictionary.getNode(id, role);
+                }
+
+                @Override
+                public CharSequence getString(int id, TripleComponentRole role) {
+                    return id < 0 ? strings.get(-id - 1) : dictionary.getString(id, role);
+                }
+            };
+            return new TripleIDPage(pageDictionary, Arrays.copyOf(ids, 3 * size),
+                    Math.max(total, offset + size), complete);
+        }
+    }
+
+    /**
+     * Streams all triples of a state, for rebuilding the HDT file.
+     */
+    private static class StateIterator implements IteratorTripleString {
+        private final State state;
+        private final IdDictionary dictionary;
+        private IteratorTripleID matches;
+        private int addedPosition;
+        private TripleString next;
+
+        StateIterator(State state) {
+            this.state = state;
+            this.dictionary = state.base.getIdDictionary();
+            goToStart();
+        }
+
+        /**
+         * Finds the next triple that was not deleted.
+         */
+        private void advance() {
+            next = null;
+            while (matches.hasNext()) {
+                TripleID match = matches.next();
+                if (!state.isDeleted(match)) {
+                    next = new TripleString(
+                        dictionary.getString(match.getSubject(), TripleComponentRole.SUBJECT).toString(),
+                        dictionary.getString(match.getPredicate(), TripleComponentRole.PREDICATE).toString(),
+                        dictionary.getString(match.getObject(), TripleComponentRole.OBJECT).toString());
+                    return;
+                }
+            }
+            if (addedPosition < state.added.length) {
+                String[] added = state.added;
+                next = new TripleString(added[addedPosition], added[addedPosition + 1], added[addedPosition + 2]);
+                addedPosition += 3;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public TripleString next() {
+            TripleString current = next;
+            advance();
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return false;
+        }
+
+        @Override
+        public TripleString previous() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public final void goToStart() {
+            matches = state.base.search(new TripleID(0, 0, 0));
+            addedPosition = 0;
+            advance();
+        }
+
+        @Override
+        public long estimatedNumResults() {
+            return state.base.search(new TripleID(0, 0, 0)).estimatedNumResults()
+                    + (state.added.length - state.deleted.length) / 3;
+        }
+
+        @Override
+        public ResultEstimationType numResultEstimation() {
+            return ResultEstimationType.APPROXIMATE;
+        }
+    }
+
+    private volatile State state;
+    private final File patchFile;
+    private final long compactThreshold;
+    private final ScheduledExecutorService executor;
+    private long patchPosition = 0;
+    // changes applied while compacting, or null when not compacting
+    private List<Change> pending;
+    // number of changes at which to try again after a failed rebuild
+    private long compactRetrySize = 0;
+
+    /**
+     * Creates a new DeltaHdtDataSource, and replays the patch file.
+     *
+     * @param base the HDT data source
+     * @param patchFile file with patches, or null to keep changes in memory only
+     * @param interval seconds between checks of the patch file
+     * @param compactThreshold number of changes at which the HDT file is rebuilt (0 to never rebuild)
+     * @throws IOException if the patch file cannot be read
+     */
+    public DeltaHdtDataSource(HdtDataSource base, File patchFile, long interval, long compactThreshold)
+            throws IOException {
+        super(base.getTitle(), base.getDescription());
+        this.state = new State(base, new String[0], new int[0], 0);
+        this.patchFile = patchFile;
+        this.compactThreshold = compactThreshold;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "hdt-delta");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        if (patchFile != null) {
+            readPatchFile();
+            executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        readPatchFile();
+                    } catch (IOException | IllegalArgumentException e) {
+                        // retried at the next check, after the file is fixed
+                        e.printStackTrace();
+                    }
+                }
+            }, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void setTimeout(long timeout) {
+        super.setTimeout(timeout);
+        state.base.setTimeout(timeout);
+    }
+
+    @Override
+    public TriplePatternFragment getFragment(Resource subject, Property predicate, RDFNode object,
+            long offset, long limit) {
+        return getTermFragment(
+                subject == null ? null : TermStrings.toString(subject.asNode()),
+                predicate == null ? null : TermStrings.toString(predicate.asNode()),
+                object == null ? null : TermStrings.toString(object.asNode()),
+                offset, limit);
+    }
+
+    @Override
+    public TriplePatternFragment getTermFragment(String subject, String predicate, String object,
+            long offset, long limit) {
+        checkBoundaries(offset, limit);
+        return state.getFragment(subject, predicate, object, offset, limit, getDeadline());
+    }
+
+    @Override
+    public long getModified() {
+        return state.modified;
+    }
+
+    @Override
+    public void applyPatch(Reader patch) throws IOException {
+        List<Change> changes = parsePatch(patch);
+        synchronized (this) {
+            if (patchFile == null) {
+                apply(changes);
+                return;
+            }
+            // log the changes, and apply the patch file in its order,
+            // including lines other processes appended
+            try (Writer writer = new OutputStreamWriter(
+                    new FileOutputStream(patchFile, true), StandardCharsets.UTF_8)) {
+                writePatch(writer, changes);
+            }
+            readPatchFile();
+        }
+    }
+
+    /**
+     * Applies changes, and starts compacting when the delta is too large.
+     *
+     * @param changes the changes
+     */
+    private synchronized void apply(List<Change> changes) {
+        State next = state.apply(changes);
+        state = next;
+        if (pending != null) {
+            pending.addAll(changes);
+        } else if (compactThreshold > 0 && next.size() >= Math.max(compactThreshold, compactRetrySize)) {
+            pending = new ArrayList<>();
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    compact();
+                }
+            });
+        }
+    }
+
+    /**
+     * Applies the patches appended to the patch file since the last read.
+     * Only complete lines are read.
+     *
+     * @throws IOException if the file cannot be read
+     */
+    private synchronized void readPatchFile() throws IOException {
+        if (!patchFile.exists()) {
+            return;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(patchFile, "r")) {
+            // start over if the file was emptied
+            if (file.length() < patchPosition) {
+                patchPosition = 0;
+            }
+            while (patchPosition < file.length()) {
+                byte[] bytes = new byte[(int) Math.min(PATCH_CHUNK, file.length() - patchPosition)];
+                file.seek(patchPosition);
+                file.readFully(bytes);
+                int end = bytes.length;
+                while (end > 0 && bytes[end - 1] != '\n') {
+                    end--;
+                }
+                if (end == 0) {
+                    if (bytes.length == PATCH_CHUNK) {
+                        throw new IOException("Line too long in patch file " + patchFile);
+                    }
+                    return;
+                }
+                apply(parsePatch(new StringReader(new String(bytes, 0, end, StandardCharsets.UTF_8))));
+                patchPosition += end;
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the HDT file with the changes, and replaces it. Changes
+     * applied in the meantime are applied again to the new file. The old
+     * file is closed once requests in progress are done with it. After a
+     * failure, the next rebuild waits for twice as many changes.
+     */
+    private void compact() {
+        State snapshot;
+        synchronized (this) {
+            snapshot = state;
+        }
+        try {
+            File file = new File(snapshot.base.getHdtFile());
+            File compacted = new File(file.getPath() + ".compact");
+            HDT hdt = HDTManager.generateHDT(new StateIterator(snapshot), BASE_URI, new HDTSpecification(), null);
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(compacted))) {
+                hdt.saveToHDT(out, null);
+            } finally {
+                hdt.close();
+            }
+
+            // requests in progress keep reading the old file, which stays mapped
+            new File(file.getPath() + ".index").delete();
+            Files.move(compacted.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            HdtDataSource reloaded = snapshot.base.reload();
+
+            synchronized (this) {
+                State next = new State(reloaded, new String[0], new int[0], state.modified);
+                state = pending.isEmpty() ? next : next.apply(pending);
+                compactRetrySize = 0;
+            }
+            final HdtDataSource replaced = snapshot.base;
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        replaced.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }, Math.max(CLOSE_DELAY, 2 * timeout), TimeUnit.MILLISECONDS);
+        } catch (IOException | ParserException | RuntimeException e) {
+            e.printStackTrace();
+            synchronized (this) {
+                compactRetrySize = 2 * snapshot.size();
+            }
+        } finally {
+            synchronized (this) {
+                pending = null;
+            }
+        }
+    }
+
+    /**
+     * Compares two triples of IDs in SPO order.
+     *
+     * @return negative, zero or positive as the first triple sorts before,
+     * equal to or after the second
+     */
+    private static int compareIds(int s1, int p1, int o1, int s2, int p2, int o2) {
+        if (s1 != s2) {
+            return Integer.compare(s1, s2);
+        }
+        if (p1 != p2) {
+            return Integer.compare(p1, p2);
+        }
+        return Integer.compare(o1, o2);
+    }
+
+    /**
+     * Parses a patch: "A" or "D" and an N-Triples triple on every line.
+     * Empty lines and comments are skipped.
+     *
+     * @param patch the patch
+     * @return the changes, in order
+     * @throws IOException if the patch cannot be read
+     * @throws IllegalArgumentException if the patch is not valid
+     */
+    static List<Change> parsePatch(Reader patch) throws IOException {
+        final List<Boolean> adds = new ArrayList<>();
+        StringBuilder triples = new StringBuilder();
+        BufferedReader lines = new BufferedReader(patch);
+        for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.length() < 2 || "AD".indexOf(line.charAt(0)) < 0 || !Character.isWhitespace(line.charAt(1))) {
+                throw new IllegalArgumentException("Invalid patch line: " + line);
+            }
+            adds.add(line.charAt(0) == 'A');
+            triples.append(line, 2, line.length()).append('\n');
+        }
+
+        final List<Change> changes = new ArrayList<>();
+        try {
+            RDFDataMgr.parse(new StreamRDFBase() {
+                @Override
+                public void triple(Triple triple) {
+                    if (changes.size() == adds.size()) {
+                        throw new IllegalArgumentException("More than one triple on a patch line");
+                    }
+                    changes.add(new Change(adds.get(changes.size()),
+                            TermStrings.toString(triple.getSubject()),
+                            TermStrings.toString(triple.getPredicate()),
+                            TermStrings.toString(triple.getObject())));
+                }
+            }, new StringReader(triples.toString()), Lang.NTRIPLES);
+        } catch (RiotException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+        return changes;
+    }
+
+    /**
+     * Writes changes as a patch.
+     *
+     * @param writer the writer
+     * @param changes the changes
+     * @throws IOException
+     */
+    static void writePatch(Writer writer, List<Change> changes) throws IOException {
+        for (Change change : changes) {
+            writer.write(change.add ? "A " : "D ");
+            for (String term : change.triple) {
+                TripleIDPage.writeTerm(writer, term);
+                writer.write(' ');
+            }
+            writer.write(".\n");
+        }
+    }
+}
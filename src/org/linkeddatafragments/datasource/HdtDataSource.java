@@ -1,7 +1,15 @@
 package org.linkeddatafragments.datasource;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import org.linkeddatafragments.exceptions.FragmentTimeoutException;
+import org.linkeddatafragments.util.CommonResources;
+import org.rdfhdt.hdt.enums.ResultEstimationType;
 import org.rdfhdt.hdt.enums.TripleComponentRole;
 import org.rdfhdt.hdt.hdt.HDT;
 import org.rdfhdt.hdt.hdt.HDTManager;
@@ -9,22 +17,84 @@ import org.rdfhdt.hdt.triples.IteratorTripleID;
 import org.rdfhdt.hdt.triples.TripleID;
 import org.rdfhdt.hdtjena.NodeDictionary;
 
-import com.hp.hpl.jena.graph.Triple;
-import com.hp.hpl.jena.rdf.model.Model;
-import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.rdf.model.Property;
 import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.Statement;
 
 /**
  * An HDT data source of Basic Linked Data Fragments.
  *
  * @author Ruben Verborgh
  */
-public class HdtDataSource extends DataSource {
+public class HdtDataSource extends DataSource
+        implements ITextDataSource, ITermDataSource, IOrderedDataSource, IStarDataSource, ICountDataSource {
+    // number of iterations between deadline checks
+    private final static int CHECK_INTERVAL = 4096;
+    // maximum number of cached term IDs per role
+    private final static int MAXCACHEDTERMS = 65536;
+    // maximum time in milliseconds to count matches the index cannot count
+    private final static long COUNTTIME = 100;
 
+    // component order of the indexes
+    private final static int[] SPO = { 0, 1, 2 };
+    private final static int[] PSO = { 1, 0, 2 };
+    private final static int[] OPS = { 2, 1, 0 };
+
+    /**
+     * The distinct subjects of the matches of a pattern, in order, since
+     * the indexes sort the matches of every pattern shape by subject first
+     * once the predicate is bound.
+     */
+    private static class SubjectStream {
+        private final IteratorTripleID matches;
+        private int subject = 0;
+
+        SubjectStream(IteratorTripleID matches) {
+            this.matches = matches;
+        }
+
+        /**
+         * Advances to the first subject not smaller than the target.
+         *
+         * @param target the subject ID
+         * @return the subject ID, or 0 if there are no more subjects
+         */
+        int advanceTo(int target) {
+            while (subject < target) {
+                if (!matches.hasNext()) {
+                    return 0;
+                }
+                subject = matches.next().getSubject();
+            }
+            return subject;
+        }
+    }
+
+    private final String hdtFile;
     private final HDT datasource;
     private final NodeDictionary dictionary;
+    private final IdDictionary idDictionary = new IdDictionary() {
+        @Override
+        public Node getNode(int id, TripleComponentRole role) {
+            return dictionary.getNode(id, role);
+        }
+
+        @Override
+        public CharSequence getString(int id, TripleComponentRole role) {
+            return datasource.getDictionary().idToString(id, role);
+        }
+    };
+    private PagePrefetcher prefetcher;
+    private int[] prefetchSettings;
+    private LiteralIndex textIndex;
+
+    // IDs of recently requested terms, per role
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private final ConcurrentMap<String, Integer>[] termIds = new ConcurrentMap[] {
+        new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new ConcurrentHashMap<>()
+    };
 
     /**
      * Creates a new HdtDataSource.
@@ -36,30 +106,153 @@ public class HdtDataSource extends DataSource {
      */
     public HdtDataSource(String title, String description, String hdtFile) throws IOException {
         super(title, description);
+        this.hdtFile = hdtFile;
         datasource = HDTManager.mapIndexedHDT(hdtFile, null);
         dictionary = new NodeDictionary(datasource.getDictionary());
     }
 
+    /**
+     * Enables searching triples by the words in their literals, by indexing
+     * the literals of the dictionary.
+     */
+    public void enableTextIndex() {
+        textIndex = new LiteralIndex(datasource.getDictionary());
+    }
+
+    /**
+     * Enables reading the next page ahead when clients request the pages of
+     * a fragment one after another.
+     *
+     * @param threads number of background threads
+     * @param queueSize maximum number of pending read-aheads
+     * @param cacheSize maximum number of pages read ahead
+     */
+    public void enablePrefetch(int threads, int queueSize, int cacheSize) {
+        prefetcher = new PagePrefetcher(threads, queueSize, cacheSize);
+        prefetchSettings = new int[] { threads, queueSize, cacheSize };
+    }
+
+    /**
+     * Loads the HDT file again, with the same settings, after it was replaced.
+     *
+     * @return the new data source
+     * @throws IOException if the file cannot be loaded
+     */
+    HdtDataSource reload() throws IOException {
+        HdtDataSource reloaded = new HdtDataSource(title, description, hdtFile);
+        reloaded.setTimeout(timeout);
+        if (textIndex != null) {
+            reloaded.enableTextIndex();
+        }
+        if (prefetchSettings != null) {
+            reloaded.enablePrefetch(prefetchSettings[0], prefetchSettings[1], prefetchSettings[2]);
+        }
+        return reloaded;
+    }
+
+    /**
+     * Closes the HDT file, after which the data source cannot be used.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    void close() throws IOException {
+        if (prefetcher != null) {
+            prefetcher.shutdown();
+        }
+        datasource.close();
+    }
+
+    /**
+     * Gets the path of the HDT file.
+     *
+     * @return the path
+     */
+    String getHdtFile() {
+        return hdtFile;
+    }
+
+    /**
+     * Gets the dictionary of the IDs in the HDT triples.
+     *
+     * @return the dictionary
+     */
+    IdDictionary getIdDictionary() {
+        return idDictionary;
+    }
+
+    /**
+     * Searches the triples matching the HDT pattern.
+     *
+     * @param pattern the HDT pattern
+     * @return the matches
+     */
+    IteratorTripleID search(TripleID pattern) {
+        return datasource.getTriples().search(pattern);
+    }
+
+    /**
+     * Checks if the HDT file holds the triple.
+     *
+     * @param statement the triple
+     * @return true if the triple is in the file
+     */
+    boolean contains(Statement statement) {
+        TripleID id = toTripleID(statement.getSubject(), statement.getPredicate(), statement.getObject());
+        return id != null && search(id).hasNext();
+    }
+
     @Override
     public TriplePatternFragment getFragment(Resource subject, Property predicate, RDFNode object, final long offset, final long limit) {
         checkBoundaries(offset, limit);
+        return getFragment(toTripleID(subject, predicate, object), offset, limit);
+    }
+
+    @Override
+    public TriplePatternFragment getTermFragment(String subject, String predicate, String object, long offset, long limit) {
+        checkBoundaries(offset, limit);
+        return getFragment(toTripleID(subject, predicate, object), offset, limit);
+    }
 
+    @Override
+    public long getCount(Resource subject, Property predicate, RDFNode object) {
+        TripleID pattern = toTripleID(subject, predicate, object);
+        if (pattern == null) {
+            return 0;
+        }
+        // count exactly if the index cannot tell it, for a short while
+        long deadline = Math.min(getDeadline(), System.currentTimeMillis() + COUNTTIME);
+        return count(pattern, deadline);
+    }
+
+    /**
+     * Gets a page of the fragment matching the HDT pattern.
+     *
+     * @param pattern the HDT pattern, or null if one of the terms does not occur
+     * @param offset the triple index at which to start the page
+     * @param limit the number of triples on the page
+     * @return the page of the fragment
+     */
+    TriplePatternFragment getFragment(TripleID pattern, long offset, long limit) {
         // look up the result from the HDT datasource)
-        int subjectId = subject == null ? 0 : dictionary.getIntID(subject.asNode(), TripleComponentRole.SUBJECT);
-        int predicateId = predicate == null ? 0 : dictionary.getIntID(predicate.asNode(), TripleComponentRole.PREDICATE);
-        int objectId = object == null ? 0 : dictionary.getIntID(object.asNode(), TripleComponentRole.OBJECT);
-        
-        if (subjectId < 0 || predicateId < 0 || objectId < 0) {
-            return new TriplePatternFragmentBase();
+        if (pattern == null) {
+            return new TripleIDPage(idDictionary, new int[0], 0);
+        }
+
+        // the page may have been read ahead already
+        if (prefetcher != null) {
+            PagePrefetcher.Page prefetched = prefetcher.take(pattern, offset, limit);
+            if (prefetched != null) {
+                prefetch(pattern, prefetched.getMatches(), offset + limit, limit);
+                return prefetched.getFragment();
+            }
         }
         
-        final Model triples = ModelFactory.createDefaultModel();
-        IteratorTripleID matches = datasource.getTriples().search(new TripleID(subjectId, predicateId, objectId));
+        IteratorTripleID matches = datasource.getTriples().search(pattern);
         boolean hasMatches = matches.hasNext();
+        boolean atOffset = false;
 		
         if (hasMatches) {
             // try to jump directly to the offset
-            boolean atOffset;
             if (matches.canGoTo()) {
                 try {
                     matches.goTo(offset);
@@ -68,54 +261,380 @@ public class HdtDataSource extends DataSource {
                 catch (IndexOutOfBoundsException exception) {
                     atOffset = false;
                 }
-            } // if not possible, advance to the offset iteratively
+            } // if not possible, advance to the offset iteratively,
+            // and give up when out of time
             else {
+                long deadline = getDeadline();
                 matches.goToStart();
-                for (int i = 0; !(atOffset = i == offset) && matches.hasNext(); i++) {
+                for (long i = 0; !(atOffset = i == offset) && matches.hasNext(); i++) {
+                    if (i % CHECK_INTERVAL == 0 && isExpired(deadline)) {
+                        throw new FragmentTimeoutException("Skipping to offset " + offset + " took too long");
+                    }
                     matches.next();
                 }
             }
-            // try to add `limit` triples to the result model
-            if (atOffset) {
-                for (int i = 0; i < limit && matches.hasNext(); i++) {
-                    triples.add(triples.asStatement(toTriple(matches.next())));
-                }
+        }
+
+        // try to add `limit` triples to the result model
+        TriplePatternFragment fragment = readPage(matches, hasMatches, atOffset, offset, limit);
+
+        // read the next page ahead if the client is walking through the pages,
+        // which needs the matches to be positioned after this page
+        if (prefetcher != null && prefetcher.isSequential(pattern, offset, limit) && atOffset) {
+            prefetch(pattern, matches, offset + limit, limit);
+        }
+        return fragment;
+    }
+
+    /**
+     * Reads a page from matches positioned at the offset.
+     *
+     * @param matches the matches
+     * @param hasMatches whether there are any matches at all
+     * @param atOffset whether the matches are positioned at the offset
+     * @param offset the triple index at which the page starts
+     * @param limit the number of triples on the page
+     * @return the fragment
+     */
+    private TriplePatternFragment readPage(IteratorTripleID matches, boolean hasMatches,
+            boolean atOffset, long offset, long limit) {
+        // collect the IDs of a full page, and decode them only when needed
+        int[] buffer = new int[(int) (3 * limit)];
+        int size = 0;
+        if (atOffset) {
+            for (; size < limit && matches.hasNext(); size++) {
+                TripleID match = matches.next();
+                buffer[3 * size] = match.getSubject();
+                buffer[3 * size + 1] = match.getPredicate();
+                buffer[3 * size + 2] = match.getObject();
             }
         }
 
         // estimates can be wrong; ensure 0 is returned if there are no results, 
         // and always more than actual results
-        final long estimatedTotal = triples.size() > 0 
-                ? Math.max(offset + triples.size() + 1, matches.estimatedNumResults())
+        final long estimatedTotal = size > 0 
+                ? Math.max(offset + size + 1, matches.estimatedNumResults())
                 : hasMatches 
                     ? Math.max(matches.estimatedNumResults(), 1) 
                     : 0;
 
-        // create the fragment
-        return new TriplePatternFragment() {
+        // create the fragment, trimming a short page
+        return new TripleIDPage(idDictionary, size == limit ? buffer : Arrays.copyOf(buffer, 3 * size),
+                estimatedTotal);
+    }
+
+    /**
+     * Reads the next page in the background, continuing from the current
+     * position of the matches.
+     *
+     * @param pattern the HDT pattern
+     * @param matches the matches, positioned at the offset
+     * @param offset the triple index at which the page starts
+     * @param limit the number of triples on the page
+     */
+    private void prefetch(TripleID pattern, final IteratorTripleID matches,
+            final long offset, final long limit) {
+        if (!matches.hasNext()) {
+            return;
+        }
+        prefetcher.prefetch(pattern, offset, limit, new Callable<PagePrefetcher.Page>() {
             @Override
-            public Model getTriples() {
-                return triples;
+            public PagePrefetcher.Page call() {
+                TriplePatternFragment fragment = readPage(matches, true, true, offset, limit);
+                return new PagePrefetcher.Page(fragment, matches);
             }
+        });
+    }
 
-            @Override
-            public long getTotalSize() {
-                return estimatedTotal;
+    @Override
+    public TriplePatternFragment getStarFragment(String subject, String[] predicates, String[] objects,
+            long offset, long limit) {
+        checkBoundaries(offset, limit);
+        int subjectId = getId(subject, TripleComponentRole.SUBJECT);
+        TripleID[] patterns = new TripleID[predicates.length];
+        for (int i = 0; i < patterns.length; i++) {
+            int predicateId = getId(predicates[i], TripleComponentRole.PREDICATE);
+            int objectId = getId(objects[i], TripleComponentRole.OBJECT);
+            if (subjectId < 0 || predicateId <= 0 || objectId < 0) {
+                return new TripleIDPage(idDictionary, new int[0], 0);
             }
-        };
+            patterns[i] = new TripleID(subjectId, predicateId, objectId);
+        }
+        if (patterns.length == 0) {
+            return new TripleIDPage(idDictionary, new int[0], 0);
+        }
+
+        // intersect the subjects of all patterns, and estimate the number
+        // of triples by the least frequent pattern
+        SubjectStream[] streams = new SubjectStream[patterns.length];
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < patterns.length; i++) {
+            IteratorTripleID matches = datasource.getTriples().search(patterns[i]);
+            estimate = Math.min(estimate, matches.estimatedNumResults());
+            streams[i] = new SubjectStream(matches);
+        }
+
+        // the fragment is the sequence of the matching triples of every
+        // subject, pattern by pattern, and is paged by triple
+        long deadline = getDeadline();
+        int[] ids = new int[0];
+        int size = 0;
+        long seen = 0;
+        boolean more = false;
+        int match = nextSubject(streams, 1, deadline);
+        while (match > 0 && !more) {
+            for (int i = 0; i < patterns.length && !more; i++) {
+                IteratorTripleID matches = datasource.getTriples().search(
+                        new TripleID(match, patterns[i].getPredicate(), patterns[i].getObject()));
+                // skip the triples before the page by their count, if the index knows it
+                if (matches.numResultEstimation() == ResultEstimationType.EXACT
+                        && seen + matches.estimatedNumResults() <= offset) {
+                    seen += matches.estimatedNumResults();
+                    continue;
+                }
+                while (!more && matches.hasNext()) {
+                    TripleID triple = matches.next();
+                    if (seen == offset + limit) {
+                        more = true;
+                    } else if (seen++ >= offset) {
+                        if (ids.length < 3 * (size + 1)) {
+                            ids = Arrays.copyOf(ids, (int) Math.min(3 * limit, Math.max(3 * 64, 2 * ids.length)));
+                        }
+                        ids[3 * size] = triple.getSubject();
+                        ids[3 * size + 1] = triple.getPredicate();
+                        ids[3 * size + 2] = triple.getObject();
+                        size++;
+                    }
+                }
+            }
+            if (!more) {
+                match = nextSubject(streams, match + 1, deadline);
+            }
+        }
+        long total = more ? Math.max(seen + 1, estimate) : seen;
+        return new TripleIDPage(idDictionary, Arrays.copyOf(ids, 3 * size), total);
     }
 
     /**
-     * Converts the HDT triple to a Jena Triple.
+     * Finds the next subject shared by all streams, by advancing every
+     * stream to the largest subject found so far until they agree.
      *
-     * @param tripleId the HDT triple
-     * @return the Jena triple
+     * @param streams the subjects of every pattern
+     * @param target the smallest subject ID to look for
+     * @param deadline deadline in milliseconds since the epoch
+     * @return the subject ID, or 0 if there are no more shared subjects
      */
-    private Triple toTriple(TripleID tripleId) {
-        return new Triple(
-            dictionary.getNode(tripleId.getSubject(), TripleComponentRole.SUBJECT),
-            dictionary.getNode(tripleId.getPredicate(), TripleComponentRole.PREDICATE),
-            dictionary.getNode(tripleId.getObject(), TripleComponentRole.OBJECT)
-        );
+    private static int nextSubject(SubjectStream[] streams, int target, long deadline) {
+        for (int steps = 1; ; steps++) {
+            if (steps % CHECK_INTERVAL == 0 && isExpired(deadline)) {
+                throw new FragmentTimeoutException("Star pattern took too long");
+            }
+            boolean agreed = true;
+            for (SubjectStream stream : streams) {
+                int subject = stream.advanceTo(target);
+                if (subject == 0) {
+                    return 0;
+                }
+                if (subject > target) {
+                    target = subject;
+                    agreed = false;
+                }
+            }
+            if (agreed) {
+                return target;
+            }
+        }
+    }
+
+    @Override
+    public List<Property> getOrder(boolean subject, boolean predicate, boolean object) {
+        // the triples are sorted by subject; the predicate index lists them
+        // by predicate, and the object index by object and predicate
+        int[] order = subject ? SPO : predicate ? PSO : object ? OPS : SPO;
+        return getOrder(order, subject, predicate, object);
+    }
+
+    @Override
+    public Resource getCollation() {
+        // IDs are only sorted by term within each dictionary section
+        return CommonResources.LDF_INDEXORDER;
+    }
+
+    @Override
+    public boolean hasTextIndex() {
+        return textIndex != null;
+    }
+
+    @Override
+    public TriplePatternFragment getTextFragment(String text, long offset, long limit) {
+        checkBoundaries(offset, limit);
+        if (textIndex == null) {
+            return new TriplePatternFragmentBase();
+        }
+
+        // the fragment consists of the triples of every matching literal,
+        // in the order of the literals in the dictionary
+        long deadline = getDeadline();
+        int[] buffer = new int[(int) (3 * limit)];
+        int size = 0;
+        long total = 0;
+        int[] literals = textIndex.search(text);
+        for (int i = 0; i < literals.length; i++) {
+            // the total is needed for every page, so a partial page would be wrong
+            if (isExpired(deadline)) {
+                throw new FragmentTimeoutException("Text search for '" + text + "' took too long");
+            }
+            TripleID pattern = new TripleID(0, 0, literals[i]);
+            long count = count(pattern, Long.MAX_VALUE);
+
+            long start = Math.max(offset, total) - total;
+            long end = Math.min(offset + limit, total + count) - total;
+            if (start < end) {
+                IteratorTripleID matches = datasource.getTriples().search(pattern);
+                if (matches.canGoTo()) {
+                    matches.goTo(start);
+                } else {
+                    for (long j = 0; j < start && matches.hasNext(); j++) {
+                        matches.next();
+                    }
+                }
+                for (long j = start; j < end && matches.hasNext(); j++, size++) {
+                    TripleID match = matches.next();
+                    buffer[3 * size] = match.getSubject();
+                    buffer[3 * size + 1] = match.getPredicate();
+                    buffer[3 * size + 2] = match.getObject();
+                }
+            }
+            total += count;
+
+            // once the page is full, every next literal is in at least one
+            // triple, which gives a lower bound of the total
+            if (total >= offset + limit) {
+                total += literals.length - i - 1;
+                break;
+            }
+        }
+        return new TripleIDPage(idDictionary, size == limit ? buffer : Arrays.copyOf(buffer, 3 * size), total);
+    }
+
+    /**
+     * Counts the triples matching the pattern exactly, without
+     * materializing them. The count comes from the HDT index when it can
+     * tell it directly; otherwise the matches are iterated.
+     *
+     * @param subject the subject (null to match any subject)
+     * @param predicate the predicate (null to match any predicate)
+     * @param object the object (null to match any object)
+     * @return the number of matching triples
+     * @throws FragmentTimeoutException if the deadline passes before the count is done
+     */
+    long countExactly(Resource subject, Property predicate, RDFNode object) {
+        TripleID pattern = toTripleID(subject, predicate, object);
+        if (pattern == null) {
+            return 0;
+        }
+        IteratorTripleID matches = datasource.getTriples().search(pattern);
+        if (matches.numResultEstimation() == ResultEstimationType.EXACT) {
+            return matches.estimatedNumResults();
+        }
+        long deadline = getDeadline();
+        long count = 0;
+        while (matches.hasNext()) {
+            if (count % CHECK_INTERVAL == 0 && isExpired(deadline)) {
+                throw new FragmentTimeoutException("Counting the matches of " + pattern + " took too long");
+            }
+            matches.next();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Counts the triples matching the HDT pattern.
+     * When the deadline passes, the estimate of the index is returned instead.
+     *
+     * @param pattern the HDT pattern
+     * @param deadline deadline in milliseconds since the epoch
+     * @return the number of matching triples
+     */
+    long count(TripleID pattern, long deadline) {
+        IteratorTripleID matches = datasource.getTriples().search(pattern);
+        if (matches.numResultEstimation() == ResultEstimationType.EXACT) {
+            return matches.estimatedNumResults();
+        }
+        long count = 0;
+        while (matches.hasNext()) {
+            if (count % CHECK_INTERVAL == 0 && isExpired(deadline)) {
+                return Math.max(count, matches.estimatedNumResults());
+            }
+            matches.next();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Converts the Jena terms to an HDT triple pattern.
+     *
+     * @param subject the subject (null to match any subject)
+     * @param predicate the predicate (null to match any predicate)
+     * @param object the object (null to match any object)
+     * @return the HDT pattern, or null if one of the terms does not occur
+     */
+    private TripleID toTripleID(Resource subject, Property predicate, RDFNode object) {
+        int subjectId = subject == null ? 0 : dictionary.getIntID(subject.asNode(), TripleComponentRole.SUBJECT);
+        int predicateId = predicate == null ? 0 : dictionary.getIntID(predicate.asNode(), TripleComponentRole.PREDICATE);
+        int objectId = object == null ? 0 : dictionary.getIntID(object.asNode(), TripleComponentRole.OBJECT);
+
+        if (subjectId < 0 || predicateId < 0 || objectId < 0) {
+            return null;
+        }
+        return new TripleID(subjectId, predicateId, objectId);
+    }
+
+    /**
+     * Converts the term strings to an HDT triple pattern, by looking them
+     * up in the dictionary directly.
+     *
+     * @param subject the subject (null to match any subject)
+     * @param predicate the predicate (null to match any predicate)
+     * @param object the object (null to match any object)
+     * @return the HDT pattern, or null if one of the terms does not occur
+     */
+    TripleID toTripleID(String subject, String predicate, String object) {
+        int subjectId = getId(subject, TripleComponentRole.SUBJECT);
+        int predicateId = getId(predicate, TripleComponentRole.PREDICATE);
+        int objectId = getId(object, TripleComponentRole.OBJECT);
+
+        if (subjectId < 0 || predicateId < 0 || objectId < 0) {
+            return null;
+        }
+        return new TripleID(subjectId, predicateId, objectId);
+    }
+
+    /**
+     * Gets the ID of a term, remembering the IDs of recent terms.
+     *
+     * @param term the term string (null for any term)
+     * @param role the role of the term in the triple
+     * @return the ID, 0 for any term, or -1 if the term does not occur
+     */
+    private int getId(String term, TripleComponentRole role) {
+        if (term == null) {
+            return 0;
+        }
+        ConcurrentMap<String, Integer> ids = termIds[role.ordinal()];
+        Integer id = ids.get(term);
+        if (id == null) {
+            // an empty string would match any term
+            int found = term.isEmpty() ? -1 : datasource.getDictionary().stringToId(term, role);
+            id = found > 0 ? found : -1;
+            // start over rather than tracking usage when full
+            if (ids.size() >= MAXCACHEDTERMS) {
+                ids.clear();
+            }
+            ids.put(term, id);
+        }
+        return id;
     }
 }
@@ -0,0 +1,23 @@
+package org.linkeddatafragments.datasource;
+
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+
+/**
+ * A data source that can count the matches of a triple pattern without
+ * reading them, so clients can plan queries without downloading pages.
+ *
+ * @author Bart Hanssens
+ */
+public interface ICountDataSource extends IDataSource {
+    /**
+     * Gets the number of triples matching the specified triple pattern,
+     * as told by the indexes; it may be an estimate.
+     * @param subject the subject (null to match any subject)
+     * @param predicate the predicate (null to match any predicate)
+     * @param object the object (null to match any object)
+     * @return the number of matching triples, 0 only if there are none
+     */
+    public long getCount(Resource subject, Property predicate, RDFNode object);
+}
@@ -0,0 +1,35 @@
+package org.linkeddatafragments.datasource;
+
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
+import java.util.List;
+
+/**
+ * A data source that returns the matches of a triple pattern in a stable
+ * order, which depends on the pattern shape only. The pages of a fragment
+ * cover consecutive ranges of that order; the triples within a page may be
+ * serialized in any order. Clients can only merge-join fragments of a
+ * {@link org.linkeddatafragments.util.CommonResources#LDF_TERMORDER}
+ * collation, as they cannot compare the internal IDs of an
+ * {@link org.linkeddatafragments.util.CommonResources#LDF_INDEXORDER} one.
+ *
+ * @author Bart Hanssens
+ */
+public interface IOrderedDataSource extends IDataSource {
+    /**
+     * Gets the order of the matches of a triple pattern shape.
+     * @param subject whether the subject is bound
+     * @param predicate whether the predicate is bound
+     * @param object whether the object is bound
+     * @return the components the matches are sorted by, most significant first
+     */
+    public List<Property> getOrder(boolean subject, boolean predicate, boolean object);
+
+    /**
+     * Gets how the terms of a component are compared.
+     * @return ldf:TermOrder when terms are sorted by the code points of
+     * their canonical N-Triples form,
+     * ldf:IndexOrder when sorted by internal IDs
+     */
+    public Resource getCollation();
+}
@@ -0,0 +1,27 @@
+package org.linkeddatafragments.datasource;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A data source that can be updated with patches while it is served.
+ *
+ * @author Bart Hanssens
+ */
+public interface IPatchDataSource extends IDataSource {
+    /**
+     * Applies a patch: one change per line, "A" followed by an N-Triples
+     * triple to add it, or "D" followed by an N-Triples triple to delete it.
+     * The changes of a patch become visible at once.
+     * @param patch the patch
+     * @throws IOException if the patch cannot be read or stored
+     * @throws IllegalArgumentException if the patch is not valid
+     */
+    public void applyPatch(Reader patch) throws IOException;
+
+    /**
+     * Gets the time of the last change, so cached fragments can be told apart.
+     * @return time in milliseconds since the epoch, or 0 if unchanged
+     */
+    public long getModified();
+}
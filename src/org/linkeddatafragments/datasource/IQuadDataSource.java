@@ -0,0 +1,25 @@
+package org.linkeddatafragments.datasource;
+
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+
+/**
+ * A data source of Quad Pattern Fragments, with triples in named graphs.
+ *
+ * @author Bart Hanssens
+ */
+public interface IQuadDataSource extends IDataSource {
+    /**
+     * Gets a page of the fragment matching the triple pattern in a named graph.
+     * @param graph the named graph (null for the default graph)
+     * @param subject the subject (null to match any subject)
+     * @param predicate the predicate (null to match any predicate)
+     * @param object the object (null to match any object)
+     * @param offset the triple index at which to start the page
+     * @param limit the number of triples on the page
+     * @return the page of the fragment
+     */
+    public TriplePatternFragment getFragment(Resource graph, Resource subject, Property predicate,
+                                        RDFNode object, long offset, long limit);
+}
@@ -0,0 +1,25 @@
+package org.linkeddatafragments.datasource;
+
+/**
+ * A data source that can evaluate star patterns: triple patterns that
+ * share one subject, such as all properties of an entity.
+ *
+ * @author Bart Hanssens
+ */
+public interface IStarDataSource extends IDataSource {
+    /**
+     * Gets a page of the fragment of a star pattern. The fragment consists
+     * of the matching triples of every subject that matches all patterns,
+     * subject by subject, and is paged by triple, so the triples of one
+     * subject may span pages.
+     * Terms are given as for {@link ITermDataSource}.
+     * @param subject the subject (null to match any subject)
+     * @param predicates the predicate of every pattern
+     * @param objects the object of every pattern (null to match any object)
+     * @param offset the triple index at which to start the page
+     * @param limit the number of triples on the page
+     * @return the page of the fragment, with the number of triples as total
+     */
+    public TriplePatternFragment getStarFragment(String subject, String[] predicates,
+                                        String[] objects, long offset, long limit);
+}
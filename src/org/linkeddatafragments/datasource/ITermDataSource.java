@@ -0,0 +1,23 @@
+package org.linkeddatafragments.datasource;
+
+/**
+ * A data source that can look up triple patterns given as term strings,
+ * without creating Jena nodes.
+ *
+ * @author Bart Hanssens
+ */
+public interface ITermDataSource extends IDataSource {
+    /**
+     * Gets a page of the fragment matching the triple pattern. Terms are IRIs
+     * without angular brackets, or quoted literals with their language tag or
+     * datatype IRI in angular brackets.
+     * @param subject the subject (null to match any subject)
+     * @param predicate the predicate (null to match any predicate)
+     * @param object the object (null to match any object)
+     * @param offset the triple index at which to start the page
+     * @param limit the number of triples on the page
+     * @return the page of the fragment
+     */
+    public TriplePatternFragment getTermFragment(String subject, String predicate,
+                                        String object, long offset, long limit);
+}
@@ -0,0 +1,25 @@
+package org.linkeddatafragments.datasource;
+
+/**
+ * A data source that can find triples by words in their literal objects.
+ *
+ * @author Bart Hanssens
+ */
+public interface ITextDataSource extends IDataSource {
+    /**
+     * Checks if text search is enabled for this data source.
+     * @return true if text fragments can be requested
+     */
+    public boolean hasTextIndex();
+
+    /**
+     * Gets a page of the fragment of triples with a literal object
+     * containing all words of the text. The total of a page before the
+     * last one may be a lower bound, of at least the end of the page.
+     * @param text the words to search for
+     * @param offset the triple index at which to start the page
+     * @param limit the number of triples on the page
+     * @return the page of the fragment
+     */
+    public TriplePatternFragment getTextFragment(String text, long offset, long limit);
+}
@@ -0,0 +1,31 @@
+package org.linkeddatafragments.datasource;
+
+import java.util.List;
+
+/**
+ * A data source that keeps older versions of its data queryable.
+ * Fragments without a version are fragments of the latest version.
+ *
+ * @author Bart Hanssens
+ */
+public interface IVersionedDataSource extends IDataSource {
+    /**
+     * Gets the names of the versions.
+     * @return the names, oldest first
+     */
+    public List<String> getVersions();
+
+    /**
+     * Gets a page of the fragment matching the specified triple pattern in
+     * a version. Terms are given as for {@link ITermDataSource}.
+     * @param version the name of the version
+     * @param subject the subject (null to match any subject)
+     * @param predicate the predicate (null to match any predicate)
+     * @param object the object (null to match any object)
+     * @param offset the triple index at which to start the page
+     * @param limit the number of triples on the page
+     * @return the page of the fragment, or null if there is no such version
+     */
+    public TriplePatternFragment getVersionFragment(String version, String subject, String predicate,
+                                        String object, long offset, long limit);
+}
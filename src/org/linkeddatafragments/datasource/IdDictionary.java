@@ -0,0 +1,32 @@
+package org.linkeddatafragments.datasource;
+
+import org.rdfhdt.hdt.enums.TripleComponentRole;
+
+import com.hp.hpl.jena.graph.Node;
+
+/**
+ * Dictionary decoding the term IDs of a data source.
+ *
+ * @author Bart Hanssens
+ */
+interface IdDictionary {
+    /**
+     * Decodes an ID into a Jena node.
+     *
+     * @param id the ID
+     * @param role the role of the term in the triple
+     * @return the node
+     */
+    Node getNode(int id, TripleComponentRole role);
+
+    /**
+     * Decodes an ID into its string form: IRIs without angular brackets,
+     * blank nodes with their label, and quoted literals with their language
+     * tag or datatype IRI in angular brackets.
+     *
+     * @param id the ID
+     * @param role the role of the term in the triple
+     * @return the string
+     */
+    CharSequence getString(int id, TripleComponentRole role);
+}
@@ -5,6 +5,7 @@ import com.hp.hpl.jena.graph.GraphStatisticsHandler;
 import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.query.Dataset;
 import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryCancelledException;
 import com.hp.hpl.jena.query.QueryExecution;
 import com.hp.hpl.jena.query.QueryExecutionFactory;
 import com.hp.hpl.jena.query.QueryFactory;
@@ -20,28 +21,49 @@ import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.tdb.TDBFactory;
 import java.io.File;
+import java.util.List;
+import org.linkeddatafragments.exceptions.FragmentTimeoutException;
+import org.linkeddatafragments.util.CommonResources;
 
 /**
  * Experimental Jena TDB-backed data source of Basic Linked Data Fragments.
  *
  * @author Bart Hanssens <bart.hanssens@fedict.be>
  */
-public class JenaTDBDataSource extends DataSource {
-    private final Dataset tdb;
-    private final String sparql = "CONSTRUCT WHERE { ?s ?p ?o } " +
-                                    "ORDER BY ?s ?p ?o";
+public class JenaTDBDataSource extends DataSource implements IQuadDataSource, IOrderedDataSource {
+    // component order of the indexes
+    private final static int[] SPO = { 0, 1, 2 };
+    private final static int[] POS = { 1, 2, 0 };
+    private final static int[] OSP = { 2, 0, 1 };
+
+    protected final Dataset tdb;
+    // the matches are read in index order, which is stable, so no sorting is needed
+    private final String sparql = "CONSTRUCT WHERE { ?s ?p ?o }";
+    private final String graphSparql = "CONSTRUCT { ?s ?p ?o } " +
+                                    "WHERE { GRAPH ?g { ?s ?p ?o } }";
 
     private final String count = "SELECT (COUNT(?s) AS ?count) WHERE { ?s ?p ?o }";
+    private final String graphCount = "SELECT (COUNT(?s) AS ?count) " +
+                                    "WHERE { GRAPH ?g { ?s ?p ?o } }";
 
     private final Query query = QueryFactory.create(sparql, Syntax.syntaxSPARQL_11);
     private final Query countQuery = QueryFactory.create(count, Syntax.syntaxSPARQL_11);
+    private final Query graphQuery = QueryFactory.create(graphSparql, Syntax.syntaxSPARQL_11);
+    private final Query graphCountQuery = QueryFactory.create(graphCount, Syntax.syntaxSPARQL_11);
 
     @Override
     public TriplePatternFragment getFragment(Resource subject, Property predicate, RDFNode object, long offset, long limit) {
+        return getFragment(null, subject, predicate, object, offset, limit);
+    }
+
+    @Override
+    public TriplePatternFragment getFragment(Resource graph, Resource subject, Property predicate, RDFNode object, long offset, long limit) {
         checkBoundaries(offset, limit);
 
-        Model model = tdb.getDefaultModel();
         QuerySolutionMap map = new QuerySolutionMap();
+        if (graph != null) {
+            map.add("g", graph);
+        }
         if (subject != null) {
             map.add("s", subject);
         }
@@ -52,13 +74,18 @@ public class JenaTDBDataSource extends DataSource {
             map.add("o", object);
         }
 
-        query.setOffset(offset);
-        query.setLimit(limit);
+        // named graphs are read from the quad indexes of the dataset
+        Query pageQuery = (graph == null ? query : graphQuery).cloneQuery();
+        pageQuery.setOffset(offset);
+        pageQuery.setLimit(limit);
 
         Model triples = ModelFactory.createDefaultModel();
+        long deadline = getDeadline();
 
-        try (QueryExecution qexec = QueryExecutionFactory.create(query, model, map)) {
+        try (QueryExecution qexec = createExecution(pageQuery, graph, map, deadline)) {
             qexec.execConstruct(triples);
+        } catch (QueryCancelledException ex) {
+            throw new FragmentTimeoutException(ex);
         }
 
         if (triples.isEmpty()) {
@@ -68,14 +95,19 @@ public class JenaTDBDataSource extends DataSource {
         // Try to get an estimate
         long size = triples.size();
         long estimate = -1;
+        boolean complete = true;
 
-        try (QueryExecution qexec = QueryExecutionFactory.create(countQuery, model, map)) {
+        // a count taking too long is aborted, the page is still returned
+        try (QueryExecution qexec = createExecution(graph == null ? countQuery : graphCountQuery, graph, map, deadline)) {
             ResultSet results = qexec.execSelect();
             if (results.hasNext()) {
                 QuerySolution soln = results.nextSolution() ;
                 Literal literal = soln.getLiteral("count");
                 estimate = literal.getLong();
             }
+        } catch (QueryCancelledException ex) {
+            estimate = -1;
+            complete = false;
         }
 
         /*GraphStatisticsHandler stats = model.getGraph().getStatisticsHandler();
@@ -90,7 +122,42 @@ public class JenaTDBDataSource extends DataSource {
         if (estimate < offset + size) {
             estimate = (size == limit) ? offset + size + 1 : offset + size;
         }
-        return new TriplePatternFragmentBase(triples, estimate);
+        return new TriplePatternFragmentBase(triples, estimate, complete);
+    }
+
+    @Override
+    public List<Property> getOrder(boolean subject, boolean predicate, boolean object) {
+        // TDB reads a pattern from the index with the longest prefix of bound components
+        int[] order = subject ? (object && !predicate ? OSP : SPO)
+                : predicate ? POS
+                : object ? OSP : SPO;
+        return getOrder(order, subject, predicate, object);
+    }
+
+    @Override
+    public Resource getCollation() {
+        return CommonResources.LDF_INDEXORDER;
+    }
+
+    /**
+     * Creates an execution on the default graph, or on the dataset
+     * when a named graph is requested. The execution is aborted
+     * when the deadline passes.
+     *
+     * @param query the query
+     * @param graph the named graph, or null
+     * @param map the bindings
+     * @param deadline deadline in milliseconds since the epoch
+     * @return query execution
+     */
+    private QueryExecution createExecution(Query query, Resource graph, QuerySolutionMap map, long deadline) {
+        QueryExecution qexec = graph == null
+                ? QueryExecutionFactory.create(query, tdb.getDefaultModel(), map)
+                : QueryExecutionFactory.create(query, tdb, map);
+        if (deadline != Long.MAX_VALUE) {
+            qexec.setTimeout(Math.max(1, deadline - System.currentTimeMillis()));
+        }
+        return qexec;
     }
 
 
@@ -0,0 +1,139 @@
+package org.linkeddatafragments.datasource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.rdfhdt.hdt.dictionary.Dictionary;
+
+/**
+ * Inverted index of the words in the literals of an HDT dictionary.
+ * <p>
+ * Every word maps to the sorted object IDs of the literals containing it.
+ * Words are sequences of letters or digits, compared case-insensitively.</p>
+ *
+ * @author Bart Hanssens
+ */
+class LiteralIndex {
+    private final Map<String, int[]> postings = new HashMap<>();
+
+    /**
+     * Growable list of object IDs
+     */
+    private static class Postings {
+        private int[] ids = new int[4];
+        private int size = 0;
+
+        void add(int id) {
+            // IDs are added in order, skip repeated words in the same literal
+            if (size > 0 && ids[size - 1] == id) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    /**
+     * Builds the index from the objects section of an HDT dictionary.
+     *
+     * @param dictionary the HDT dictionary
+     */
+    LiteralIndex(Dictionary dictionary) {
+        Map<String, Postings> words = new HashMap<>();
+
+        // literals only occur in the objects section, after the shared section
+        int id = (int) dictionary.getNshared();
+        Iterator<? extends CharSequence> entries = dictionary.getObjects().getSortedEntries();
+        while (entries.hasNext()) {
+            CharSequence entry = entries.next();
+            id++;
+            if (entry.length() == 0 || entry.charAt(0) != '"') {
+                continue;
+            }
+            String literal = entry.toString();
+            int end = literal.lastIndexOf('"');
+            for (String word : tokenize(literal.substring(1, Math.max(1, end)))) {
+                Postings ids = words.get(word);
+                if (ids == null) {
+                    ids = new Postings();
+                    words.put(word, ids);
+                }
+                ids.add(id);
+            }
+        }
+        for (Map.Entry<String, Postings> word : words.entrySet()) {
+            Postings ids = word.getValue();
+            postings.put(word.getKey(), Arrays.copyOf(ids.ids, ids.size));
+        }
+    }
+
+    /**
+     * Finds the literals containing all words of the text.
+     *
+     * @param text the text
+     * @return sorted object IDs of the literals
+     */
+    int[] search(String text) {
+        int[] result = null;
+        for (String word : tokenize(text)) {
+            int[] ids = postings.get(word);
+            if (ids == null) {
+                return new int[0];
+            }
+            result = result == null ? ids : intersect(result, ids);
+        }
+        return result == null ? new int[0] : result;
+    }
+
+    /**
+     * Intersects two sorted arrays.
+     *
+     * @param a first array
+     * @param b second array
+     * @return sorted intersection
+     */
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int size = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length;) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Splits a text into lower case words.
+     *
+     * @param text the text
+     * @return list of words
+     */
+    private static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return words;
+    }
+}
@@ -0,0 +1,541 @@
+package org.linkeddatafragments.datasource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.linkeddatafragments.util.CommonResources;
+import org.rdfhdt.hdt.enums.TripleComponentRole;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+
+/**
+ * An in-memory data source of Basic Linked Data Fragments, for datasets
+ * that fit in RAM.
+ * <p>
+ * Terms are stored once, in a sorted array, and triples as IDs in primitive
+ * arrays: the triples themselves in subject-predicate-object order, and two
+ * permutations in predicate-object-subject and object-subject-predicate
+ * order. Every triple pattern matches a contiguous range of one of these
+ * orders, found with binary search, so counts are exact and pages can be
+ * read from any offset directly.</p>
+ * <p>
+ * Terms are sorted by the Unicode code points of their canonical N-Triples
+ * form, an order clients can reproduce to merge-join fragments.</p>
+ * <p>
+ * The arrays can be saved to a binary snapshot, which loads much faster
+ * than parsing the RDF again.</p>
+ *
+ * @author Bart Hanssens
+ */
+public class MemoryDataSource extends DataSource implements ITermDataSource, IOrderedDataSource {
+    private final static int MAGIC = 0x4C444D32;
+
+    // component order of the indexes
+    private final static int[] SPO = { 0, 1, 2 };
+    private final static int[] POS = { 1, 2, 0 };
+    private final static int[] OSP = { 2, 0, 1 };
+
+    /**
+     * Compares term strings by the code points of their N-Triples forms
+     */
+    private final static Comparator<String> TERM_ORDER = new Comparator<String>() {
+        @Override
+        public int compare(String a, String b) {
+            return compareCodePoints(TermStrings.toNTriples(a), TermStrings.toNTriples(b));
+        }
+    };
+
+    // sorted terms, the ID of a term is its position + 1
+    private String[] terms;
+    // subject, predicate and object ID of every triple, in SPO order
+    private int[] triples;
+    // triple numbers in POS and OSP order
+    private int[] pos;
+    private int[] osp;
+
+    private final IdDictionary idDictionary = new IdDictionary() {
+        @Override
+        public Node getNode(int id, TripleComponentRole role) {
+            return TermStrings.toNode(terms[id - 1]);
+        }
+
+        @Override
+        public CharSequence getString(int id, TripleComponentRole role) {
+            return terms[id - 1];
+        }
+    };
+
+    /**
+     * Collects the terms and triples of a parsed RDF file
+     */
+    private static class Loader extends StreamRDFBase {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private int[] triples = new int[3 * 1024];
+        private int size = 0;
+
+        @Override
+        public void triple(Triple triple) {
+            if (size + 3 > triples.length) {
+                triples = Arrays.copyOf(triples, triples.length * 2);
+            }
+            triples[size++] = getId(triple.getSubject());
+            triples[size++] = getId(triple.getPredicate());
+            triples[size++] = getId(triple.getObject());
+        }
+
+        private int getId(Node node) {
+            String term = TermStrings.toString(node);
+            Integer id = ids.get(term);
+            if (id == null) {
+                id = ids.size() + 1;
+                ids.put(term, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Creates a new MemoryDataSource. A snapshot is used when it is newer
+     * than the RDF file and of the current format, otherwise the file is parsed and the snapshot is
+     * (re)created.
+     *
+     * @param title title of the datasource
+     * @param description datasource description
+     * @param file the RDF file, in a format Jena can guess from its name
+     * @param snapshot the snapshot file, or null to parse the RDF file
+     * @throws IOException if the file or snapshot cannot be read
+     */
+    public MemoryDataSource(String title, String description, File file, File snapshot) throws IOException {
+        super(title, description);
+        if (snapshot != null && snapshot.exists() && snapshot.lastModified() >= file.lastModified()
+                && readSnapshot(snapshot)) {
+            return;
+        }
+        load(file);
+        if (snapshot != null) {
+            writeSnapshot(snapshot);
+        }
+    }
+
+    @Override
+    public TriplePatternFragment getFragment(Resource subject, Property predicate, RDFNode object, long offset, long limit) {
+        return getTermFragment(
+                subject == null ? null : TermStrings.toString(subject.asNode()),
+                predicate == null ? null : TermStrings.toString(predicate.asNode()),
+                object == null ? null : TermStrings.toString(object.asNode()),
+                offset, limit);
+    }
+
+    @Override
+    public TriplePatternFragment getTermFragment(String subject, String predicate, String object, long offset, long limit) {
+        checkBoundaries(offset, limit);
+
+        int subjectId = getId(subject);
+        int predicateId = getId(predicate);
+        int objectId = getId(object);
+        if (subjectId < 0 || predicateId < 0 || objectId < 0) {
+            return new TripleIDPage(idDictionary, new int[0], 0);
+        }
+
+        // the matches form a range of the index, found by the bound components
+        int[] order = getIndexOrder(subjectId > 0, predicateId > 0, objectId > 0);
+        int[] index = order == POS ? pos : order == OSP ? osp : null;
+        int[] ids = { subjectId, predicateId, objectId };
+        int[] key = new int[3];
+        int keyLength = 0;
+        while (keyLength < 3 && ids[order[keyLength]] > 0) {
+            key[keyLength] = ids[order[keyLength]];
+            keyLength++;
+        }
+        key = Arrays.copyOf(key, keyLength);
+
+        int from = search(index, order, key, false);
+        int to = search(index, order, key, true);
+
+        // copy the requested page of the range
+        long start = Math.min(to, from + offset);
+        int size = (int) Math.min(to - start, limit);
+        int[] page = new int[3 * size];
+        for (int i = 0; i < size; i++) {
+            int triple = index == null ? (int) start + i : index[(int) start + i];
+            System.arraycopy(triples, 3 * triple, page, 3 * i, 3);
+        }
+        return new TripleIDPage(idDictionary, page, to - from);
+    }
+
+    /**
+     * Picks the index in which the matches of a pattern shape form a range.
+     *
+     * @param subject whether the subject is bound
+     * @param predicate whether the predicate is bound
+     * @param object whether the object is bound
+     * @return component order of the index
+     */
+    private static int[] getIndexOrder(boolean subject, boolean predicate, boolean object) {
+        if (subject && object && !predicate) {
+            return OSP;
+        }
+        if (subject) {
+            return SPO;
+        }
+        if (predicate) {
+            return POS;
+        }
+        return object ? OSP : SPO;
+    }
+
+    @Override
+    public List<Property> getOrder(boolean subject, boolean predicate, boolean object) {
+        return getOrder(getIndexOrder(subject, predicate, object), subject, predicate, object);
+    }
+
+    @Override
+    public Resource getCollation() {
+        // IDs follow the code point order of the N-Triples forms
+        return CommonResources.LDF_TERMORDER;
+    }
+
+    /**
+     * Gets the number of triples.
+     *
+     * @return number of triples
+     */
+    public int size() {
+        return triples.length / 3;
+    }
+
+    /**
+     * Gets the ID of a term.
+     *
+     * @param term the term string (null for any term)
+     * @return the ID, 0 for any term, or -1 if the term does not occur
+     */
+    private int getId(String term) {
+        if (term == null) {
+            return 0;
+        }
+        int position = Arrays.binarySearch(terms, term, TERM_ORDER);
+        return position < 0 ? -1 : position + 1;
+    }
+
+    /**
+     * Compares two strings by their Unicode code points, rather than by
+     * their UTF-16 units: supplementary characters sort after all others.
+     *
+     * @param a the first string
+     * @param b the second string
+     * @return negative, zero or positive
+     */
+    private static int compareCodePoints(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; i++) {
+            char x = a.charAt(i);
+            char y = b.charAt(i);
+            if (x != y) {
+                // move the surrogates above the rest of the basic plane
+                if (x >= 0xD800 && y >= 0xD800) {
+                    x += x >= 0xE000 ? -0x800 : 0x2000;
+                    y += y >= 0xE000 ? -0x800 : 0x2000;
+                }
+                return x - y;
+            }
+        }
+        return a.length() - b.length();
+    }
+
+    /**
+     * Finds the first position in an order at which the triples are not
+     * smaller than (or, for an upper bound, greater than) a key.
+     *
+     * @param index triple numbers in the order, or null for SPO
+     * @param order the component order
+     * @param key IDs of the first components in the order
+     * @param upper true to find the end of the range matching the key
+     * @return the position
+     */
+    private int search(int[] index, int[] order, int[] key, boolean upper) {
+        int low = 0;
+        int high = triples.length / 3;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int triple = index == null ? middle : index[middle];
+            int comparison = 0;
+            for (int i = 0; i < key.length && comparison == 0; i++) {
+                comparison = Integer.compare(triples[3 * triple + order[i]], key[i]);
+            }
+            if (comparison < 0 || (upper && comparison == 0)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Parses an RDF file, and builds the dictionary and the indexes.
+     *
+     * @param file the RDF file
+     */
+    private void load(File file) {
+        Loader loader = new Loader();
+        RDFDataMgr.parse(loader, file.getAbsolutePath());
+
+        // sort the terms by their N-Triples forms, which are built once,
+        // and renumber the triples accordingly
+        final String[] keys = new String[loader.ids.size()];
+        terms = new String[keys.length];
+        Integer[] sorted = new Integer[keys.length];
+        for (Map.Entry<String, Integer> term : loader.ids.entrySet()) {
+            int id = term.getValue() - 1;
+            terms[id] = term.getKey();
+            keys[id] = TermStrings.toNTriples(term.getKey());
+            sorted[id] = id;
+        }
+        loader.ids.clear();
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return compareCodePoints(keys[a], keys[b]);
+            }
+        });
+        int[] renumber = new int[terms.length + 1];
+        String[] ordered = new String[terms.length];
+        for (int i = 0; i < sorted.length; i++) {
+            renumber[sorted[i] + 1] = i + 1;
+            ordered[i] = terms[sorted[i]];
+        }
+        terms = ordered;
+
+        int count = loader.size / 3;
+        int[] loaded = loader.triples;
+        for (int i = 0; i < loader.size; i++) {
+            loaded[i] = renumber[loaded[i]];
+        }
+
+        // sort the triples, and drop duplicates
+        int[] index = identity(count);
+        sort(index, 0, count, loaded, SPO);
+        triples = new int[3 * count];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            if (size == 0 || compare(loaded, index[i], index[i - 1], SPO) != 0) {
+                System.arraycopy(loaded, 3 * index[i], triples, 3 * size, 3);
+                size++;
+            }
+        }
+        triples = Arrays.copyOf(triples, 3 * size);
+
+        pos = identity(size);
+        sort(pos, 0, size, triples, POS);
+        osp = identity(size);
+        sort(osp, 0, size, triples, OSP);
+    }
+
+    /**
+     * Creates an array with the numbers from 0.
+     *
+     * @param size length of the array
+     * @return the array
+     */
+    private static int[] identity(int size) {
+        int[] index = new int[size];
+        for (int i = 0; i < size; i++) {
+            index[i] = i;
+        }
+        return index;
+    }
+
+    /**
+     * Compares two triples in a component order.
+     *
+     * @param triples the triples
+     * @param a number of the first triple
+     * @param b number of the second triple
+     * @param order the component order
+     * @return negative, zero or positive
+     */
+    private static int compare(int[] triples, int a, int b, int[] order) {
+        for (int component : order) {
+            int comparison = Integer.compare(triples[3 * a + component], triples[3 * b + component]);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Sorts triple numbers in a component order, with a three-way quicksort
+     * on the primitive array.
+     *
+     * @param index the triple numbers
+     * @param from first position to sort
+     * @param to end of the positions to sort
+     * @param triples the triples
+     * @param order the component order
+     */
+    private static void sort(int[] index, int from, int to, int[] triples, int[] order) {
+        while (to - from > 16) {
+            // median of three as pivot
+            int a = index[from];
+            int b = index[(from + to) >>> 1];
+            int c = index[to - 1];
+            int pivot = compare(triples, a, b, order) < 0
+                    ? (compare(triples, b, c, order) < 0 ? b : compare(triples, a, c, order) < 0 ? c : a)
+                    : (compare(triples, a, c, order) < 0 ? a : compare(triples, b, c, order) < 0 ? c : b);
+
+            int lower = from;
+            int greater = to - 1;
+            int i = from;
+            while (i <= greater) {
+                int comparison = compare(triples, index[i], pivot, order);
+                if (comparison < 0) {
+                    swap(index, lower++, i++);
+                } else if (comparison > 0) {
+                    swap(index, i, greater--);
+                } else {
+                    i++;
+                }
+            }
+            // recurse into the smaller part, so the stack stays shallow
+            if (lower - from < to - greater - 1) {
+                sort(index, from, lower, triples, order);
+                from = greater + 1;
+            } else {
+                sort(index, greater + 1, to, triples, order);
+                to = lower;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            for (int j = i; j > from && compare(triples, index[j - 1], index[j], order) > 0; j--) {
+                swap(index, j - 1, j);
+            }
+        }
+    }
+
+    private static void swap(int[] index, int i, int j) {
+        int value = index[i];
+        index[i] = index[j];
+        index[j] = value;
+    }
+
+    /**
+     * Writes the dictionary and the indexes to a snapshot file.
+     *
+     * @param snapshot the snapshot file
+     * @throws IOException
+     */
+    private void writeSnapshot(File snapshot) throws IOException {
+        File temp = new File(snapshot.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(terms.length);
+            for (String term : terms) {
+                byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.writeInt(triples.length / 3);
+            writeInts(out, triples);
+            writeInts(out, pos);
+            writeInts(out, osp);
+        }
+        if (!temp.renameTo(snapshot)) {
+            snapshot.delete();
+            if (!temp.renameTo(snapshot)) {
+                throw new IOException("Could not create snapshot " + snapshot);
+            }
+        }
+    }
+
+    /**
+     * Reads the dictionary and the indexes from a snapshot file.
+     *
+     * @param snapshot the snapshot file
+     * @return false if the file is not a snapshot of the current format
+     * @throws IOException
+     */
+    private boolean readSnapshot(File snapshot) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(snapshot), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                return false;
+            }
+            terms = new String[in.readInt()];
+            byte[] bytes = new byte[256];
+            for (int i = 0; i < terms.length; i++) {
+                int length = in.readInt();
+                if (length > bytes.length) {
+                    bytes = new byte[Math.max(length, 2 * bytes.length)];
+                }
+                in.readFully(bytes, 0, length);
+                terms[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+            int count = in.readInt();
+            triples = readInts(in, 3 * count);
+            pos = readInts(in, count);
+            osp = readInts(in, count);
+        }
+        return true;
+    }
+
+    /**
+     * Writes an array of integers in large chunks.
+     *
+     * @param out the stream
+     * @param values the integers
+     * @throws IOException
+     */
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        for (int i = 0; i < values.length;) {
+            int length = Math.min(values.length - i, buffer.capacity() / 4);
+            buffer.clear();
+            buffer.asIntBuffer().put(values, i, length);
+            out.write(buffer.array(), 0, 4 * length);
+            i += length;
+        }
+    }
+
+    /**
+     * Reads an array of integers in large chunks.
+     *
+     * @param in the stream
+     * @param count the number of integers
+     * @return the integers
+     * @throws IOException
+     */
+    private static int[] readInts(DataInputStream in, int count) throws IOException {
+        int[] values = new int[count];
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        for (int i = 0; i < count;) {
+            int length = Math.min(count - i, buffer.capacity() / 4);
+            in.readFully(buffer.array(), 0, 4 * length);
+            buffer.clear();
+            buffer.asIntBuffer().get(values, i, length);
+            i += length;
+        }
+        return values;
+    }
+}
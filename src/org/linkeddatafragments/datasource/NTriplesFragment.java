@@ -0,0 +1,25 @@
+package org.linkeddatafragments.datasource;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A Triple Pattern Fragment that can write its triples as N-Triples,
+ * without building a Jena model.
+ *
+ * @author Bart Hanssens
+ */
+public interface NTriplesFragment extends TriplePatternFragment {
+    /**
+     * Gets the number of triples on this page.
+     * @return number of triples
+     */
+    public int size();
+
+    /**
+     * Writes the data of this fragment as N-Triples.
+     * @param writer the writer
+     * @throws IOException
+     */
+    public void writeNTriples(Writer writer) throws IOException;
+}
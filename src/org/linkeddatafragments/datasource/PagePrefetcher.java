@@ -0,0 +1,166 @@
+package org.linkeddatafragments.datasource;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.rdfhdt.hdt.triples.IteratorTripleID;
+import org.rdfhdt.hdt.triples.TripleID;
+
+/**
+ * Reads pages of HDT fragments ahead, in the background.
+ * <p>
+ * Clients are considered to walk through a fragment when they request the
+ * page following the last one they got. The read-ahead uses a few
+ * low-priority threads and a bounded queue: when the queue is full, new
+ * read-aheads are dropped instead of competing with regular requests.</p>
+ *
+ * @author Bart Hanssens
+ */
+class PagePrefetcher {
+
+    /**
+     * A page read ahead, with the matches positioned after the page
+     */
+    static class Page {
+        private final TriplePatternFragment fragment;
+        private final IteratorTripleID matches;
+
+        Page(TriplePatternFragment fragment, IteratorTripleID matches) {
+            this.fragment = fragment;
+            this.matches = matches;
+        }
+
+        TriplePatternFragment getFragment() {
+            return fragment;
+        }
+
+        IteratorTripleID getMatches() {
+            return matches;
+        }
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final Map<List<Object>, Page> pages;
+    private final Map<List<Integer>, Long> lastOffsets;
+
+    /**
+     * Creates a bounded, synchronized map dropping the least recently used
+     * entries.
+     *
+     * @param <K> type of the key
+     * @param <V> type of the value
+     * @param size maximum size
+     * @return map
+     */
+    private static <K, V> Map<K, V> createLRU(final int size) {
+        return Collections.synchronizedMap(new LinkedHashMap<K, V>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > size;
+            }
+        });
+    }
+
+    /**
+     * Creates a new PagePrefetcher.
+     *
+     * @param threads number of background threads
+     * @param queueSize maximum number of pending read-aheads
+     * @param cacheSize maximum number of pages read ahead
+     */
+    PagePrefetcher(int threads, int queueSize, int cacheSize) {
+        this.pages = createLRU(cacheSize);
+        this.lastOffsets = createLRU(cacheSize);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "hdt-prefetch");
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    }
+                },
+                new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    /**
+     * Records the request of a page, and checks if it follows the page
+     * requested before.
+     *
+     * @param pattern the HDT pattern
+     * @param offset the triple index at which the page starts
+     * @param limit the number of triples on the page
+     * @return true if the previous page was requested last
+     */
+    boolean isSequential(TripleID pattern, long offset, long limit) {
+        Long previous = lastOffsets.put(toKey(pattern), offset);
+        return previous != null && previous == offset - limit;
+    }
+
+    /**
+     * Takes a page read ahead, if any.
+     *
+     * @param pattern the HDT pattern
+     * @param offset the triple index at which the page starts
+     * @param limit the number of triples on the page
+     * @return the page or null
+     */
+    Page take(TripleID pattern, long offset, long limit) {
+        Page page = pages.remove(toKey(pattern, offset, limit));
+        if (page != null) {
+            lastOffsets.put(toKey(pattern), offset);
+        }
+        return page;
+    }
+
+    /**
+     * Stops reading ahead, and drops the pages read ahead.
+     */
+    void shutdown() {
+        executor.shutdownNow();
+        pages.clear();
+    }
+
+    /**
+     * Reads a page ahead, unless too many read-aheads are pending.
+     *
+     * @param pattern the HDT pattern
+     * @param offset the triple index at which the page starts
+     * @param limit the number of triples on the page
+     * @param reader reads the page
+     */
+    void prefetch(TripleID pattern, long offset, long limit, final Callable<Page> reader) {
+        final List<Object> key = toKey(pattern, offset, limit);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    pages.put(key, reader.call());
+                } catch (Exception ex) {
+                    // only an optimization, the page will be read on request
+                }
+            }
+        });
+    }
+
+    private static List<Integer> toKey(TripleID pattern) {
+        return Arrays.asList(pattern.getSubject(), pattern.getPredicate(), pattern.getObject());
+    }
+
+    private static List<Object> toKey(TripleID pattern, long offset, long limit) {
+        return Arrays.<Object>asList(pattern.getSubject(), pattern.getPredicate(), pattern.getObject(),
+                offset, limit);
+    }
+}
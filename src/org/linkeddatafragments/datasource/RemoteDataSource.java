@@ -0,0 +1,442 @@
+package org.linkeddatafragments.datasource;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.linkeddatafragments.exceptions.FragmentTimeoutException;
+import org.linkeddatafragments.util.CommonResources;
+import org.linkeddatafragments.util.SingleFlight;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Literal;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.Statement;
+
+/**
+ * A data source of Basic Linked Data Fragments proxying an upstream
+ * Triple Pattern Fragments server.
+ * <p>
+ * Upstream responses are kept in an optional disk cache of bounded size, so
+ * hot fragments can be served locally, and identical concurrent requests to
+ * the upstream server are coalesced into one.</p>
+ * <p>
+ * A page is cut from the upstream pages covering it, in the order the
+ * upstream server serializes its data, so the page size of the upstream
+ * server has to be configured when it is not 100.</p>
+ *
+ * @author Bart Hanssens
+ */
+public class RemoteDataSource extends DataSource {
+    private final static String ACCEPT = "application/n-triples,text/turtle;q=0.9";
+    // time budget of upstream requests without a timeout, in milliseconds
+    private final static int DEFAULT_TIMEOUT = 30 * 1000;
+
+    private final String url;
+    private final long pageSize;
+    private final File cacheDir;
+    private final long cacheTTL;
+    private final long cacheSize;
+    private final AtomicLong cacheUsed = new AtomicLong();
+    private final CloseableHttpClient client;
+    private final SingleFlight<String, Response> inFlight = new SingleFlight<>();
+
+    /**
+     * Response of the upstream server
+     */
+    private static class Response {
+        final String contentType;
+        final byte[] body;
+
+        Response(String contentType, byte[] body) {
+            this.contentType = contentType;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Creates a new RemoteDataSource.
+     *
+     * @param title title of the datasource
+     * @param description datasource description
+     * @param url URL of the upstream dataset
+     * @param pageSize number of triples on a page of the upstream server
+     * @param cacheDir cache directory, or null to disable caching
+     * @param cacheTTL time to live of cached fragments, in seconds
+     * @param cacheSize maximum size of the cache, in bytes
+     * @param maxConnections maximum number of connections to the upstream server
+     */
+    public RemoteDataSource(String title, String description, String url, long pageSize,
+            File cacheDir, long cacheTTL, long cacheSize, int maxConnections) {
+        super(title, description);
+        this.url = url;
+        this.pageSize = pageSize;
+        this.cacheDir = cacheDir;
+        this.cacheTTL = cacheTTL * 1000;
+        this.cacheSize = cacheSize;
+        if (cacheDir != null) {
+            cacheDir.mkdirs();
+            evictCache();
+        }
+
+        PoolingHttpClientConnectionManager pool = new PoolingHttpClientConnectionManager();
+        pool.setMaxTotal(maxConnections);
+        pool.setDefaultMaxPerRoute(maxConnections);
+        this.client = HttpClients.custom().setConnectionManager(pool).build();
+    }
+
+    @Override
+    public TriplePatternFragment getFragment(Resource subject, Property predicate, RDFNode object, long offset, long limit) {
+        checkBoundaries(offset, limit);
+
+        // cut the page from the upstream pages covering it
+        Model triples = ModelFactory.createDefaultModel();
+        long total = 0;
+        for (long page = offset / pageSize; page <= (offset + limit - 1) / pageSize; page++) {
+            List<Triple> data = new ArrayList<>();
+            Long pageTotal = getPage(subject, predicate, object, page + 1, data);
+            if (pageTotal == null) {
+                break;
+            }
+            total = Math.max(total, pageTotal);
+            for (int i = 0; i < data.size(); i++) {
+                long position = page * pageSize + i;
+                if (position >= offset && position < offset + limit) {
+                    triples.getGraph().add(data.get(i));
+                }
+            }
+            if (data.size() < pageSize) {
+                break;
+            }
+        }
+        return new TriplePatternFragmentBase(triples, Math.max(total, offset + triples.size()));
+    }
+
+    /**
+     * Gets a page of the upstream server.
+     *
+     * @param subject the subject (null to match any subject)
+     * @param predicate the predicate (null to match any predicate)
+     * @param object the object (null to match any object)
+     * @param page the number of the page, starting at 1
+     * @param data receives the data triples of the page, in upstream order
+     * @return the total number of triples reported by the upstream server,
+     * or null if the upstream server has no such fragment
+     */
+    private Long getPage(Resource subject, Property predicate, RDFNode object, long page, List<Triple> data) {
+        final String fragmentUrl;
+        try {
+            URIBuilder builder = new URIBuilder(url);
+            if (subject != null) {
+                builder.setParameter("subject", toParameter(subject));
+            }
+            if (predicate != null) {
+                builder.setParameter("predicate", toParameter(predicate));
+            }
+            if (object != null) {
+                builder.setParameter("object", toParameter(object));
+            }
+            builder.setParameter("page", Long.toString(page));
+            fragmentUrl = builder.toString();
+        } catch (URISyntaxException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+
+        // the upstream request gets the time left for this fragment
+        long deadline = getDeadline();
+        final int timeout = deadline == Long.MAX_VALUE
+                ? DEFAULT_TIMEOUT
+                : (int) Math.min(Integer.MAX_VALUE, deadline - System.currentTimeMillis());
+        if (timeout <= 0) {
+            throw new FragmentTimeoutException("No time left to request " + fragmentUrl);
+        }
+
+        Response response;
+        try {
+            response = inFlight.get(fragmentUrl, new Callable<Response>() {
+                @Override
+                public Response call() throws IOException {
+                    return fetch(fragmentUrl, timeout);
+                }
+            });
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof SocketTimeoutException
+                    || ex.getCause() instanceof ConnectTimeoutException
+                    || ex.getCause() instanceof ConnectionPoolTimeoutException) {
+                throw new FragmentTimeoutException(ex.getCause());
+            }
+            if (ex.getCause() instanceof IOException) {
+                throw new UncheckedIOException((IOException) ex.getCause());
+            }
+            throw new IllegalStateException(ex.getCause());
+        }
+        if (response == null) {
+            return null;
+        }
+
+        // keep the order of the triples, to cut pages consistently
+        final List<Triple> parsed = new ArrayList<>();
+        Lang lang = RDFLanguages.contentTypeToLang(response.contentType);
+        RDFDataMgr.parse(new StreamRDFBase() {
+            @Override
+            public void triple(Triple triple) {
+                parsed.add(triple);
+            }
+        }, new ByteArrayInputStream(response.body), fragmentUrl, lang == null ? Lang.TURTLE : lang);
+
+        Model triples = ModelFactory.createDefaultModel();
+        for (Triple triple : parsed) {
+            triples.getGraph().add(triple);
+        }
+        Set<Node> metadata = new HashSet<>();
+        long total = findMetadata(triples, fragmentUrl, metadata);
+        for (Triple triple : parsed) {
+            if (!metadata.contains(triple.getSubject())) {
+                data.add(triple);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Gets the upstream response, from the cache if possible.
+     *
+     * @param fragmentUrl URL of the fragment
+     * @param timeout connect and socket timeout, in milliseconds
+     * @return the response, or null if the upstream server has no such fragment
+     * @throws IOException
+     */
+    private Response fetch(String fragmentUrl, int timeout) throws IOException {
+        File cached = null;
+        if (cacheDir != null) {
+            cached = new File(cacheDir, toFileName(fragmentUrl));
+            if (cached.lastModified() + cacheTTL > System.currentTimeMillis()) {
+                try (DataInputStream in = new DataInputStream(new FileInputStream(cached))) {
+                    String contentType = in.readUTF();
+                    byte[] body = new byte[in.readInt()];
+                    in.readFully(body);
+                    return new Response(contentType, body);
+                } catch (IOException ex) {
+                    // unreadable cache entry, get it again
+                }
+            }
+        }
+
+        HttpGet get = new HttpGet(fragmentUrl);
+        get.setHeader("Accept", ACCEPT);
+        get.setConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout(timeout)
+                .setConnectTimeout(timeout)
+                .setSocketTimeout(timeout)
+                .build());
+        Response response;
+        try (CloseableHttpResponse upstream = client.execute(get)) {
+            int status = upstream.getStatusLine().getStatusCode();
+            HttpEntity entity = upstream.getEntity();
+            if (status == HttpStatus.SC_NOT_FOUND) {
+                EntityUtils.consume(entity);
+                return null;
+            }
+            if (status != HttpStatus.SC_OK || entity == null) {
+                EntityUtils.consume(entity);
+                throw new IOException("Upstream server returned " + status + " for " + fragmentUrl);
+            }
+            ContentType contentType = ContentType.get(entity);
+            response = new Response(contentType == null ? Lang.TURTLE.getHeaderString() : contentType.getMimeType(),
+                    EntityUtils.toByteArray(entity));
+        }
+
+        if (cached != null) {
+            long previous = cached.length();
+            File tmp = new File(cacheDir, cached.getName() + ".tmp" + Thread.currentThread().getId());
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp))) {
+                out.writeUTF(response.contentType);
+                out.writeInt(response.body.length);
+                out.write(response.body);
+            }
+            long size = tmp.length();
+            if (tmp.renameTo(cached)) {
+                if (cacheUsed.addAndGet(size - previous) > cacheSize) {
+                    evictCache();
+                }
+            } else {
+                tmp.delete();
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Deletes the expired files of the cache, and the oldest ones while the
+     * cache is too large.
+     */
+    private synchronized void evictCache() {
+        File[] files = cacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<File> kept = new ArrayList<>();
+        long used = 0;
+        for (File file : files) {
+            if (file.lastModified() + cacheTTL <= now) {
+                file.delete();
+            } else {
+                kept.add(file);
+                used += file.length();
+            }
+        }
+        Collections.sort(kept, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (int i = 0; i < kept.size() && used > cacheSize; i++) {
+            long length = kept.get(i).length();
+            if (kept.get(i).delete()) {
+                used -= length;
+            }
+        }
+        cacheUsed.set(used);
+    }
+
+    /**
+     * Gets the name of the cache file of a fragment.
+     *
+     * @param fragmentUrl URL of the fragment
+     * @return file name
+     */
+    private static String toFileName(String fragmentUrl) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1")
+                    .digest(fragmentUrl.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16))
+                    .append(Character.forDigit(b & 0xF, 16));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Finds the metadata and controls of the upstream server: the triples
+     * about the fragment and its datasets, and about the blank nodes
+     * reachable from them. Triples of other subjects are data, even when
+     * they use the same vocabularies.
+     * <p>
+     * The fragment is the requested URL, or the subset of a dataset with
+     * search controls that states a total, for servers that name their
+     * fragments differently.</p>
+     *
+     * @param triples the upstream fragment
+     * @param fragmentUrl URL of the requested fragment
+     * @param metadata receives the subjects of the metadata
+     * @return the total number of triples reported by the upstream server
+     */
+    private static long findMetadata(Model triples, String fragmentUrl, Set<Node> metadata) {
+        Set<Resource> fragments = new HashSet<>();
+        fragments.add(triples.createResource(fragmentUrl));
+        for (Statement subset : triples.listStatements(null, CommonResources.VOID_SUBSET, (RDFNode) null).toList()) {
+            if (subset.getObject().isURIResource()
+                    && subset.getSubject().hasProperty(CommonResources.HYDRA_SEARCH)
+                    && subset.getResource().hasProperty(CommonResources.HYDRA_TOTALITEMS)) {
+                fragments.add(subset.getResource());
+            }
+        }
+
+        long total = 0;
+        List<Resource> roots = new ArrayList<>();
+        for (Resource fragment : fragments) {
+            for (Property count : new Property[] { CommonResources.HYDRA_TOTALITEMS, CommonResources.VOID_TRIPLES }) {
+                for (Statement statement : fragment.listProperties(count).toList()) {
+                    RDFNode value = statement.getObject();
+                    if (value.isLiteral()) {
+                        total = Math.max(total, ((Literal) value).getLong());
+                    }
+                }
+            }
+            roots.add(fragment);
+            roots.addAll(triples.listSubjectsWithProperty(CommonResources.VOID_SUBSET, fragment).toList());
+        }
+
+        // the controls hang off the roots as blank nodes
+        while (!roots.isEmpty()) {
+            Resource root = roots.remove(roots.size() - 1);
+            if (!metadata.add(root.asNode())) {
+                continue;
+            }
+            for (Statement statement : root.listProperties().toList()) {
+                if (statement.getObject().isAnon()) {
+                    roots.add(statement.getResource());
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Converts a term to a TPF request parameter.
+     *
+     * @param node the term
+     * @return the parameter value
+     */
+    private static String toParameter(RDFNode node) {
+        if (!node.isLiteral()) {
+            return node.asResource().getURI();
+        }
+        Literal literal = node.asLiteral();
+        String value = "\"" + literal.getLexicalForm() + "\"";
+        if (!literal.getLanguage().isEmpty()) {
+            return value + "@" + literal.getLanguage();
+        }
+        if (literal.getDatatypeURI() != null) {
+            return value + "^^" + literal.getDatatypeURI();
+        }
+        return value;
+    }
+}
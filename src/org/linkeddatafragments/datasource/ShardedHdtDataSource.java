@@ -0,0 +1,212 @@
+package org.linkeddatafragments.datasource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.Statement;
+
+/**
+ * A data source of Basic Linked Data Fragments combining several HDT files
+ * (shards) into one logical dataset.
+ * <p>
+ * The shards are searched in parallel. Results are paged as if the shards
+ * were concatenated in the configured order, so paging is deterministic,
+ * and the total is the sum of the shard totals. A triple that is also in
+ * an earlier shard is left out of the page, rather than shifting the next
+ * triples, so pages of overlapping shards may be short and the total is
+ * an upper bound.</p>
+ * <p>
+ * The pages are cut at the exact number of matches of every shard, which
+ * are kept per pattern, since estimates would skip or repeat triples.
+ * Shards that cannot count the matches of a pattern by their index
+ * iterate them, and fail the request when time runs out; counts that were
+ * done are kept, so the next request continues with the other shards.</p>
+ *
+ * @author Bart Hanssens
+ */
+public class ShardedHdtDataSource extends DataSource {
+
+    // maximum number of kept counts
+    private final static int MAXCOUNTS = 65536;
+
+    private final List<HdtDataSource> shards = new ArrayList<>();
+    private final ExecutorService executor;
+    // exact number of matches, by shard and pattern
+    private final Map<List<Object>, Long> counts = Collections.synchronizedMap(
+            new LinkedHashMap<List<Object>, Long>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<Object>, Long> eldest) {
+                    return size() > MAXCOUNTS;
+                }
+            });
+
+    /**
+     * Creates a new ShardedHdtDataSource.
+     *
+     * @param title title of the datasource
+     * @param description datasource description
+     * @param hdtFiles the HDT datafiles, in paging order
+     * @param threads number of threads used to search the shards
+     * @throws IOException if one of the files cannot be loaded
+     */
+    public ShardedHdtDataSource(String title, String description,
+            List<String> hdtFiles, int threads) throws IOException {
+        super(title, description);
+        for (String hdtFile : hdtFiles) {
+            shards.add(new HdtDataSource(title, description, hdtFile));
+        }
+        executor = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "hdt-shard-search");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public void setTimeout(long timeout) {
+        super.setTimeout(timeout);
+        for (HdtDataSource shard : shards) {
+            shard.setTimeout(timeout);
+        }
+    }
+
+    @Override
+    public TriplePatternFragment getFragment(final Resource subject, final Property predicate,
+            final RDFNode object, final long offset, final long limit) {
+        checkBoundaries(offset, limit);
+        // the shards are searched by other threads, with the deadline of this one
+        final long deadline = getDeadline();
+
+        // count the matches of every shard exactly, in parallel, unless known
+        List<Future<Long>> pending = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            final HdtDataSource shard = shards.get(i);
+            final List<Object> key = Arrays.<Object>asList(i, subject, predicate, object);
+            pending.add(executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    Long count = counts.get(key);
+                    if (count != null) {
+                        return count;
+                    }
+                    setRequestDeadline(deadline);
+                    try {
+                        count = shard.countExactly(subject, predicate, object);
+                    } finally {
+                        setRequestDeadline(0);
+                    }
+                    counts.put(key, count);
+                    return count;
+                }
+            }));
+        }
+        long[] sizes = new long[shards.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = get(pending.get(i));
+        }
+
+        // locate the shards overlapping the requested page,
+        // and fetch their part of the page in parallel
+        List<Future<TriplePatternFragment>> parts = new ArrayList<>();
+        long total = 0;
+        for (int i = 0; i < shards.size(); i++) {
+            final HdtDataSource shard = shards.get(i);
+            final List<HdtDataSource> earlier = shards.subList(0, i);
+            long size = sizes[i];
+
+            final long start = Math.max(offset, total) - total;
+            final long end = Math.min(offset + limit, total + size) - total;
+            if (start < end) {
+                parts.add(executor.submit(new Callable<TriplePatternFragment>() {
+                    @Override
+                    public TriplePatternFragment call() {
+                        setRequestDeadline(deadline);
+                        try {
+                            TriplePatternFragment part = shard.getFragment(subject, predicate, object,
+                                    start, end - start);
+                            // triples of earlier shards were already paged there
+                            Model triples = ModelFactory.createDefaultModel();
+                            for (Statement statement : part.getTriples().listStatements().toList()) {
+                                if (!contains(earlier, statement)) {
+                                    triples.add(statement);
+                                }
+                            }
+                            return new TriplePatternFragmentBase(triples, part.getTotalSize(), part.isComplete());
+                        } finally {
+                            setRequestDeadline(0);
+                        }
+                    }
+                }));
+            }
+            total += size;
+        }
+
+        // merge the parts in shard order
+        Model triples = ModelFactory.createDefaultModel();
+        boolean complete = true;
+        for (Future<TriplePatternFragment> part : parts) {
+            TriplePatternFragment fragment = get(part);
+            triples.add(fragment.getTriples());
+            complete &= fragment.isComplete();
+        }
+        return new TriplePatternFragmentBase(triples, total, complete);
+    }
+
+    /**
+     * Checks if one of the shards holds the triple.
+     *
+     * @param shards the shards
+     * @param statement the triple
+     * @return true if the triple is in one of the shards
+     */
+    private static boolean contains(List<HdtDataSource> shards, Statement statement) {
+        for (HdtDataSource shard : shards) {
+            if (shard.contains(statement)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Waits for the result of a shard search.
+     *
+     * @param <T> type of the result
+     * @param future the pending search
+     * @return the result
+     */
+    private static <T> T get(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package org.linkeddatafragments.datasource;
+
+import com.hp.hpl.jena.datatypes.TypeMapper;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.rdf.model.AnonId;
+
+/**
+ * Converts between nodes and the string form of terms used by the HDT
+ * dictionary, in which literals keep their lexical form unescaped.
+ *
+ * @author Bart Hanssens
+ */
+public class TermStrings {
+    private final static TypeMapper TYPES = TypeMapper.getInstance();
+
+    /**
+     * Converts a node to its string form: IRIs without angular brackets,
+     * blank nodes with their label, and quoted literals with their language
+     * tag or datatype IRI in angular brackets.
+     *
+     * @param node the node
+     * @return the string
+     */
+    public static String toString(Node node) {
+        if (node.isURI()) {
+            return node.getURI();
+        }
+        if (node.isBlank()) {
+            return "_:" + node.getBlankNodeLabel();
+        }
+        String literal = '"' + node.getLiteralLexicalForm() + '"';
+        String language = node.getLiteralLanguage();
+        if (language != null && !language.isEmpty()) {
+            return literal + '@' + language;
+        }
+        String datatype = node.getLiteralDatatypeURI();
+        return datatype == null ? literal : literal + "^^<" + datatype + '>';
+    }
+
+    /**
+     * Converts a string form to the canonical N-Triples form of the term:
+     * IRIs in angular brackets, and literals with only quotes, backslashes,
+     * line feeds and carriage returns escaped.
+     *
+     * @param term the string
+     * @return the N-Triples form
+     */
+    static String toNTriples(String term) {
+        if (term.startsWith("_:")) {
+            return term;
+        }
+        if (!term.startsWith("\"")) {
+            return '<' + term + '>';
+        }
+        int end = term.lastIndexOf('"');
+        StringBuilder literal = new StringBuilder(term.length() + 8).append('"');
+        for (int i = 1; i < end; i++) {
+            char c = term.charAt(i);
+            switch (c) {
+                case '"':
+                    literal.append("\\\"");
+                    break;
+                case '\\':
+                    literal.append("\\\\");
+                    break;
+                case '\n':
+                    literal.append("\\n");
+                    break;
+                case '\r':
+                    literal.append("\\r");
+                    break;
+                default:
+                    literal.append(c);
+            }
+        }
+        return literal.append(term, end, term.length()).toString();
+    }
+
+    /**
+     * Converts a string form back into a node.
+     *
+     * @param term the string
+     * @return the node
+     */
+    static Node toNode(String term) {
+        if (term.startsWith("_:")) {
+            return NodeFactory.createAnon(new AnonId(term.substring(2)));
+        }
+        if (!term.startsWith("\"")) {
+            return NodeFactory.createURI(term);
+        }
+        int end = term.lastIndexOf('"');
+        String lexical = term.substring(1, end);
+        if (term.startsWith("@", end + 1)) {
+            return NodeFactory.createLiteral(lexical, term.substring(end + 2), false);
+        }
+        if (term.startsWith("^^<", end + 1)) {
+            String datatype = term.substring(end + 4, term.length() - 1);
+            return NodeFactory.createLiteral(lexical, null, TYPES.getSafeTypeByName(datatype));
+        }
+        return NodeFactory.createLiteral(lexical);
+    }
+}
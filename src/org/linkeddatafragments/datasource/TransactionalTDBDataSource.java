@@ -0,0 +1,83 @@
+package org.linkeddatafragments.datasource;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.ReadWrite;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * Jena TDB-backed data source that reads every fragment in its own read
+ * transaction, and applies patches in write transactions.
+ * <p>
+ * TDB keeps committed writes in a journal until no reader needs the old
+ * data, so readers see the same data for a whole page and its count,
+ * and are never blocked by a writer. The store must only be changed
+ * through transactions, so offline loading with tdbloader is only allowed
+ * while the server is stopped.</p>
+ *
+ * @author Bart Hanssens
+ */
+public class TransactionalTDBDataSource extends JenaTDBDataSource implements IPatchDataSource {
+    private volatile long modified = 0;
+
+    /**
+     * Constructor
+     *
+     * @param title
+     * @param description
+     * @param tdbdir directory used for TDB backing
+     */
+    public TransactionalTDBDataSource(String title, String description, File tdbdir) {
+        super(title, description, tdbdir);
+    }
+
+    @Override
+    public TriplePatternFragment getFragment(Resource graph, Resource subject, Property predicate, RDFNode object, long offset, long limit) {
+        tdb.begin(ReadWrite.READ);
+        try {
+            return super.getFragment(graph, subject, predicate, object, offset, limit);
+        } finally {
+            tdb.end();
+        }
+    }
+
+    @Override
+    public void applyPatch(Reader patch) throws IOException {
+        List<DeltaHdtDataSource.Change> changes = DeltaHdtDataSource.parsePatch(patch);
+
+        // TDB runs one write transaction at a time, next to the readers
+        tdb.begin(ReadWrite.WRITE);
+        try {
+            Graph graph = tdb.asDatasetGraph().getDefaultGraph();
+            for (DeltaHdtDataSource.Change change : changes) {
+                String[] terms = change.getTriple();
+                Triple triple = Triple.create(TermStrings.toNode(terms[0]),
+                        TermStrings.toNode(terms[1]), TermStrings.toNode(terms[2]));
+                if (change.isAddition()) {
+                    graph.add(triple);
+                } else {
+                    graph.delete(triple);
+                }
+            }
+            tdb.commit();
+            modified = System.currentTimeMillis();
+        } catch (RuntimeException e) {
+            // leave the data as it was, instead of relying on end() to do so
+            tdb.abort();
+            throw e;
+        } finally {
+            tdb.end();
+        }
+    }
+
+    @Override
+    public long getModified() {
+        return modified;
+    }
+}
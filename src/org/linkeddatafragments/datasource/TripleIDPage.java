@@ -0,0 +1,158 @@
+package org.linkeddatafragments.datasource;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.rdfhdt.hdt.enums.TripleComponentRole;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/**
+ * A page of a fragment, stored as a flat array of subject, predicate
+ * and object IDs.
+ * <p>
+ * The terms are only decoded when the triples are requested, and every
+ * request gets a new model, so the page itself can be shared. As N-Triples,
+ * the terms are written straight from the dictionary strings, with blank
+ * node labels prefixed by "hdt", so they cannot collide with the labels of
+ * the metadata that follows them.</p>
+ *
+ * @author Bart Hanssens
+ */
+class TripleIDPage implements NTriplesFragment {
+    private final IdDictionary dictionary;
+    private final int[] ids;
+    private final long totalSize;
+    private final boolean complete;
+
+    /**
+     * Creates a new TripleIDPage.
+     *
+     * @param dictionary the dictionary to decode the IDs with
+     * @param ids subject, predicate and object ID of every triple
+     * @param totalSize the total size of the fragment
+     */
+    TripleIDPage(IdDictionary dictionary, int[] ids, long totalSize) {
+        this(dictionary, ids, totalSize, true);
+    }
+
+    /**
+     * Creates a new TripleIDPage.
+     *
+     * @param dictionary the dictionary to decode the IDs with
+     * @param ids subject, predicate and object ID of every triple
+     * @param totalSize the total size of the fragment
+     * @param complete false if the total was estimated because time ran out
+     */
+    TripleIDPage(IdDictionary dictionary, int[] ids, long totalSize, boolean complete) {
+        this.dictionary = dictionary;
+        this.ids = ids;
+        this.totalSize = totalSize;
+        this.complete = complete;
+    }
+
+    /**
+     * Gets the IDs of the triples on the page.
+     *
+     * @return subject, predicate and object ID of every triple
+     */
+    int[] getIds() {
+        return ids;
+    }
+
+    @Override
+    public int size() {
+        return ids.length / 3;
+    }
+
+    @Override
+    public void writeNTriples(Writer writer) throws IOException {
+        for (int i = 0; i < ids.length; i += 3) {
+            writeDataTerm(writer, dictionary.getString(ids[i], TripleComponentRole.SUBJECT));
+            writer.write(' ');
+            writeDataTerm(writer, dictionary.getString(ids[i + 1], TripleComponentRole.PREDICATE));
+            writer.write(' ');
+            writeDataTerm(writer, dictionary.getString(ids[i + 2], TripleComponentRole.OBJECT));
+            writer.write(" .\n");
+        }
+    }
+
+    /**
+     * Writes a dictionary string as an N-Triples term of the response,
+     * prefixing blank node labels.
+     *
+     * @param writer the writer
+     * @param entry the dictionary string
+     * @throws IOException
+     */
+    private static void writeDataTerm(Writer writer, CharSequence entry) throws IOException {
+        String term = entry.toString();
+        if (term.startsWith("_:")) {
+            writer.write("_:hdt");
+            writer.write(term, 2, term.length() - 2);
+        } else {
+            writeTerm(writer, term);
+        }
+    }
+
+    /**
+     * Writes a dictionary string as an N-Triples term.
+     *
+     * @param writer the writer
+     * @param entry the dictionary string
+     * @throws IOException
+     */
+    static void writeTerm(Writer writer, CharSequence entry) throws IOException {
+        // dictionary strings are UTF-8 encoded, decode them before reading characters
+        String term = entry.toString();
+        int length = term.length();
+        if (length > 0 && term.charAt(0) == '"') {
+            // escape the lexical form, the language tag or datatype follows the last quote
+            int end = term.lastIndexOf('"');
+            writer.write('"');
+            for (int i = 1; i < end; i++) {
+                char c = term.charAt(i);
+                switch (c) {
+                    case '"': writer.write("\\\""); break;
+                    case '\\': writer.write("\\\\"); break;
+                    case '\n': writer.write("\\n"); break;
+                    case '\r': writer.write("\\r"); break;
+                    default: writer.write(c);
+                }
+            }
+            writer.write(term, end, length - end);
+        } else if (term.startsWith("_:")) {
+            writer.write(term);
+        } else {
+            writer.write('<');
+            writer.write(term);
+            writer.write('>');
+        }
+    }
+
+    @Override
+    public Model getTriples() {
+        Model triples = ModelFactory.createDefaultModel();
+        Graph graph = triples.getGraph();
+        for (int i = 0; i < ids.length; i += 3) {
+            graph.add(new Triple(
+                dictionary.getNode(ids[i], TripleComponentRole.SUBJECT),
+                dictionary.getNode(ids[i + 1], TripleComponentRole.PREDICATE),
+                dictionary.getNode(ids[i + 2], TripleComponentRole.OBJECT)));
+        }
+        return triples;
+    }
+
+    @Override
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    @Override
+    public boolean isComplete() {
+        return complete;
+    }
+}
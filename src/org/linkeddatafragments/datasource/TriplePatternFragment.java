@@ -18,4 +18,11 @@ public interface TriplePatternFragment {
      * @return the total number of triples
      */
     public long getTotalSize();
+
+    /**
+     * Checks if the data source answered in full, rather than estimating
+     * because it ran out of time.
+     * @return true unless the fragment is degraded
+     */
+    public boolean isComplete();
 }
@@ -10,6 +10,7 @@ import com.hp.hpl.jena.rdf.model.ModelFactory;
 public class TriplePatternFragmentBase implements TriplePatternFragment {
     private final Model triples;
     private final long totalSize;
+    private final boolean complete;
 
     /**
      * Creates an empty Basic Linked Data Fragment.
@@ -24,8 +25,19 @@ public class TriplePatternFragmentBase implements TriplePatternFragment {
      * @param totalSize the total size
      */
     public TriplePatternFragmentBase(Model triples, long totalSize) {
+        this(triples, totalSize, true);
+    }
+
+    /**
+     * Creates a new Basic Linked Data Fragment.
+     * @param triples the triples (possibly partial)
+     * @param totalSize the total size
+     * @param complete false if the data source ran out of time
+     */
+    public TriplePatternFragmentBase(Model triples, long totalSize, boolean complete) {
         this.triples = triples == null ? ModelFactory.createDefaultModel() : triples;
         this.totalSize = totalSize < 0 ? 0 : totalSize;
+        this.complete = complete;
     }
 
     @Override
@@ -37,4 +49,9 @@ public class TriplePatternFragmentBase implements TriplePatternFragment {
     public long getTotalSize() {
         return totalSize;
     }
+
+    @Override
+    public boolean isComplete() {
+        return complete;
+    }
 }
@@ -0,0 +1,104 @@
+package org.linkeddatafragments.datasource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+
+/**
+ * An HDT data source of Basic Linked Data Fragments with several versions
+ * of the data: one HDT file with the first version, and a patch file with
+ * the changes of every next version.
+ * <p>
+ * All versions share the dictionary and indexes of the HDT file. Every
+ * version is a full overlay on that file, like {@link DeltaHdtDataSource}:
+ * all triples added since the first version, as sorted term strings, and
+ * all triples of the file deleted since, as sorted IDs. The overlays are
+ * not chained, so memory grows with the number of versions times the
+ * changes since the first one; only the term strings are shared between
+ * versions. Versions are built once, by applying the patches in order,
+ * and never change, so fragments of any version are paged consistently.</p>
+ *
+ * @author Bart Hanssens
+ */
+public class VersionedHdtDataSource extends DataSource implements ITermDataSource, IVersionedDataSource {
+    private final HdtDataSource base;
+    private final Map<String, DeltaHdtDataSource.State> versions = new LinkedHashMap<>();
+    private final DeltaHdtDataSource.State latest;
+
+    /**
+     * Creates a new VersionedHdtDataSource, and applies the patch of every
+     * version.
+     *
+     * @param base the HDT data source with the first version
+     * @param baseVersion name of the first version
+     * @param patches patch file of every next version, by name, in order
+     * @throws IOException if a patch file cannot be read
+     * @throws IllegalArgumentException if a patch file is not valid
+     */
+    public VersionedHdtDataSource(HdtDataSource base, String baseVersion, Map<String, File> patches)
+            throws IOException {
+        super(base.getTitle(), base.getDescription());
+        this.base = base;
+
+        DeltaHdtDataSource.State state = new DeltaHdtDataSource.State(base, new String[0], new int[0], 0);
+        versions.put(baseVersion, state);
+        for (Map.Entry<String, File> patch : patches.entrySet()) {
+            try (Reader reader = new InputStreamReader(
+                    Files.newInputStream(patch.getValue().toPath()), StandardCharsets.UTF_8)) {
+                state = state.apply(DeltaHdtDataSource.parsePatch(reader));
+            }
+            versions.put(patch.getKey(), state);
+        }
+        this.latest = state;
+    }
+
+    @Override
+    public void setTimeout(long timeout) {
+        super.setTimeout(timeout);
+        base.setTimeout(timeout);
+    }
+
+    @Override
+    public List<String> getVersions() {
+        return Collections.unmodifiableList(new ArrayList<>(versions.keySet()));
+    }
+
+    @Override
+    public TriplePatternFragment getFragment(Resource subject, Property predicate, RDFNode object,
+            long offset, long limit) {
+        return getTermFragment(
+                subject == null ? null : TermStrings.toString(subject.asNode()),
+                predicate == null ? null : TermStrings.toString(predicate.asNode()),
+                object == null ? null : TermStrings.toString(object.asNode()),
+                offset, limit);
+    }
+
+    @Override
+    public TriplePatternFragment getTermFragment(String subject, String predicate, String object,
+            long offset, long limit) {
+        checkBoundaries(offset, limit);
+        return latest.getFragment(subject, predicate, object, offset, limit, getDeadline());
+    }
+
+    @Override
+    public TriplePatternFragment getVersionFragment(String version, String subject, String predicate,
+            String object, long offset, long limit) {
+        checkBoundaries(offset, limit);
+        DeltaHdtDataSource.State state = versions.get(version);
+        return state == null
+                ? null
+                : state.getFragment(subject, predicate, object, offset, limit, getDeadline());
+    }
+}
@@ -0,0 +1,18 @@
+package org.linkeddatafragments.exceptions;
+
+/**
+ * Thrown when a data source cannot produce a fragment within its time budget.
+ *
+ * @author Bart Hanssens
+ */
+public class FragmentTimeoutException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public FragmentTimeoutException(String message) {
+        super(message);
+    }
+
+    public FragmentTimeoutException(Throwable cause) {
+        super("Fragment could not be created in time: " + cause.getMessage(), cause);
+    }
+}
@@ -0,0 +1,279 @@
+package org.linkeddatafragments.servlet;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import javax.servlet.http.HttpServletRequest;
+
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Structured access log, with one JSON object per line.
+ * <p>
+ * Request threads only put entries in a bounded ring buffer, without locking
+ * or doing I/O; a background thread writes them to the file. When the buffer
+ * is full, entries are dropped and the number of dropped entries is logged.
+ * Requests slower than a threshold are logged with their full request line
+ * and headers.</p>
+ *
+ * @author Bart Hanssens
+ */
+class AccessLog {
+    /**
+     * Phases of handling a request
+     */
+    enum Phase {
+        PARSE, LOOKUP, COUNT, SERIALIZE
+    }
+
+    /**
+     * Log entry of a request, filled in by the request thread
+     */
+    static class Entry {
+        private final long time = System.currentTimeMillis();
+        private final long start = System.nanoTime();
+        private long lap = start;
+        private final long[] phases = new long[Phase.values().length];
+
+        private String dataSource;
+        private String subject;
+        private String predicate;
+        private String object;
+        private String graph;
+        private String text;
+        private long page;
+        private long results = -1;
+        private long total = -1;
+        private long bytes = -1;
+        private int status;
+        private long duration;
+
+        // only set for slow requests
+        private JsonObject request;
+
+        /**
+         * Ends a phase, which started when the previous phase ended.
+         *
+         * @param phase the phase
+         */
+        void lap(Phase phase) {
+            long now = System.nanoTime();
+            phases[phase.ordinal()] += now - lap;
+            lap = now;
+        }
+
+        void setDataSource(String dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        void setPattern(String subject, String predicate, String object, String graph, String text) {
+            this.subject = subject;
+            this.predicate = predicate;
+            this.object = object;
+            this.graph = graph;
+            this.text = text;
+        }
+
+        void setPage(long page) {
+            this.page = page;
+        }
+
+        void setResults(long results, long total) {
+            this.results = results;
+            this.total = total;
+        }
+
+        void setBytes(long bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    private final AtomicReferenceArray<Entry> ring;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    // only written by the writer thread
+    private volatile long head = 0;
+
+    private final long slowThreshold;
+    private final Writer writer;
+    private final Thread thread;
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a new AccessLog, and starts writing to the log file.
+     *
+     * @param config the access log settings
+     * @throws IOException if the log file cannot be opened
+     */
+    AccessLog(JsonObject config) throws IOException {
+        String file = config.getAsJsonPrimitive("file").getAsString();
+        int bufferSize = config.has("bufferSize") ? config.getAsJsonPrimitive("bufferSize").getAsInt() : 8192;
+        this.slowThreshold = config.has("slowThreshold")
+                ? config.getAsJsonPrimitive("slowThreshold").getAsLong()
+                : 1000;
+
+        // round up to a power of two, so positions can be masked
+        int capacity = Integer.highestOneBit(Math.max(2, bufferSize) - 1) << 1;
+        this.ring = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+
+        this.writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file, true), StandardCharsets.UTF_8));
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "access-log");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Logs a finished request. This never blocks.
+     *
+     * @param entry the entry
+     * @param request the request
+     * @param status HTTP status code of the response
+     */
+    void log(Entry entry, HttpServletRequest request, int status) {
+        entry.status = status;
+        entry.duration = System.nanoTime() - entry.start;
+        if (entry.duration >= slowThreshold * 1000000) {
+            entry.request = describe(request);
+        }
+
+        // claim a position, unless the writer is too far behind
+        long position;
+        do {
+            position = tail.get();
+            if (position - head >= ring.length()) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!tail.compareAndSet(position, position + 1));
+        ring.lazySet((int) (position & mask), entry);
+    }
+
+    /**
+     * Stops the writer thread, after writing the pending entries.
+     */
+    void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes entries as they arrive, until the log is closed.
+     */
+    private void drain() {
+        try {
+            while (true) {
+                int index = (int) (head & mask);
+                Entry entry = ring.get(index);
+                if (entry != null) {
+                    ring.set(index, null);
+                    head++;
+                    write(entry);
+                    continue;
+                }
+                long lost = dropped.getAndSet(0);
+                if (lost > 0) {
+                    writer.write("{\"dropped\":" + lost + "}\n");
+                }
+                writer.flush();
+                // a claimed position may not be filled in yet
+                if (closed && tail.get() == head) {
+                    break;
+                }
+                LockSupport.parkNanos(10000000);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Writes an entry as a line of JSON.
+     *
+     * @param entry the entry
+     * @throws IOException
+     */
+    private void write(Entry entry) throws IOException {
+        JsonWriter json = new JsonWriter(writer);
+        json.beginObject();
+        json.name("time").value(entry.time);
+        json.name("datasource").value(entry.dataSource);
+        json.name("subject").value(entry.subject);
+        json.name("predicate").value(entry.predicate);
+        json.name("object").value(entry.object);
+        if (entry.graph != null) {
+            json.name("graph").value(entry.graph);
+        }
+        if (entry.text != null) {
+            json.name("text").value(entry.text);
+        }
+        json.name("page").value(entry.page);
+        json.name("status").value(entry.status);
+        json.name("results").value(entry.results);
+        json.name("total").value(entry.total);
+        json.name("bytes").value(entry.bytes);
+
+        json.name("ms").value(entry.duration / 1e6);
+        json.name("phases").beginObject();
+        for (Phase phase : Phase.values()) {
+            json.name(phase.name().toLowerCase(Locale.ROOT)).value(entry.phases[phase.ordinal()] / 1e6);
+        }
+        json.endObject();
+
+        if (entry.request != null) {
+            json.name("slow").value(true);
+            json.name("request");
+            json.jsonValue(entry.request.toString());
+        }
+        json.endObject();
+        writer.write('\n');
+    }
+
+    /**
+     * Describes a request in full, for logging slow requests.
+     *
+     * @param request the request
+     * @return request line, client and headers
+     */
+    private static JsonObject describe(HttpServletRequest request) {
+        JsonObject description = new JsonObject();
+        description.addProperty("method", request.getMethod());
+        description.addProperty("uri", request.getRequestURI());
+        description.addProperty("query", request.getQueryString());
+        description.addProperty("client", request.getRemoteAddr());
+
+        JsonObject headers = new JsonObject();
+        for (String name : Collections.list(request.getHeaderNames())) {
+            headers.addProperty(name, request.getHeader(name));
+        }
+        description.add("headers", headers);
+        return description;
+    }
+}
@@ -0,0 +1,231 @@
+package org.linkeddatafragments.servlet;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Decides whether requests may be handled, to keep a single client from
+ * saturating the server.
+ * <p>
+ * Every client (configured API key or IP address) has a token bucket; keys
+ * that are not configured are ignored, so clients cannot get a fresh bucket
+ * by sending a new key. Requests cost
+ * more tokens when they have unbound terms or ask for deep pages. Clients
+ * are limited in the number of requests they run at the same time, and
+ * admitted requests wait in a first-come first-served queue when the server
+ * is at its overall limit.</p>
+ *
+ * @author Bart Hanssens
+ */
+class AdmissionController {
+    // remove idle buckets when there are more clients than this
+    private final static int MAXCLIENTS = 10000;
+
+    /**
+     * Reason for refusing a request
+     */
+    static class Rejection {
+        private final int status;
+        private final long retryAfter;
+
+        Rejection(int status, long retryAfter) {
+            this.status = status;
+            this.retryAfter = retryAfter;
+        }
+
+        /**
+         * @return HTTP status code
+         */
+        int getStatus() {
+            return status;
+        }
+
+        /**
+         * @return number of seconds after which the client may retry
+         */
+        long getRetryAfter() {
+            return retryAfter;
+        }
+    }
+
+    /**
+     * Token bucket and running requests of a client
+     */
+    private static class Client {
+        private double tokens;
+        private long updated;
+        private int running;
+        private boolean removed;
+
+        Client(double tokens) {
+            this.tokens = tokens;
+            this.updated = System.nanoTime();
+        }
+    }
+
+    private final ConcurrentMap<String, Client> clients = new ConcurrentHashMap<>();
+    private final Semaphore slots;
+
+    private final double capacity;
+    private final double refillPerSecond;
+    private final double unboundCost;
+    private final double pageCost;
+    private final int maxConcurrentPerClient;
+    private final long queueTimeout;
+    private final String keyHeader;
+    private final Set<String> keys = new HashSet<>();
+
+    private static double get(JsonObject config, String key, double value) {
+        return config.has(key) ? config.getAsJsonPrimitive(key).getAsDouble() : value;
+    }
+
+    /**
+     * Creates a new AdmissionController.
+     *
+     * @param config the admission settings
+     */
+    AdmissionController(JsonObject config) {
+        this.capacity = get(config, "capacity", 100);
+        this.refillPerSecond = get(config, "refillPerSecond", 10);
+        this.unboundCost = get(config, "unboundCost", 0.5);
+        this.pageCost = get(config, "pageCost", 0.01);
+        this.maxConcurrentPerClient = (int) get(config, "maxConcurrentPerClient", 4);
+        this.queueTimeout = (long) get(config, "queueTimeout", 1000);
+        this.keyHeader = config.has("keyHeader")
+                ? config.getAsJsonPrimitive("keyHeader").getAsString()
+                : "X-API-Key";
+        this.slots = new Semaphore((int) get(config, "maxConcurrent", 64), true);
+        if (config.has("keys")) {
+            for (JsonElement key : config.getAsJsonArray("keys")) {
+                keys.add(key.getAsString());
+            }
+        }
+    }
+
+    /**
+     * Gets the client of a request: its API key if configured, or its IP address.
+     *
+     * @param request the request
+     * @return client identifier
+     */
+    String getClient(HttpServletRequest request) {
+        String key = request.getHeader(keyHeader);
+        return key == null || !keys.contains(key) ? request.getRemoteAddr() : "key:" + key;
+    }
+
+    /**
+     * Gets the cost of a request.
+     *
+     * @param unbound number of unbound terms in the pattern
+     * @param page requested page
+     * @return number of tokens
+     */
+    double getCost(int unbound, long page) {
+        return 1 + unbound * unboundCost + (page - 1) * pageCost;
+    }
+
+    /**
+     * Admits a request, waiting for a free slot when the server is busy.
+     * Admitted requests must be released.
+     *
+     * @param client the client
+     * @param cost number of tokens the request costs
+     * @return null if admitted, otherwise the reason for refusal
+     * @throws InterruptedException
+     */
+    Rejection admit(String client, double cost) throws InterruptedException {
+        // even the most expensive requests must fit in a full bucket
+        cost = Math.min(cost, capacity);
+        if (clients.size() > MAXCLIENTS) {
+            removeIdleClients();
+        }
+        Client state;
+        while (true) {
+            state = clients.get(client);
+            if (state == null) {
+                Client created = new Client(capacity);
+                state = clients.putIfAbsent(client, created);
+                if (state == null) {
+                    state = created;
+                }
+            }
+            synchronized (state) {
+                // an idle client may just have been removed, look it up again
+                if (state.removed) {
+                    continue;
+                }
+                refill(state);
+                if (state.tokens < cost) {
+                    long wait = (long) Math.ceil((cost - state.tokens) / refillPerSecond);
+                    return new Rejection(429, Math.max(1, wait));
+                }
+                if (state.running >= maxConcurrentPerClient) {
+                    return new Rejection(429, 1);
+                }
+                state.tokens -= cost;
+                state.running++;
+                break;
+            }
+        }
+
+        if (!slots.tryAcquire(queueTimeout, TimeUnit.MILLISECONDS)) {
+            synchronized (state) {
+                state.running--;
+            }
+            return new Rejection(503, 1);
+        }
+        return null;
+    }
+
+    /**
+     * Releases an admitted request.
+     *
+     * @param client the client
+     */
+    void release(String client) {
+        slots.release();
+        Client state = clients.get(client);
+        if (state != null) {
+            synchronized (state) {
+                state.running--;
+            }
+        }
+    }
+
+    /**
+     * Adds the tokens earned since the last update.
+     *
+     * @param state the client
+     */
+    private void refill(Client state) {
+        long now = System.nanoTime();
+        state.tokens = Math.min(capacity, state.tokens + (now - state.updated) / 1e9 * refillPerSecond);
+        state.updated = now;
+    }
+
+    /**
+     * Forgets clients with a full bucket and no running requests.
+     */
+    private void removeIdleClients() {
+        Iterator<Client> it = clients.values().iterator();
+        while (it.hasNext()) {
+            Client state = it.next();
+            synchronized (state) {
+                refill(state);
+                if (state.running == 0 && state.tokens >= capacity) {
+                    state.removed = true;
+                    it.remove();
+                }
+            }
+        }
+    }
+}
@@ -1,42 +1,70 @@
 package org.linkeddatafragments.servlet;
 
 import com.google.gson.JsonObject;
-import com.hp.hpl.jena.datatypes.TypeMapper;
+import com.google.gson.stream.JsonWriter;
 import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.rdf.model.Literal;
 import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.hp.hpl.jena.rdf.model.Property;
 import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.rdf.model.ResourceFactory;
+import com.hp.hpl.jena.rdf.model.impl.LiteralImpl;
 import com.hp.hpl.jena.shared.InvalidPropertyURIException;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.net.URISyntaxException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map.Entry;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import org.apache.http.client.utils.URIBuilder;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFDataMgr;
 import org.apache.jena.riot.RDFLanguages;
 import org.linkeddatafragments.config.ConfigReader;
+import org.linkeddatafragments.datasource.CoalescingDataSource;
 import org.linkeddatafragments.datasource.DataSourceFactory;
+import org.linkeddatafragments.datasource.ICountDataSource;
 import org.linkeddatafragments.datasource.IDataSource;
+import org.linkeddatafragments.datasource.IOrderedDataSource;
+import org.linkeddatafragments.datasource.IPatchDataSource;
+import org.linkeddatafragments.datasource.IQuadDataSource;
+import org.linkeddatafragments.datasource.IStarDataSource;
+import org.linkeddatafragments.datasource.ITermDataSource;
+import org.linkeddatafragments.datasource.ITextDataSource;
+import org.linkeddatafragments.datasource.IVersionedDataSource;
 import org.linkeddatafragments.datasource.IndexDataSource;
+import org.linkeddatafragments.datasource.NTriplesFragment;
 import org.linkeddatafragments.datasource.TriplePatternFragment;
 import org.linkeddatafragments.exceptions.DataSourceException;
+import org.linkeddatafragments.exceptions.FragmentTimeoutException;
+import org.linkeddatafragments.sparql.BgpQuery;
+import org.linkeddatafragments.sparql.PlanState;
+import org.linkeddatafragments.sparql.PreemptableExecutor;
+import org.linkeddatafragments.sparql.SparqlJsonWriter;
 import org.linkeddatafragments.util.CommonResources;
+import org.linkeddatafragments.util.CountingOutputStream;
+import org.linkeddatafragments.util.JsonLdWriter;
 import org.linkeddatafragments.util.MIMEParse;
+import org.linkeddatafragments.util.ResponseCache;
+import org.linkeddatafragments.util.TermParser;
 
 /**
  * Servlet that responds with a Basic Linked Data Fragment.
@@ -53,16 +81,36 @@ public class TriplePatternFragmentServlet extends HttpServlet {
     public final static String SUBJ = "subject";
     public final static String PRED = "predicate";
     public final static String OBJ = "object";
+    public final static String GRAPH = "graph";
     public final static String PAGE = "page";
+    public final static String TEXT = "text";
+    public final static String STAR = "star";
+    public final static String QUERY = "query";
+    public final static String NEXT = "next";
+    public final static String COUNT = "count";
+    public final static String VERSION = "version";
+
+    // header with the number of matches, for requests without triples
+    private final static String TOTALITEMS = "X-Total-Items";
 
-    private final static Pattern STRINGPATTERN
-            = Pattern.compile("^\"(.*)\"(?:@(.*)|\\^\\^<?([^<>]*)>?)?$");
-    private final static TypeMapper TYPES = TypeMapper.getInstance();
     private final static long TRIPLESPERPAGE = 100;
+    private final static int MAXDATASETURLS = 256;
+    private final static int MAXCOUNTPATTERNS = 16;
 
     private ConfigReader config;
+    private TermParser termParser;
+    private JsonLdWriter jsonLdWriter;
+    private AdmissionController admission;
+    private AccessLog accessLog;
+    private ResponseCache cache;
+    // maximum age of cached responses of data sources without a live version
+    private long unversionedMaxAge = 0;
+    private String adminToken;
+    private long sparqlQuantum = 0;
     private final HashMap<String, IDataSource> dataSources = new HashMap<>();
+    private final HashMap<String, String> dataSourceVersions = new HashMap<>();
     private final Collection<String> mimeTypes = new ArrayList<>();
+    private final ConcurrentMap<String, Model> datasetMeta = new ConcurrentHashMap<>();
 
     private File getConfigFile(ServletConfig config) throws IOException {
         String path = config.getServletContext().getRealPath("/");
@@ -89,10 +137,36 @@ public class TriplePatternFragmentServlet extends HttpServlet {
             // load the configuration
             File configFile = getConfigFile(servletConfig);
             config = new ConfigReader(new FileReader(configFile));
+            termParser = new TermParser(config.getPrefixes());
+            jsonLdWriter = new JsonLdWriter(config.getPrefixes());
+            if (config.getAdmission() != null) {
+                admission = new AdmissionController(config.getAdmission());
+            }
+            if (config.getAccessLog() != null) {
+                accessLog = new AccessLog(config.getAccessLog());
+            }
+
+            if (config.getCache() != null) {
+                cache = createCache(config.getCache());
+                unversionedMaxAge = getUnversionedMaxAge(config.getCache());
+            }
+            if (config.getAdmin() != null) {
+                adminToken = config.getAdmin().getAsJsonPrimitive("token").getAsString();
+            }
+            if (config.getSparql() != null) {
+                JsonObject sparql = config.getSparql();
+                sparqlQuantum = sparql.has("quantum") ? sparql.getAsJsonPrimitive("quantum").getAsLong() : 100;
+            }
 
+            StringBuilder versions = new StringBuilder();
             for (Entry<String, JsonObject> dataSource : config.getDataSources().entrySet()) {
                 dataSources.put(dataSource.getKey(), DataSourceFactory.create(dataSource.getValue()));
+                String version = getVersion(dataSource.getValue());
+                dataSourceVersions.put(dataSource.getKey(), version);
+                versions.append(dataSource.getKey()).append(version);
             }
+            // the index lists all data sources
+            dataSourceVersions.put("", Integer.toHexString(versions.toString().hashCode()));
 
             // register content types
             mimeTypes.add(Lang.TTL.getHeaderString());
@@ -104,20 +178,106 @@ public class TriplePatternFragmentServlet extends HttpServlet {
         }
     }
 
+    @Override
+    public void destroy() {
+        if (accessLog != null) {
+            accessLog.close();
+        }
+        if (cache != null) {
+            try {
+                cache.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     /**
-     * Get the datasource
+     * Create the response cache
      *
-     * @param request
-     * @return
+     * @param settings cache settings, sizes in MB and age in seconds
+     * @return response cache
      * @throws IOException
      */
-    private IDataSource getDataSource(HttpServletRequest request) throws IOException {
+    private static ResponseCache createCache(JsonObject settings) throws IOException {
+        long mb = 1024 * 1024;
+        long memorySize = settings.has("memorySize") ? settings.getAsJsonPrimitive("memorySize").getAsLong() : 64;
+        File directory = settings.has("directory")
+                ? new File(settings.getAsJsonPrimitive("directory").getAsString())
+                : null;
+        long diskSize = settings.has("diskSize") ? settings.getAsJsonPrimitive("diskSize").getAsLong() : 1024;
+        int segmentSize = settings.has("segmentSize") ? settings.getAsJsonPrimitive("segmentSize").getAsInt() : 64;
+        long maxAge = settings.has("maxAge") ? settings.getAsJsonPrimitive("maxAge").getAsLong() : 0;
+
+        return new ResponseCache(memorySize * mb, directory, diskSize * mb,
+                (int) Math.min(Integer.MAX_VALUE, segmentSize * mb), maxAge * 1000);
+    }
+
+    /**
+     * Get the maximum age of cached responses of data sources that do not
+     * report modifications, whose versions do not change with their data
+     * while the server runs
+     *
+     * @param settings cache settings, ages in seconds
+     * @return maximum age in milliseconds
+     * @throws IOException if the age is not positive
+     */
+    private static long getUnversionedMaxAge(JsonObject settings) throws IOException {
+        long maxAge = settings.has("maxAge") ? settings.getAsJsonPrimitive("maxAge").getAsLong() : 0;
+        long unversionedMaxAge = settings.has("unversionedMaxAge")
+                ? settings.getAsJsonPrimitive("unversionedMaxAge").getAsLong()
+                : 300;
+        if (unversionedMaxAge <= 0) {
+            throw new IOException("The cache setting unversionedMaxAge must be positive");
+        }
+        return 1000 * (maxAge > 0 ? Math.min(maxAge, unversionedMaxAge) : unversionedMaxAge);
+    }
+
+    /**
+     * Get the version of a data source, which changes with its configuration
+     * or when its data is modified
+     *
+     * @param dataSource data source configuration
+     * @return version
+     */
+    private static String getVersion(JsonObject dataSource) {
+        long modified = 0;
+        if (dataSource.has("settings")) {
+            JsonObject settings = dataSource.getAsJsonObject("settings");
+            for (String key : new String[] { "file", "directory" }) {
+                if (settings.has(key)) {
+                    File file = new File(settings.getAsJsonPrimitive(key).getAsString());
+                    modified = Math.max(modified, file.lastModified());
+                }
+            }
+        }
+        return Integer.toHexString(dataSource.toString().hashCode()) + "." + Long.toHexString(modified);
+    }
+
+    /**
+     * Get the path of the request within the context
+     *
+     * @param request
+     * @return path
+     */
+    private static String getPath(HttpServletRequest request) {
         String contextPath = request.getContextPath();
         String requestURI = request.getRequestURI();
 
-        String path = contextPath == null
+        return contextPath == null
                 ? requestURI
                 : requestURI.substring(contextPath.length());
+    }
+
+    /**
+     * Get the datasource
+     *
+     * @param request
+     * @return
+     * @throws IOException
+     */
+    private IDataSource getDataSource(HttpServletRequest request) throws IOException {
+        String path = getPath(request);
 
         if (path.equals("/") || path.isEmpty()) {
             return new IndexDataSource(getBaseUrl(request), dataSources);
@@ -131,6 +291,97 @@ public class TriplePatternFragmentServlet extends HttpServlet {
         return dataSource;
     }
 
+    /**
+     * Get the datasource behind a wrapper, to look for optional interfaces
+     *
+     * @param dataSource
+     * @return the unwrapped datasource
+     */
+    private static IDataSource unwrap(IDataSource dataSource) {
+        return dataSource instanceof CoalescingDataSource
+                ? ((CoalescingDataSource) dataSource).getDataSource()
+                : dataSource;
+    }
+
+    /**
+     * Get the text search interface of a datasource
+     *
+     * @param dataSource
+     * @return text search interface, or null if text search is not enabled
+     */
+    private static ITextDataSource getTextDataSource(IDataSource dataSource) {
+        IDataSource source = unwrap(dataSource);
+        return source instanceof ITextDataSource && ((ITextDataSource) source).hasTextIndex()
+                ? (ITextDataSource) source
+                : null;
+    }
+
+    /**
+     * Get the quad pattern interface of a datasource
+     *
+     * @param dataSource
+     * @return quad pattern interface, or null if not supported
+     */
+    private static IQuadDataSource getQuadDataSource(IDataSource dataSource) {
+        IDataSource source = unwrap(dataSource);
+        return source instanceof IQuadDataSource ? (IQuadDataSource) source : null;
+    }
+
+    /**
+     * Get the star pattern interface of a datasource
+     *
+     * @param dataSource
+     * @return star pattern interface, or null if not supported
+     */
+    private static IStarDataSource getStarDataSource(IDataSource dataSource) {
+        IDataSource source = unwrap(dataSource);
+        return source instanceof IStarDataSource ? (IStarDataSource) source : null;
+    }
+
+    /**
+     * Get the count interface of a datasource
+     *
+     * @param dataSource
+     * @return count interface, or null if not supported
+     */
+    private static ICountDataSource getCountDataSource(IDataSource dataSource) {
+        IDataSource source = unwrap(dataSource);
+        return source instanceof ICountDataSource ? (ICountDataSource) source : null;
+    }
+
+    /**
+     * Get the versions interface of a datasource
+     *
+     * @param dataSource
+     * @return versions interface, or null if not supported
+     */
+    private static IVersionedDataSource getVersionedDataSource(IDataSource dataSource) {
+        IDataSource source = unwrap(dataSource);
+        return source instanceof IVersionedDataSource ? (IVersionedDataSource) source : null;
+    }
+
+    /**
+     * Get the sort order interface of a datasource
+     *
+     * @param dataSource
+     * @return sort order interface, or null if the order is not guaranteed
+     */
+    private static IOrderedDataSource getOrderedDataSource(IDataSource dataSource) {
+        IDataSource source = unwrap(dataSource);
+        return source instanceof IOrderedDataSource ? (IOrderedDataSource) source : null;
+    }
+
+    /**
+     * Get the patch interface of a datasource
+     *
+     * @param dataSource
+     * @return patch interface, or null if not supported
+     */
+    private static IPatchDataSource getPatchDataSource(IDataSource dataSource) {
+        IDataSource source = unwrap(dataSource);
+        return source instanceof IPatchDataSource ? (IPatchDataSource) source : null;
+    }
+
     /**
      * Get dataset url
      *
@@ -164,14 +415,13 @@ public class TriplePatternFragmentServlet extends HttpServlet {
      * Add total and limit
      *
      * @param output
+     * @param datasetId
      * @param fragmentId
      * @param total
      * @param limit
      */
     private void addMeta(Model output, Resource datasetId, Resource fragmentId,
             long total, long limit) {
-        output.add(datasetId, CommonResources.RDF_TYPE, CommonResources.VOID_DATASET);
-        output.add(datasetId, CommonResources.RDF_TYPE, CommonResources.HYDRA_COLLECTION);
         output.add(datasetId, CommonResources.VOID_SUBSET, fragmentId);
 
         output.add(fragmentId, CommonResources.RDF_TYPE, CommonResources.HYDRA_COLLECTION);
@@ -190,30 +440,80 @@ public class TriplePatternFragmentServlet extends HttpServlet {
      *
      * @param output
      * @param fragmentId
-     * @param fragmentUrl
+     * @param datasetUrl
+     * @param query
      * @param total
      * @param limit
      * @param offset
      * @param page
-     * @throws URISyntaxException
      */
-    private void addPages(Model output, Resource fragmentId, String fragmentUrl,
-            long total, long limit, long offset, long page) throws URISyntaxException {
-        URIBuilder pagedUrl = new URIBuilder(fragmentUrl);
+    private void addPages(Model output, Resource fragmentId, String datasetUrl,
+            String query, long total, long limit, long offset, long page) {
+        // the page URLs only differ in the page parameter, which is put last
+        StringBuilder pagedUrl = new StringBuilder(datasetUrl).append('?');
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (!parameter.isEmpty() && !parameter.equals(PAGE)
+                        && !parameter.startsWith(PAGE + "=")) {
+                    pagedUrl.append(parameter).append('&');
+                }
+            }
+        }
+        String pageUrl = pagedUrl.append(PAGE).append('=').toString();
 
-        pagedUrl.setParameter(PAGE, "1");
         output.add(fragmentId, CommonResources.HYDRA_FIRSTPAGE,
-                output.createResource(pagedUrl.toString()));
+                output.createResource(pageUrl + "1"));
         if (offset > 0) {
-            pagedUrl.setParameter(PAGE, Long.toString(page - 1));
             output.add(fragmentId, CommonResources.HYDRA_PREVIOUSPAGE,
-                    output.createResource(pagedUrl.toString()));
+                    output.createResource(pageUrl + (page - 1)));
         }
         if (offset + limit < total) {
-            pagedUrl.setParameter(PAGE, Long.toString(page + 1));
             output.add(fragmentId, CommonResources.HYDRA_NEXTPAGE,
-                    output.createResource(pagedUrl.toString()));
+                    output.createResource(pageUrl + (page + 1)));
+        }
+    }
+
+    /**
+     * Get the description and controls of a dataset, which are the same for
+     * every fragment of the dataset
+     *
+     * @param datasetUrl
+     * @param dataSource
+     * @return model with the dataset triples
+     */
+    private Model getDatasetMeta(String datasetUrl, IDataSource dataSource) {
+        Model meta = datasetMeta.get(datasetUrl);
+        if (meta == null) {
+            meta = ModelFactory.createDefaultModel();
+            Resource datasetId = meta.createResource(datasetUrl + "#dataset");
+            meta.add(datasetId, CommonResources.RDF_TYPE, CommonResources.VOID_DATASET);
+            meta.add(datasetId, CommonResources.RDF_TYPE, CommonResources.HYDRA_COLLECTION);
+            addControls(meta, datasetId, datasetUrl, getQuadDataSource(dataSource) != null);
+            if (getTextDataSource(dataSource) != null) {
+                addTextControls(meta, datasetId, datasetUrl);
+            }
+            if (getStarDataSource(dataSource) != null) {
+                addStarControls(meta, datasetId, datasetUrl);
+            }
+            IVersionedDataSource versionedDataSource = getVersionedDataSource(dataSource);
+            if (versionedDataSource != null) {
+                addVersionControls(meta, datasetId, datasetUrl, versionedDataSource.getVersions());
+            }
+            if (sparqlQuantum > 0) {
+                meta.add(datasetId, CommonResources.VOID_SPARQLENDPOINT, meta.createResource(datasetUrl));
+            }
+            IOrderedDataSource orderedDataSource = getOrderedDataSource(dataSource);
+            if (orderedDataSource != null) {
+                meta.add(datasetId, CommonResources.LDF_COLLATION, orderedDataSource.getCollation());
+            }
+
+            // dataset URLs come from the request when no base URL is set,
+            // so only keep a limited number of them
+            if (datasetMeta.size() < MAXDATASETURLS) {
+                datasetMeta.put(datasetUrl, meta);
+            }
         }
+        return meta;
     }
 
     /**
@@ -222,16 +522,18 @@ public class TriplePatternFragmentServlet extends HttpServlet {
      * @param output
      * @param datasetId
      * @param datasetUrl
+     * @param quads
      */
-    private void addControls(Model output, Resource datasetId, String datasetUrl) {
+    private void addControls(Model output, Resource datasetId, String datasetUrl, boolean quads) {
         // add controls
         Resource triplePattern = output.createResource();
         Resource subjectMapping = output.createResource();
         Resource predicateMapping = output.createResource();
         Resource objectMapping = output.createResource();
 
+        String variables = quads ? "{?subject,predicate,object,graph}" : "{?subject,predicate,object}";
         output.add(datasetId, CommonResources.HYDRA_SEARCH, triplePattern);
-        output.add(triplePattern, CommonResources.HYDRA_TEMPLATE, output.createLiteral(datasetUrl + "{?subject,predicate,object}"));
+        output.add(triplePattern, CommonResources.HYDRA_TEMPLATE, output.createLiteral(datasetUrl + variables));
         output.add(triplePattern, CommonResources.HYDRA_MAPPING, subjectMapping);
         output.add(triplePattern, CommonResources.HYDRA_MAPPING, predicateMapping);
         output.add(triplePattern, CommonResources.HYDRA_MAPPING, objectMapping);
@@ -244,59 +546,599 @@ public class TriplePatternFragmentServlet extends HttpServlet {
         output.add(objectMapping, CommonResources.HYDRA_VARIABLE, output.createLiteral(OBJ));
 
         output.add(objectMapping, CommonResources.HYDRA_PROPERTY, CommonResources.RDF_OBJECT);
+
+        if (quads) {
+            Resource graphMapping = output.createResource();
+            output.add(triplePattern, CommonResources.HYDRA_MAPPING, graphMapping);
+            output.add(graphMapping, CommonResources.HYDRA_VARIABLE, output.createLiteral(GRAPH));
+            output.add(graphMapping, CommonResources.HYDRA_PROPERTY, CommonResources.SD_GRAPH);
+        }
+    }
+
+    /**
+     * Add text search controls to output
+     *
+     * @param output
+     * @param datasetId
+     * @param datasetUrl
+     */
+    private void addTextControls(Model output, Resource datasetId, String datasetUrl) {
+        Resource textSearch = output.createResource();
+        Resource textMapping = output.createResource();
+
+        output.add(datasetId, CommonResources.HYDRA_SEARCH, textSearch);
+        output.add(textSearch, CommonResources.HYDRA_TEMPLATE, output.createLiteral(datasetUrl + "{?text}"));
+        output.add(textSearch, CommonResources.HYDRA_MAPPING, textMapping);
+
+        output.add(textMapping, CommonResources.HYDRA_VARIABLE, output.createLiteral(TEXT));
+        output.add(textMapping, CommonResources.HYDRA_PROPERTY, CommonResources.HYDRA_FREETEXTQUERY);
+    }
+
+    /**
+     * Add star pattern controls to output
+     *
+     * @param output
+     * @param datasetId
+     * @param datasetUrl
+     */
+    private void addStarControls(Model output, Resource datasetId, String datasetUrl) {
+        Resource starPattern = output.createResource();
+        Resource subjectMapping = output.createResource();
+        Resource starMapping = output.createResource();
+
+        output.add(datasetId, CommonResources.HYDRA_SEARCH, starPattern);
+        output.add(starPattern, CommonResources.HYDRA_TEMPLATE, output.createLiteral(datasetUrl + "{?subject,star*}"));
+        output.add(starPattern, CommonResources.HYDRA_MAPPING, subjectMapping);
+        output.add(starPattern, CommonResources.HYDRA_MAPPING, starMapping);
+
+        output.add(subjectMapping, CommonResources.HYDRA_VARIABLE, output.createLiteral(SUBJ));
+        output.add(subjectMapping, CommonResources.HYDRA_PROPERTY, CommonResources.RDF_SUBJECT);
+        output.add(starMapping, CommonResources.HYDRA_VARIABLE, output.createLiteral(STAR));
+        output.add(starMapping, CommonResources.HYDRA_PROPERTY, CommonResources.LDF_STARPATTERN);
+    }
+
+    /**
+     * Add version controls to output, and list the versions
+     *
+     * @param output
+     * @param datasetId
+     * @param datasetUrl
+     * @param versions names of the versions
+     */
+    private void addVersionControls(Model output, Resource datasetId, String datasetUrl, List<String> versions) {
+        Resource versionPattern = output.createResource();
+        Resource versionMapping = output.createResource();
+
+        output.add(datasetId, CommonResources.HYDRA_SEARCH, versionPattern);
+        output.add(versionPattern, CommonResources.HYDRA_TEMPLATE,
+                output.createLiteral(datasetUrl + "{?subject,predicate,object,version}"));
+        String[] variables = { SUBJ, PRED, OBJ };
+        Property[] properties = { CommonResources.RDF_SUBJECT, CommonResources.RDF_PREDICATE, CommonResources.RDF_OBJECT };
+        for (int i = 0; i < variables.length; i++) {
+            Resource mapping = output.createResource();
+            output.add(versionPattern, CommonResources.HYDRA_MAPPING, mapping);
+            output.add(mapping, CommonResources.HYDRA_VARIABLE, output.createLiteral(variables[i]));
+            output.add(mapping, CommonResources.HYDRA_PROPERTY, properties[i]);
+        }
+        output.add(versionPattern, CommonResources.HYDRA_MAPPING, versionMapping);
+        output.add(versionMapping, CommonResources.HYDRA_VARIABLE, output.createLiteral(VERSION));
+        output.add(versionMapping, CommonResources.HYDRA_PROPERTY, CommonResources.LDF_VERSION);
+
+        for (String version : versions) {
+            output.add(datasetId, CommonResources.LDF_VERSION, version);
+        }
+    }
+
+    /**
+     * Parses the patterns of a star: a predicate, whitespace and an object,
+     * which may be a variable.
+     *
+     * @param values the values of the star parameter
+     * @return predicates and objects, or null if no patterns are given
+     */
+    private String[][] parseStar(String[] values) {
+        if (values == null || values.length == 0) {
+            return null;
+        }
+        String[][] star = new String[2][values.length];
+        for (int i = 0; i < values.length; i++) {
+            String[] pattern = values[i].trim().split("\\s+", 2);
+            star[0][i] = termParser.parseAsString(pattern[0]);
+            star[1][i] = pattern.length < 2 ? null : termParser.parseAsString(pattern[1].trim());
+            // a variable predicate matches nothing, like an unknown one
+            if (star[0][i] == null) {
+                star[0][i] = CommonResources.INVALID_URI.getURI();
+            }
+        }
+        return star;
     }
 
     @Override
     public void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException {
+        AccessLog.Entry entry = new AccessLog.Entry();
         try {
+            handle(request, response, entry);
+        } catch (ServletException | RuntimeException e) {
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            throw e;
+        } finally {
+            if (accessLog != null) {
+                accessLog.log(entry, request, response.getStatus());
+            }
+        }
+    }
+
+    /**
+     * Apply the patch in the body to the datasource, if the request has the
+     * admin token
+     *
+     * @param request
+     * @param response
+     * @throws ServletException
+     */
+    @Override
+    public void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException {
+        try {
+            if (adminToken == null) {
+                response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+                return;
+            }
+            String authorization = request.getHeader("Authorization");
+            if (authorization == null || !MessageDigest.isEqual(
+                    authorization.getBytes(StandardCharsets.UTF_8),
+                    ("Bearer " + adminToken).getBytes(StandardCharsets.UTF_8))) {
+                response.setHeader("WWW-Authenticate", "Bearer");
+                response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+                return;
+            }
+            IPatchDataSource patchDataSource = getPatchDataSource(getDataSource(request));
+            if (patchDataSource == null) {
+                response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+                return;
+            }
+
+            if (request.getCharacterEncoding() == null) {
+                request.setCharacterEncoding("utf-8");
+            }
+            try {
+                patchDataSource.applyPatch(request.getReader());
+            } catch (IllegalArgumentException e) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+                return;
+            }
+            response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new ServletException(e);
+        }
+    }
+
+    /**
+     * Handle a request, if admitted
+     *
+     * @param request
+     * @param response
+     * @param entry access log entry
+     * @throws ServletException
+     */
+    private void handle(HttpServletRequest request, HttpServletResponse response,
+            AccessLog.Entry entry) throws ServletException {
+        if (admission == null) {
+            writeFragment(request, response, entry);
+            return;
+        }
+
+        // refuse the request if the client or the server is too busy
+        String client = admission.getClient(request);
+        AdmissionController.Rejection rejection;
+        try {
+            rejection = admission.admit(client, getCost(request));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServletException(e);
+        }
+        if (rejection != null) {
+            response.setHeader("Retry-After", Long.toString(rejection.getRetryAfter()));
+            response.setStatus(rejection.getStatus());
+            return;
+        }
+        try {
+            writeFragment(request, response, entry);
+        } finally {
+            admission.release(client);
+        }
+    }
+
+    /**
+     * Get the cost of a request for admission control: unbound patterns
+     * and deep pages cost more, and every counted pattern costs as a first page
+     *
+     * @param request
+     * @return cost in tokens
+     */
+    private double getCost(HttpServletRequest request) {
+        String[] patterns = request.getParameterValues(COUNT);
+        if (patterns != null) {
+            double cost = 0;
+            for (String pattern : patterns) {
+                String[] terms = getCountTerms(request, pattern);
+                cost += admission.getCost(terms == null ? 3 : getUnbound(terms), 1);
+            }
+            return cost;
+        }
+        String[] terms = { request.getParameter(SUBJ), request.getParameter(PRED), request.getParameter(OBJ) };
+        long page = Math.max(1, parseAsInteger(request.getParameter(PAGE)));
+        return admission.getCost(getUnbound(terms), page);
+    }
+
+    /**
+     * Get the number of unbound terms of a pattern
+     *
+     * @param terms subject, predicate and object
+     * @return number of variables or unspecified terms
+     */
+    private int getUnbound(String[] terms) {
+        int unbound = 0;
+        for (String term : terms) {
+            if (termParser.parse(term) == null) {
+                unbound++;
+            }
+        }
+        return unbound;
+    }
+
+    /**
+     * Get the terms of a pattern to count: a subject, a predicate and the
+     * rest as object; an empty pattern is the one of the subject, predicate
+     * and object parameters
+     *
+     * @param request
+     * @param pattern value of a count parameter
+     * @return subject, predicate and object, or null if not a valid pattern
+     */
+    private String[] getCountTerms(HttpServletRequest request, String pattern) {
+        pattern = pattern.trim();
+        String[] terms = pattern.isEmpty()
+                ? new String[] { request.getParameter(SUBJ), request.getParameter(PRED), request.getParameter(OBJ) }
+                : pattern.split("\\s+", 3);
+        return terms.length == 3 ? terms : null;
+    }
+
+    /**
+     * Write the requested fragment
+     *
+     * @param request
+     * @param response
+     * @param entry access log entry, timing the phases
+     * @throws ServletException
+     */
+    private void writeFragment(HttpServletRequest request, HttpServletResponse response,
+            AccessLog.Entry entry) throws ServletException {
+        try {
+            entry.setDataSource(getPath(request));
             IDataSource dataSource = getDataSource(request);
 
-            // query the fragment
-            Resource subject = parseAsResource(request.getParameter(SUBJ));
-            Property predicate = parseAsProperty(request.getParameter(PRED));
-            RDFNode object = parseAsNode(request.getParameter(OBJ));
+            // evaluate a SPARQL query for one time quantum, if enabled
+            if (sparqlQuantum > 0 && request.getParameter(QUERY) != null) {
+                writeQueryResults(request, response, entry, dataSource);
+                return;
+            }
+
+            // only count the matches of patterns, if requested
+            if (request.getParameterValues(COUNT) != null) {
+                writeCounts(request, response, entry, dataSource);
+                return;
+            }
+
+            // do conneg
+            String bestMatch = MIMEParse.bestMatch(mimeTypes, request.getHeader("Accept"));
+            Lang contentType = RDFLanguages.contentTypeToLang(bestMatch);
+
+            // the headers of a triple pattern fragment only need its count;
+            // other fragments are handled as usual, without writing the body
+            String text = request.getParameter(TEXT);
+            if ("HEAD".equals(request.getMethod()) && (text == null || text.isEmpty())
+                    && request.getParameter(STAR) == null && request.getParameter(GRAPH) == null
+                    && request.getParameter(VERSION) == null) {
+                long total = getCount(dataSource, request.getParameter(SUBJ),
+                        request.getParameter(PRED), request.getParameter(OBJ));
+                entry.setResults(0, total);
+                entry.lap(AccessLog.Phase.COUNT);
+                response.setHeader("Server", "Linked Data Fragments Server");
+                response.setHeader(TOTALITEMS, Long.toString(total));
+                response.setContentType(bestMatch);
+                response.setCharacterEncoding("utf-8");
+                return;
+            }
+
+            // the response contains the request URL, so it is part of the key
+            String datasetUrl = getDatasetUrl(request);
+            String query = request.getQueryString();
+            String fragmentUrl = query == null ? datasetUrl : (datasetUrl + "?" + query);
+
+            String cacheKey = null;
+            boolean versioned = false;
+            if (cache != null) {
+                String path = getPath(request);
+                String version = dataSourceVersions.get(path.isEmpty() ? "" : path.substring(1));
+                IPatchDataSource patchDataSource = getPatchDataSource(dataSource);
+                if (patchDataSource != null) {
+                    version += "." + Long.toHexString(patchDataSource.getModified());
+                    versioned = true;
+                }
+                cacheKey = version + " " + bestMatch + " " + fragmentUrl;
+                ResponseCache.Response cached = cache.get(cacheKey);
+                if (cached != null) {
+                    entry.lap(AccessLog.Phase.LOOKUP);
+                    response.setHeader("Server", "Linked Data Fragments Server");
+                    response.setContentType(cached.getContentType());
+                    response.setCharacterEncoding("utf-8");
+                    response.getOutputStream().write(cached.getBody());
+                    entry.setBytes(cached.getBody().length);
+                    entry.lap(AccessLog.Phase.SERIALIZE);
+                    return;
+                }
+            }
+
+            // query the fragment, data sources that look up term strings
+            // do not need Jena nodes
+            String subject = termParser.parseAsString(request.getParameter(SUBJ));
+            String predicate = termParser.parseAsString(request.getParameter(PRED));
+            String object = termParser.parseAsString(request.getParameter(OBJ));
+            ITermDataSource termDataSource = dataSource instanceof ITermDataSource
+                    ? (ITermDataSource) dataSource
+                    : null;
 
             long page = Math.max(1, parseAsInteger(request.getParameter(PAGE)));
             long limit = TRIPLESPERPAGE;
             long offset = limit * (page - 1);
 
-            TriplePatternFragment fragment
-                    = dataSource.getFragment(subject, predicate, object, offset, limit);
+            // find literals by words, if requested and supported
+            ITextDataSource textDataSource = getTextDataSource(dataSource);
+
+            // find subjects with all given properties, if requested and supported
+            String[][] star = parseStar(request.getParameterValues(STAR));
+            IStarDataSource starDataSource = getStarDataSource(dataSource);
+
+            // look in a named graph, if requested and supported
+            Resource graph = parseAsResource(request.getParameter(GRAPH));
+            IQuadDataSource quadDataSource = getQuadDataSource(dataSource);
+
+            // read an older version, if requested and supported
+            String version = request.getParameter(VERSION);
+            IVersionedDataSource versionedDataSource = getVersionedDataSource(dataSource);
+
+            // star patterns only apply to the latest triples of the default graph
+            if (star != null && ((text != null && !text.isEmpty()) || graph != null || version != null)) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                        "A star pattern cannot be combined with a text, graph or version");
+                return;
+            }
 
-            // fill the output model
-            Model output = fragment.getTriples();
+            entry.setPattern(subject, predicate, object, graph == null ? null : graph.getURI(), text);
+            entry.setPage(page);
+            entry.lap(AccessLog.Phase.PARSE);
+
+            boolean textSearch = text != null && !text.isEmpty() && textDataSource != null;
+            boolean starSearch = !textSearch && star != null && starDataSource != null;
+            TriplePatternFragment fragment;
+            if (textSearch) {
+                fragment = textDataSource.getTextFragment(text, offset, limit);
+            } else if (starSearch) {
+                fragment = starDataSource.getStarFragment(subject, star[0], star[1], offset, limit);
+            } else if (graph != null && quadDataSource != null) {
+                fragment = quadDataSource.getFragment(graph, parseAsResource(request.getParameter(SUBJ)),
+                        parseAsProperty(request.getParameter(PRED)), parseAsNode(request.getParameter(OBJ)),
+                        offset, limit);
+            } else if (version != null && versionedDataSource != null) {
+                fragment = versionedDataSource.getVersionFragment(version, subject, predicate, object,
+                        offset, limit);
+                if (fragment == null) {
+                    response.sendError(HttpServletResponse.SC_NOT_FOUND, "Unknown version: " + version);
+                    return;
+                }
+            } else if (termDataSource != null) {
+                fragment = termDataSource.getTermFragment(subject, predicate, object, offset, limit);
+            } else {
+                fragment = dataSource.getFragment(parseAsResource(request.getParameter(SUBJ)),
+                        parseAsProperty(request.getParameter(PRED)), parseAsNode(request.getParameter(OBJ)),
+                        offset, limit);
+            }
+
+            // fill the output model, unless the fragment writes its own triples;
+            // N-Triples is also valid Turtle
+            boolean direct = fragment instanceof NTriplesFragment
+                    && (Lang.NTRIPLES.equals(contentType) || Lang.TURTLE.equals(contentType));
+            Model output = direct ? ModelFactory.createDefaultModel() : fragment.getTriples();
             output.setNsPrefixes(config.getPrefixes());
+            long results = direct ? ((NTriplesFragment) fragment).size() : output.size();
+            entry.lap(AccessLog.Phase.LOOKUP);
 
 			// add dataset metadata
-            String datasetUrl = getDatasetUrl(request);
             Resource datasetId = output.createResource(datasetUrl + "#dataset");
-
-            String query = request.getQueryString();
-            String fragmentUrl = query == null ? datasetUrl : (datasetUrl + "?" + query);
             Resource fragmentId = output.createResource(fragmentUrl);
 
             long total = fragment.getTotalSize();
 
+            output.add(getDatasetMeta(datasetUrl, dataSource));
             addMeta(output, datasetId, fragmentId, total, limit);
-            addPages(output, fragmentId, fragmentUrl, total, limit, offset, page);
-            addControls(output, datasetId, datasetUrl);
+            addPages(output, fragmentId, datasetUrl, query, total, limit, offset, page);
 
-            // do conneg
-            String bestMatch = MIMEParse.bestMatch(mimeTypes, request.getHeader("Accept"));
-            Lang contentType = RDFLanguages.contentTypeToLang(bestMatch);
+            // advertise the order of the matches, so clients can merge fragments
+            IOrderedDataSource orderedDataSource = getOrderedDataSource(dataSource);
+            if (orderedDataSource != null && !textSearch && !starSearch) {
+                List<Property> order = orderedDataSource.getOrder(subject != null, predicate != null, object != null);
+                if (!order.isEmpty()) {
+                    output.add(fragmentId, CommonResources.LDF_ORDEREDBY, output.createList(order.iterator()));
+                }
+            }
+            entry.setResults(results, total);
+            entry.lap(AccessLog.Phase.COUNT);
 
             // serialize the output
             response.setHeader("Server", "Linked Data Fragments Server");
             response.setContentType(bestMatch);
             response.setCharacterEncoding("utf-8");
 
-            RDFDataMgr.write(response.getOutputStream(), output, contentType);
-        } catch (IOException | URISyntaxException e) {
+            // keep a copy of the response for the cache, unless it is degraded
+            ByteArrayOutputStream copy = cacheKey == null || !fragment.isComplete()
+                    ? null
+                    : new ByteArrayOutputStream();
+            CountingOutputStream out = new CountingOutputStream(
+                    copy == null ? response.getOutputStream() : copy);
+            if (direct) {
+                // the metadata follows the data, with its prefixes
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                ((NTriplesFragment) fragment).writeNTriples(writer);
+                writer.flush();
+            }
+            if (Lang.JSONLD.equals(contentType)) {
+                // stream JSON-LD, instead of compacting a document tree
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                jsonLdWriter.write(writer, output);
+                writer.flush();
+            } else {
+                RDFDataMgr.write(out, output, contentType);
+            }
+            out.flush();
+            if (copy != null) {
+                byte[] body = copy.toByteArray();
+                response.getOutputStream().write(body);
+                if (versioned) {
+                    cache.put(cacheKey, new ResponseCache.Response(bestMatch, body));
+                } else {
+                    cache.put(cacheKey, new ResponseCache.Response(bestMatch, body), unversionedMaxAge);
+                }
+            }
+            entry.setBytes(out.getCount());
+            entry.lap(AccessLog.Phase.SERIALIZE);
+        } catch (FragmentTimeoutException e) {
+            // the data source ran out of time, the client may try again later
+            response.setHeader("Retry-After", "1");
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        } catch (IOException e) {
             e.printStackTrace();
             throw new ServletException(e);
         }
     }
 
+    /**
+     * Evaluate a SPARQL query for one time quantum, and write the solutions
+     * found with a link to resume the query
+     *
+     * @param request
+     * @param response
+     * @param entry access log entry, timing the phases
+     * @param dataSource
+     * @throws IOException
+     */
+    private void writeQueryResults(HttpServletRequest request, HttpServletResponse response,
+            AccessLog.Entry entry, IDataSource dataSource) throws IOException {
+        String sparql = request.getParameter(QUERY);
+        final BgpQuery query;
+        PreemptableExecutor executor;
+        PlanState state;
+        try {
+            query = BgpQuery.parse(sparql);
+            executor = new PreemptableExecutor(dataSource, query);
+            String token = request.getParameter(NEXT);
+            state = token == null ? executor.plan() : PlanState.fromToken(token, query.getPatterns().length);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        entry.lap(AccessLog.Phase.PARSE);
+
+        // the solutions are written as they are found, the link follows them
+        response.setHeader("Server", "Linked Data Fragments Server");
+        response.setContentType(SparqlJsonWriter.CONTENT_TYPE);
+        response.setCharacterEncoding("utf-8");
+        CountingOutputStream out = new CountingOutputStream(response.getOutputStream());
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        final SparqlJsonWriter results = new SparqlJsonWriter(writer, query.getResultVariables());
+        PlanState next = executor.execute(state, sparqlQuantum, new PreemptableExecutor.SolutionHandler() {
+            @Override
+            public void solution(Node[] bindings) throws IOException {
+                results.write(query.project(bindings));
+            }
+        });
+        entry.lap(AccessLog.Phase.LOOKUP);
+
+        results.end(next == null ? null : getDatasetUrl(request) + "?" + QUERY + "="
+                + URLEncoder.encode(sparql, "UTF-8") + "&" + NEXT + "=" + next.toToken());
+        writer.flush();
+        entry.setResults(results.getCount(), -1);
+        entry.setBytes(out.getCount());
+        entry.lap(AccessLog.Phase.SERIALIZE);
+    }
+
+    /**
+     * Write the number of matches of every requested pattern, without
+     * reading any triples
+     *
+     * @param request
+     * @param response
+     * @param entry access log entry, timing the phases
+     * @param dataSource
+     * @throws IOException
+     */
+    private void writeCounts(HttpServletRequest request, HttpServletResponse response,
+            AccessLog.Entry entry, IDataSource dataSource) throws IOException {
+        String[] patterns = request.getParameterValues(COUNT);
+        if (patterns.length > MAXCOUNTPATTERNS) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                    "At most " + MAXCOUNTPATTERNS + " patterns can be counted at once");
+            return;
+        }
+        long[] counts = new long[patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            String[] terms = getCountTerms(request, patterns[i]);
+            if (terms == null) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                        "A pattern has a subject, a predicate and an object");
+                return;
+            }
+            counts[i] = getCount(dataSource, terms[0], terms[1], terms[2]);
+        }
+        entry.setResults(0, counts.length == 1 ? counts[0] : -1);
+        entry.lap(AccessLog.Phase.COUNT);
+
+        // the counts, in the order of the patterns
+        response.setHeader("Server", "Linked Data Fragments Server");
+        if (counts.length == 1) {
+            response.setHeader(TOTALITEMS, Long.toString(counts[0]));
+        }
+        response.setContentType("application/json");
+        response.setCharacterEncoding("utf-8");
+        JsonWriter json = new JsonWriter(response.getWriter());
+        json.beginArray();
+        for (long count : counts) {
+            json.value(count);
+        }
+        json.endArray();
+        json.flush();
+        entry.lap(AccessLog.Phase.SERIALIZE);
+    }
+
+    /**
+     * Get the number of matches of a pattern, from the indexes if possible
+     *
+     * @param dataSource
+     * @param subject
+     * @param predicate
+     * @param object
+     * @return number of matches, as the total of the fragment
+     */
+    private long getCount(IDataSource dataSource, String subject, String predicate, String object) {
+        Resource s = parseAsResource(subject);
+        Property p = parseAsProperty(predicate);
+        RDFNode o = parseAsNode(object);
+        ICountDataSource countDataSource = getCountDataSource(dataSource);
+        return countDataSource != null
+                ? countDataSource.getCount(s, p, o)
+                : dataSource.getFragment(s, p, o, 0, 1).getTotalSize();
+    }
+
     /**
      * Parses the given value as an integer.
      *
@@ -318,9 +1160,12 @@ public class TriplePatternFragmentServlet extends HttpServlet {
      * @return the parsed value, or null if unspecified
      */
     private Resource parseAsResource(String value) {
-        RDFNode subject = parseAsNode(value);
-        return subject == null || subject instanceof Resource
-                ? (Resource) subject
+        Node node = termParser.parse(value);
+        if (node == null) {
+            return null;
+        }
+        return node.isURI()
+                ? ResourceFactory.createResource(node.getURI())
                 : CommonResources.INVALID_URI;
     }
 
@@ -331,15 +1176,18 @@ public class TriplePatternFragmentServlet extends HttpServlet {
      * @return the parsed value, or null if unspecified
      */
     private Property parseAsProperty(String value) {
-        RDFNode predicateNode = parseAsNode(value);
-        if (predicateNode instanceof Resource) {
+        Node node = termParser.parse(value);
+        if (node == null) {
+            return null;
+        }
+        if (node.isURI()) {
             try {
-                return ResourceFactory.createProperty(((Resource) predicateNode).getURI());
+                return ResourceFactory.createProperty(node.getURI());
             } catch (InvalidPropertyURIException ex) {
                 return CommonResources.INVALID_URI;
             }
         }
-        return predicateNode == null ? null : CommonResources.INVALID_URI;
+        return CommonResources.INVALID_URI;
     }
 
     /**
@@ -349,39 +1197,12 @@ public class TriplePatternFragmentServlet extends HttpServlet {
      * @return the parsed value, or null if unspecified
      */
     private RDFNode parseAsNode(String value) {
-        // nothing or empty indicates an unknown
-        if (value == null || value.isEmpty()) {
+        Node node = termParser.parse(value);
+        if (node == null) {
             return null;
         }
-        // find the kind of entity based on the first character
-        char firstChar = value.charAt(0);
-        switch (firstChar) {
-            // variable or blank node indicates an unknown
-            case '?':
-            case '_':
-                return null;
-            // angular brackets indicate a URI
-            case '<':
-                return ResourceFactory.createResource(value.substring(1, value.length() - 1));
-            // quotes indicate a string
-            case '"':
-                Matcher matcher = STRINGPATTERN.matcher(value);
-                if (matcher.matches()) {
-                    String body = matcher.group(1);
-                    String lang = matcher.group(2);
-                    String type = matcher.group(3);
-                    if (lang != null) {
-                        return ResourceFactory.createLangLiteral(body, lang);
-                    }
-                    if (type != null) {
-                        return ResourceFactory.createTypedLiteral(body, TYPES.getSafeTypeByName(type));
-                    }
-                    return ResourceFactory.createPlainLiteral(body);
-                }
-                return CommonResources.INVALID_URI;
-            // assume it's a URI without angular brackets
-            default:
-                return ResourceFactory.createResource(value);
-        }
+        return node.isLiteral()
+                ? new LiteralImpl(node, null)
+                : ResourceFactory.createResource(node.getURI());
     }
 }
@@ -0,0 +1,159 @@
+package org.linkeddatafragments.sparql;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryException;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.sparql.core.TriplePath;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.syntax.Element;
+import com.hp.hpl.jena.sparql.syntax.ElementGroup;
+import com.hp.hpl.jena.sparql.syntax.ElementPathBlock;
+import com.hp.hpl.jena.sparql.syntax.ElementTriplesBlock;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A SPARQL SELECT query over one basic graph pattern, with an optional
+ * LIMIT and OFFSET: the queries that can be evaluated with preemption.
+ *
+ * @author Bart Hanssens
+ */
+public class BgpQuery {
+    private final Triple[] patterns;
+    private final List<Var> variables = new ArrayList<>();
+    private final List<String> resultVariables;
+    private final int[] resultIndexes;
+    private final long limit;
+    private final long offset;
+
+    /**
+     * Creates a new BgpQuery.
+     *
+     * @param patterns the triple patterns
+     * @param resultVariables the projected variable names
+     * @param limit the maximum number of solutions, or -1 for no maximum
+     * @param offset the number of solutions to skip
+     */
+    public BgpQuery(List<Triple> patterns, List<String> resultVariables, long limit, long offset) {
+        this.patterns = patterns.toArray(new Triple[patterns.size()]);
+        this.resultVariables = resultVariables;
+        this.limit = limit;
+        this.offset = offset;
+
+        for (Triple pattern : this.patterns) {
+            for (Node node : new Node[] { pattern.getSubject(), pattern.getPredicate(), pattern.getObject() }) {
+                if (node.isVariable() && !variables.contains(Var.alloc(node))) {
+                    variables.add(Var.alloc(node));
+                }
+            }
+        }
+        this.resultIndexes = new int[resultVariables.size()];
+        for (int i = 0; i < resultIndexes.length; i++) {
+            resultIndexes[i] = variables.indexOf(Var.alloc(resultVariables.get(i)));
+        }
+    }
+
+    /**
+     * Parses a SPARQL query.
+     *
+     * @param sparql the query
+     * @return the query
+     * @throws IllegalArgumentException if the query is not valid, or not a
+     * SELECT query over one basic graph pattern
+     */
+    public static BgpQuery parse(String sparql) {
+        Query query;
+        try {
+            query = QueryFactory.create(sparql);
+        } catch (QueryException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        if (!query.isSelectType() || query.isDistinct() || query.isReduced() || query.hasOrderBy()
+                || query.hasGroupBy() || query.hasAggregators() || query.hasHaving() || query.hasValues()
+                || query.hasDatasetDescription() || !query.getProject().getExprs().isEmpty()) {
+            throw new IllegalArgumentException("Only SELECT queries over a basic graph pattern are supported");
+        }
+
+        List<Triple> patterns = new ArrayList<>();
+        Element element = query.getQueryPattern();
+        List<Element> elements = new ArrayList<>();
+        if (element instanceof ElementGroup) {
+            elements.addAll(((ElementGroup) element).getElements());
+        } else if (element != null) {
+            elements.add(element);
+        }
+        for (Element block : elements) {
+            if (block instanceof ElementPathBlock) {
+                for (TriplePath path : ((ElementPathBlock) block).getPattern().getList()) {
+                    if (!path.isTriple()) {
+                        throw new IllegalArgumentException("Property paths are not supported");
+                    }
+                    patterns.add(path.asTriple());
+                }
+            } else if (block instanceof ElementTriplesBlock) {
+                Iterator<Triple> triples = ((ElementTriplesBlock) block).patternElts();
+                while (triples.hasNext()) {
+                    patterns.add(triples.next());
+                }
+            } else {
+                throw new IllegalArgumentException("Only basic graph patterns are supported");
+            }
+        }
+
+        return new BgpQuery(patterns, query.getResultVars(),
+                query.getLimit() == Query.NOLIMIT ? -1 : query.getLimit(),
+                query.getOffset() == Query.NOLIMIT ? 0 : query.getOffset());
+    }
+
+    /**
+     * @return the triple patterns
+     */
+    public Triple[] getPatterns() {
+        return patterns;
+    }
+
+    /**
+     * @return the variables of the patterns, in order of appearance
+     */
+    public List<Var> getVariables() {
+        return variables;
+    }
+
+    /**
+     * @return the projected variable names
+     */
+    public List<String> getResultVariables() {
+        return resultVariables;
+    }
+
+    /**
+     * Gets the projected values of a solution.
+     *
+     * @param bindings the values of the variables, indexed as {@link #getVariables()}
+     * @return the values of the projected variables, null if unbound
+     */
+    public Node[] project(Node[] bindings) {
+        Node[] values = new Node[resultIndexes.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = resultIndexes[i] < 0 ? null : bindings[resultIndexes[i]];
+        }
+        return values;
+    }
+
+    /**
+     * @return the maximum number of solutions, or -1 for no maximum
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the number of solutions to skip
+     */
+    public long getOffset() {
+        return offset;
+    }
+}
@@ -0,0 +1,120 @@
+package org.linkeddatafragments.sparql;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * The state of a suspended nested-loop join plan: the order of the patterns,
+ * and the position in the fragment of every pattern that is being scanned.
+ * The positions of all but the last pattern are those of the triples that
+ * bind the next patterns; the last is the position of the next triple.
+ * <p>
+ * The state is small, so clients carry it in a continuation token and
+ * any server can resume the plan.</p>
+ *
+ * @author Bart Hanssens
+ */
+public class PlanState {
+    private final int[] order;
+    private final long[] positions;
+    private final long produced;
+
+    /**
+     * Creates a new PlanState.
+     *
+     * @param order the indexes of the patterns, in join order
+     * @param positions the positions in the fragments of the first patterns
+     * @param produced the number of solutions found so far
+     */
+    public PlanState(int[] order, long[] positions, long produced) {
+        this.order = order;
+        this.positions = positions;
+        this.produced = produced;
+    }
+
+    /**
+     * @return the indexes of the patterns, in join order
+     */
+    public int[] getOrder() {
+        return order;
+    }
+
+    /**
+     * @return the positions in the fragments of the first patterns
+     */
+    public long[] getPositions() {
+        return positions;
+    }
+
+    /**
+     * @return the number of solutions found so far
+     */
+    public long getProduced() {
+        return produced;
+    }
+
+    /**
+     * Encodes the state as a URL-safe continuation token.
+     *
+     * @return the token
+     */
+    public String toToken() {
+        StringBuilder state = new StringBuilder();
+        for (int i = 0; i < order.length; i++) {
+            state.append(i == 0 ? "" : ".").append(order[i]);
+        }
+        state.append('_');
+        for (int i = 0; i < positions.length; i++) {
+            state.append(i == 0 ? "" : ".").append(positions[i]);
+        }
+        state.append('_').append(produced);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(state.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Decodes a continuation token.
+     *
+     * @param token the token
+     * @param patterns the number of patterns of the query
+     * @return the state
+     * @throws IllegalArgumentException if the token is not a valid state for the query
+     */
+    public static PlanState fromToken(String token, int patterns) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.US_ASCII).split("_", -1);
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Invalid continuation token");
+            }
+            String[] orderParts = parts[0].split("\\.");
+            String[] positionParts = parts[1].split("\\.");
+            int[] order = new int[orderParts.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = Integer.parseInt(orderParts[i]);
+            }
+            long[] positions = new long[positionParts.length];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = Long.parseLong(positionParts[i]);
+                if (positions[i] < 0) {
+                    throw new IllegalArgumentException("Invalid continuation token");
+                }
+            }
+            long produced = Long.parseLong(parts[2]);
+
+            // the order is a permutation of the patterns
+            int[] sorted = order.clone();
+            Arrays.sort(sorted);
+            for (int i = 0; i < sorted.length; i++) {
+                if (sorted[i] != i) {
+                    throw new IllegalArgumentException("Invalid continuation token");
+                }
+            }
+            if (order.length != patterns || positions.length > patterns || produced < 0) {
+                throw new IllegalArgumentException("Invalid continuation token");
+            }
+            return new PlanState(order, positions, produced);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid continuation token");
+        }
+    }
+}
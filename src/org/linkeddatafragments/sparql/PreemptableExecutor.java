@@ -0,0 +1,382 @@
+package org.linkeddatafragments.sparql;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.sparql.core.Var;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.linkeddatafragments.datasource.DataSource;
+import org.linkeddatafragments.datasource.IDataSource;
+import org.linkeddatafragments.datasource.TriplePatternFragment;
+import org.linkeddatafragments.exceptions.FragmentTimeoutException;
+
+/**
+ * Evaluates a basic graph pattern over a data source with a nested-loop
+ * join of triple pattern fragments, for at most a time quantum.
+ * <p>
+ * When the quantum is used up, the plan is suspended between two triples
+ * and its {@link PlanState} is returned, so a later request can resume it
+ * where it stopped. Since a position in a fragment is all that is needed
+ * to resume a scan, no query keeps a worker or any memory between
+ * quanta. Data sources get the deadline of the quantum for every page, so
+ * a slow page does not hold a worker much longer either.</p>
+ *
+ * @author Bart Hanssens
+ */
+public class PreemptableExecutor {
+    // triples per fragment page, the same as the servlet pages
+    private final static int PAGESIZE = 100;
+
+    /**
+     * Receives the solutions of a query.
+     */
+    public interface SolutionHandler {
+        /**
+         * Handles a solution.
+         * @param bindings the values of the variables, indexed as {@link BgpQuery#getVariables()}
+         * @throws IOException
+         */
+        public void solution(Node[] bindings) throws IOException;
+    }
+
+    // the statements of a page are sorted, so positions are stable between quanta
+    private final static Comparator<Statement> STATEMENT_ORDER = new Comparator<Statement>() {
+        @Override
+        public int compare(Statement a, Statement b) {
+            int cmp = a.getSubject().toString().compareTo(b.getSubject().toString());
+            if (cmp == 0) {
+                cmp = a.getPredicate().toString().compareTo(b.getPredicate().toString());
+            }
+            return cmp != 0 ? cmp : a.getObject().toString().compareTo(b.getObject().toString());
+        }
+    };
+
+    /**
+     * Scan of the fragment of a pattern, with the variables of earlier
+     * patterns substituted, from a position on
+     */
+    private class Scan {
+        private final Resource subject;
+        private final Property predicate;
+        private final RDFNode object;
+        private final boolean empty;
+        private long position;
+        private long pageStart = -1;
+        private List<Statement> page;
+        // whether no page follows the current one
+        private boolean last;
+
+        Scan(Triple pattern, Node[] bindings, long position) {
+            Node s = substitute(pattern.getSubject(), bindings);
+            Node p = substitute(pattern.getPredicate(), bindings);
+            Node o = substitute(pattern.getObject(), bindings);
+            // literals cannot be subjects, and only IRIs can be predicates
+            this.empty = (s != null && s.isLiteral()) || (p != null && !p.isURI());
+            this.subject = s == null || empty ? null : (Resource) nodes.asRDFNode(s);
+            // not created from the URI, which Jena refuses without a local name
+            this.predicate = p == null || empty ? null : nodes.asRDFNode(p).as(Property.class);
+            this.object = o == null ? null : nodes.asRDFNode(o);
+            this.position = position;
+        }
+
+        /**
+         * Gets the next triple, and moves past it.
+         *
+         * @return the triple, or null if the fragment has no more triples
+         */
+        Triple next() {
+            if (empty) {
+                return null;
+            }
+            while (true) {
+                long start = position - position % PAGESIZE;
+                if (start != pageStart) {
+                    TriplePatternFragment fragment = fetch(start, PAGESIZE);
+                    List<Statement> statements = fragment.getTriples().listStatements().toList();
+                    // an empty page ends the scan, unless the data source ran out of time
+                    if (statements.isEmpty() && !fragment.isComplete()) {
+                        throw new FragmentTimeoutException("Page " + start + " is incomplete");
+                    }
+                    Collections.sort(statements, STATEMENT_ORDER);
+                    page = statements;
+                    pageStart = start;
+                    last = statements.isEmpty() || start + PAGESIZE >= fragment.getTotalSize();
+                }
+                int index = (int) (position - pageStart);
+                if (index < page.size()) {
+                    position++;
+                    return page.get(index).asTriple();
+                }
+                // pages may hold fewer triples, when duplicates are merged
+                if (last) {
+                    return null;
+                }
+                position = pageStart + PAGESIZE;
+            }
+        }
+
+        /**
+         * Estimates the number of matches, from the first page.
+         *
+         * @return estimated number of triples
+         */
+        long count() {
+            return empty ? 0 : fetch(0, 1).getTotalSize();
+        }
+
+        /**
+         * Gets a page of the fragment, within the deadline of the quantum.
+         *
+         * @param offset the triple index at which to start the page
+         * @param limit the number of triples on the page
+         * @return the page
+         */
+        private TriplePatternFragment fetch(long offset, long limit) {
+            DataSource.setRequestDeadline(fetchDeadline);
+            try {
+                return dataSource.getFragment(subject, predicate, object, offset, limit);
+            } finally {
+                DataSource.setRequestDeadline(0);
+            }
+        }
+    }
+
+    private final IDataSource dataSource;
+    private final BgpQuery query;
+    private final Model nodes = ModelFactory.createDefaultModel();
+    private final int[][] variableIndexes;
+    // deadline of the data source requests, or 0 for none
+    private long fetchDeadline = 0;
+
+    /**
+     * Creates a new PreemptableExecutor.
+     *
+     * @param dataSource the data source
+     * @param query the query
+     */
+    public PreemptableExecutor(IDataSource dataSource, BgpQuery query) {
+        this.dataSource = dataSource;
+        this.query = query;
+
+        Triple[] patterns = query.getPatterns();
+        this.variableIndexes = new int[patterns.length][];
+        for (int i = 0; i < patterns.length; i++) {
+            variableIndexes[i] = new int[3];
+            Node[] terms = { patterns[i].getSubject(), patterns[i].getPredicate(), patterns[i].getObject() };
+            for (int j = 0; j < 3; j++) {
+                variableIndexes[i][j] = terms[j].isVariable() ? query.getVariables().indexOf(Var.alloc(terms[j])) : -1;
+            }
+        }
+    }
+
+    /**
+     * Plans the join order: start with the pattern with the fewest matches,
+     * then repeatedly add the pattern with the fewest matches among those
+     * sharing a variable with the patterns before it.
+     *
+     * @return the state at the start of the plan
+     */
+    public PlanState plan() {
+        Triple[] patterns = query.getPatterns();
+        Node[] unbound = new Node[query.getVariables().size()];
+        long[] counts = new long[patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            counts[i] = new Scan(patterns[i], unbound, 0).count();
+        }
+
+        int[] order = new int[patterns.length];
+        boolean[] planned = new boolean[patterns.length];
+        Set<Integer> bound = new HashSet<>();
+        for (int step = 0; step < order.length; step++) {
+            int best = -1;
+            boolean bestConnected = false;
+            for (int i = 0; i < patterns.length; i++) {
+                if (planned[i]) {
+                    continue;
+                }
+                boolean connected = false;
+                for (int variable : variableIndexes[i]) {
+                    connected |= variable >= 0 && bound.contains(variable);
+                }
+                if (best < 0 || (connected && !bestConnected)
+                        || (connected == bestConnected && counts[i] < counts[best])) {
+                    best = i;
+                    bestConnected = connected;
+                }
+            }
+            order[step] = best;
+            planned[best] = true;
+            for (int variable : variableIndexes[best]) {
+                if (variable >= 0) {
+                    bound.add(variable);
+                }
+            }
+        }
+        return new PlanState(order, new long[] { 0 }, 0);
+    }
+
+    /**
+     * Runs the plan for a time quantum, or until it is done. At least one
+     * triple is read, so every quantum makes progress.
+     *
+     * @param state the state to resume from
+     * @param quantum the time quantum in milliseconds
+     * @param handler the handler of the solutions
+     * @return the state to resume from, or null if the plan is done
+     * @throws IOException if the handler fails
+     * @throws FragmentTimeoutException if the data source times out before
+     * any progress is made
+     */
+    public PlanState execute(PlanState state, long quantum, SolutionHandler handler) throws IOException {
+        long deadline = System.currentTimeMillis() + quantum;
+        fetchDeadline = deadline;
+        Triple[] patterns = query.getPatterns();
+        int[] order = state.getOrder();
+        long produced = state.getProduced();
+        long offset = query.getOffset();
+        long limit = query.getLimit();
+
+        Node[][] bindings = new Node[patterns.length + 1][];
+        bindings[0] = new Node[query.getVariables().size()];
+        if (limit == 0) {
+            return null;
+        }
+        if (patterns.length == 0) {
+            if (produced == 0 && offset == 0) {
+                handler.solution(bindings[0]);
+            }
+            return null;
+        }
+
+        // restore the scans, binding the triples at the saved positions
+        long[] positions = state.getPositions();
+        Scan[] scans = new Scan[patterns.length];
+        scans[0] = new Scan(patterns[order[0]], bindings[0], positions[0]);
+        int level = 0;
+        for (int i = 0; i + 1 < positions.length && i + 1 < patterns.length; i++) {
+            Triple triple = scans[i].next();
+            Node[] next = triple == null ? null : bind(order[i], triple, bindings[i]);
+            if (next == null) {
+                break;
+            }
+            bindings[i + 1] = next;
+            level = i + 1;
+            scans[level] = new Scan(patterns[order[level]], next, positions[level]);
+        }
+
+        boolean progress = false;
+        while (true) {
+            if (progress && System.currentTimeMillis() >= deadline) {
+                return suspend(order, scans, level, produced);
+            }
+            // until the first triple is read, a page gets a quantum of its own
+            fetchDeadline = progress ? deadline : Math.max(deadline, System.currentTimeMillis() + quantum);
+            Triple triple;
+            try {
+                triple = scans[level].next();
+            } catch (FragmentTimeoutException e) {
+                if (!progress) {
+                    throw e;
+                }
+                return suspend(order, scans, level, produced);
+            }
+            progress = true;
+
+            // continue the scan of the previous pattern when a scan ends
+            if (triple == null) {
+                if (level == 0) {
+                    return null;
+                }
+                level--;
+                continue;
+            }
+            Node[] next = bind(order[level], triple, bindings[level]);
+            if (next == null) {
+                continue;
+            }
+            if (level + 1 < patterns.length) {
+                bindings[level + 1] = next;
+                level++;
+                scans[level] = new Scan(patterns[order[level]], next, 0);
+                continue;
+            }
+
+            // all patterns matched
+            if (produced >= offset) {
+                handler.solution(next);
+            }
+            produced++;
+            if (limit >= 0 && produced >= offset + limit) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Gets the state of the scans: the triples bound by the earlier patterns,
+     * and the next triple of the current pattern.
+     *
+     * @param order the join order
+     * @param scans the scans
+     * @param level the current pattern
+     * @param produced the number of solutions found so far
+     * @return the state
+     */
+    private static PlanState suspend(int[] order, Scan[] scans, int level, long produced) {
+        long[] positions = new long[level + 1];
+        for (int i = 0; i < level; i++) {
+            positions[i] = scans[i].position - 1;
+        }
+        positions[level] = scans[level].position;
+        return new PlanState(order, positions, produced);
+    }
+
+    /**
+     * Binds the variables of a pattern to the terms of a matching triple.
+     *
+     * @param pattern the index of the pattern
+     * @param triple the triple
+     * @param bindings the values bound so far
+     * @return the new values, or null if a variable would get two values
+     */
+    private Node[] bind(int pattern, Triple triple, Node[] bindings) {
+        Node[] result = bindings.clone();
+        Node[] terms = { triple.getSubject(), triple.getPredicate(), triple.getObject() };
+        for (int i = 0; i < 3; i++) {
+            int variable = variableIndexes[pattern][i];
+            if (variable < 0) {
+                continue;
+            }
+            if (result[variable] == null) {
+                result[variable] = terms[i];
+            } else if (!result[variable].equals(terms[i])) {
+                return null;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Substitutes a variable by its value.
+     *
+     * @param node the term of a pattern
+     * @param bindings the values bound so far
+     * @return the term, its value, or null if it is an unbound variable
+     */
+    private Node substitute(Node node, Node[] bindings) {
+        if (!node.isVariable()) {
+            return node;
+        }
+        return bindings[query.getVariables().indexOf(Var.alloc(node))];
+    }
+}
@@ -0,0 +1,101 @@
+package org.linkeddatafragments.sparql;
+
+import com.google.gson.stream.JsonWriter;
+import com.hp.hpl.jena.graph.Node;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writes solutions in the SPARQL 1.1 Query Results JSON Format as they are
+ * found, followed by the link to the next results of a suspended query.
+ *
+ * @author Bart Hanssens
+ */
+public class SparqlJsonWriter implements Closeable {
+    public final static String CONTENT_TYPE = "application/sparql-results+json";
+
+    private final JsonWriter json;
+    private final List<String> variables;
+    private long count = 0;
+
+    /**
+     * Creates a new SparqlJsonWriter, and writes the head.
+     *
+     * @param writer the writer
+     * @param variables the variable names
+     * @throws IOException
+     */
+    public SparqlJsonWriter(Writer writer, List<String> variables) throws IOException {
+        this.json = new JsonWriter(writer);
+        this.variables = variables;
+
+        json.beginObject();
+        json.name("head").beginObject().name("vars").beginArray();
+        for (String variable : variables) {
+            json.value(variable);
+        }
+        json.endArray().endObject();
+        json.name("results").beginObject().name("bindings").beginArray();
+    }
+
+    /**
+     * Writes a solution.
+     *
+     * @param values the values of the variables, null if unbound
+     * @throws IOException
+     */
+    public void write(Node[] values) throws IOException {
+        json.beginObject();
+        for (int i = 0; i < values.length; i++) {
+            Node value = values[i];
+            if (value == null) {
+                continue;
+            }
+            json.name(variables.get(i)).beginObject();
+            if (value.isURI()) {
+                json.name("type").value("uri").name("value").value(value.getURI());
+            } else if (value.isBlank()) {
+                json.name("type").value("bnode").name("value").value(value.getBlankNodeLabel());
+            } else {
+                json.name("type").value("literal").name("value").value(value.getLiteralLexicalForm());
+                if (!value.getLiteralLanguage().isEmpty()) {
+                    json.name("xml:lang").value(value.getLiteralLanguage());
+                } else if (value.getLiteralDatatypeURI() != null) {
+                    json.name("datatype").value(value.getLiteralDatatypeURI());
+                }
+            }
+            json.endObject();
+        }
+        json.endObject();
+        count++;
+    }
+
+    /**
+     * Ends the results.
+     *
+     * @param next URL of the next results, or null if there are none
+     * @throws IOException
+     */
+    public void end(String next) throws IOException {
+        json.endArray().endObject();
+        if (next != null) {
+            json.name("next").value(next);
+        }
+        json.endObject();
+        json.flush();
+    }
+
+    /**
+     * @return the number of solutions written
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        json.close();
+    }
+}
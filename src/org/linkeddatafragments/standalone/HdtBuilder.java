@@ -0,0 +1,248 @@
+package org.linkeddatafragments.standalone;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+
+import org.linkeddatafragments.datasource.DataSourceFactory;
+import org.linkeddatafragments.datasource.TermStrings;
+
+import org.rdfhdt.hdt.enums.RDFNotation;
+import org.rdfhdt.hdt.enums.ResultEstimationType;
+import org.rdfhdt.hdt.hdt.HDT;
+import org.rdfhdt.hdt.hdt.HDTManager;
+import org.rdfhdt.hdt.listener.ProgressListener;
+import org.rdfhdt.hdt.options.HDTSpecification;
+import org.rdfhdt.hdt.triples.IteratorTripleString;
+import org.rdfhdt.hdt.triples.TripleString;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.query.ReadWrite;
+import com.hp.hpl.jena.tdb.TDBFactory;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+/**
+ * <p>
+ * Use this class to convert an RDF dump or a Jena TDB store into an indexed
+ * HDT file, which can be served by an HDT datasource.</p>
+ * <p>
+ * Input is streamed into the HDT generator, and the throughput is reported.
+ * Optionally, the datasource is added to a configuration file.</p>
+ *
+ * @author Bart Hanssens
+ */
+public class HdtBuilder {
+    private final static String DEFAULT_BASE = "http://linkeddatafragments.org/";
+
+    /**
+     * Streams the triples of the default graph of a TDB store.
+     */
+    private static class TDBTripleIterator implements IteratorTripleString {
+        private final Graph graph;
+        private ExtendedIterator<Triple> triples;
+
+        TDBTripleIterator(Graph graph) {
+            this.graph = graph;
+            this.triples = graph.find(Node.ANY, Node.ANY, Node.ANY);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return triples.hasNext();
+        }
+
+        @Override
+        public TripleString next() {
+            Triple triple = triples.next();
+            // lexical forms stay unescaped, as when parsing N-Triples
+            return new TripleString(
+                TermStrings.toString(triple.getSubject()),
+                TermStrings.toString(triple.getPredicate()),
+                TermStrings.toString(triple.getObject()));
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return false;
+        }
+
+        @Override
+        public TripleString previous() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void goToStart() {
+            triples.close();
+            triples = graph.find(Node.ANY, Node.ANY, Node.ANY);
+        }
+
+        @Override
+        public long estimatedNumResults() {
+            return graph.size();
+        }
+
+        @Override
+        public ResultEstimationType numResultEstimation() {
+            return ResultEstimationType.APPROXIMATE;
+        }
+    }
+
+    /**
+     * Prints progress messages, at most once per percent.
+     */
+    private static class ConsoleListener implements ProgressListener {
+        private int last = -1;
+
+        @Override
+        public void notifyProgress(float level, String message) {
+            if ((int) level != last) {
+                last = (int) level;
+                System.out.println(String.format("%3d%% %s", last, message));
+            }
+        }
+    }
+
+    private static void printHelp(Options options) {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.printHelp(HdtBuilder.class.getName() + " [input.nt|input.ttl] -o output.hdt [<options>]",
+                    "Converts RDF into an indexed HDT file. Options:", options, "");
+    }
+
+    /**
+     * Adds an HDT datasource to a configuration file, creating the file if needed.
+     *
+     * @param config configuration file
+     * @param name name of the datasource
+     * @param title title of the datasource
+     * @param description description of the datasource
+     * @param hdt HDT file
+     * @throws IOException
+     */
+    private static void addToConfig(File config, String name, String title,
+            String description, File hdt) throws IOException {
+        JsonObject root;
+        if (config.exists()) {
+            try (Reader reader = new FileReader(config)) {
+                root = new JsonParser().parse(reader).getAsJsonObject();
+            }
+        } else {
+            root = new JsonObject();
+        }
+        if (!root.has("datasources")) {
+            root.add("datasources", new JsonObject());
+        }
+        if (!root.has("prefixes")) {
+            root.add("prefixes", new JsonObject());
+        }
+
+        JsonObject settings = new JsonObject();
+        settings.addProperty("file", hdt.getAbsolutePath());
+
+        JsonObject dataSource = new JsonObject();
+        dataSource.addProperty("title", title);
+        dataSource.addProperty("type", DataSourceFactory.HDT);
+        dataSource.addProperty("description", description);
+        dataSource.add("settings", settings);
+        root.getAsJsonObject("datasources").add(name, dataSource);
+
+        try (Writer writer = new FileWriter(config)) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(root, writer);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new Options();
+        options.addOption("h", "help", false, "Print this help message and then exit.");
+        options.addOption("o", "output", true, "The HDT file to create.");
+        options.addOption("t", "tdb", true, "Read from this Jena TDB directory instead of an RDF file.");
+        options.addOption("f", "format", true, "Format of the RDF file (ntriples, turtle, rdfxml, n3). "
+                                            + "The default is guessed from the file name.");
+        options.addOption("b", "base", true, "The base URI. The default is " + DEFAULT_BASE);
+        options.addOption("c", "config", true, "Add the datasource to this configuration file.");
+        options.addOption("n", "name", true, "The name of the datasource in the configuration file.");
+        options.addOption(null, "title", true, "The title of the datasource in the configuration file.");
+        options.addOption(null, "description", true, "The description of the datasource in the configuration file.");
+
+        CommandLineParser parser = new DefaultParser();
+        CommandLine commandLine = parser.parse(options, args);
+
+        String input = commandLine.getArgList().isEmpty() ? null : commandLine.getArgs()[0];
+        String tdb = commandLine.getOptionValue('t');
+        String output = commandLine.getOptionValue('o');
+
+        if ((input == null && tdb == null) || output == null || commandLine.hasOption('h')) {
+            printHelp(options);
+            System.exit(-1);
+        }
+        String base = commandLine.getOptionValue('b', DEFAULT_BASE);
+        ProgressListener listener = new ConsoleListener();
+
+        // generate the HDT file
+        long start = System.currentTimeMillis();
+        HDT hdt;
+        if (tdb != null) {
+            Dataset dataset = TDBFactory.createDataset(new File(tdb).getAbsolutePath());
+            dataset.begin(ReadWrite.READ);
+            try {
+                hdt = HDTManager.generateHDT(new TDBTripleIterator(dataset.getDefaultModel().getGraph()),
+                        base, new HDTSpecification(), listener);
+            } finally {
+                dataset.end();
+                TDBFactory.release(dataset);
+            }
+        } else {
+            RDFNotation notation = commandLine.hasOption('f')
+                    ? RDFNotation.parse(commandLine.getOptionValue('f'))
+                    : RDFNotation.guess(input);
+            hdt = HDTManager.generateHDT(input, base, notation, new HDTSpecification(), listener);
+        }
+        try {
+            hdt.saveToHDT(output, listener);
+        } finally {
+            hdt.close();
+        }
+        long generated = System.currentTimeMillis();
+
+        // build the index, which is stored next to the HDT file
+        HDT indexed = HDTManager.mapIndexedHDT(output, listener);
+        long triples = indexed.getTriples().getNumberOfElements();
+        indexed.close();
+        long end = System.currentTimeMillis();
+
+        System.out.println(String.format("Converted %d triples in %.1f s (%.0f triples/s), indexed in %.1f s",
+                triples, (generated - start) / 1000.0,
+                triples * 1000.0 / Math.max(1, generated - start),
+                (end - generated) / 1000.0));
+
+        if (commandLine.hasOption('c')) {
+            File hdtFile = new File(output);
+            String name = commandLine.getOptionValue('n', hdtFile.getName().replaceFirst("\\.hdt$", ""));
+            addToConfig(new File(commandLine.getOptionValue('c')), name,
+                    commandLine.getOptionValue("title", name),
+                    commandLine.getOptionValue("description", name + " with an HDT back-end"),
+                    hdtFile);
+            System.out.println("Added datasource " + name + " to " + commandLine.getOptionValue('c'));
+        }
+    }
+}
@@ -0,0 +1,541 @@
+package org.linkeddatafragments.standalone;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+
+import org.linkeddatafragments.datasource.DataSourceFactory;
+import org.linkeddatafragments.servlet.TriplePatternFragmentServlet;
+
+import org.rdfhdt.hdt.enums.RDFNotation;
+import org.rdfhdt.hdt.hdt.HDT;
+import org.rdfhdt.hdt.hdt.HDTManager;
+import org.rdfhdt.hdt.options.HDTSpecification;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.tdb.TDB;
+import com.hp.hpl.jena.tdb.TDBFactory;
+
+/**
+ * <p>
+ * Use this class to measure how a server behaves under concurrent load, by
+ * replaying a log of fragment URLs, for instance recorded while running a
+ * SPARQL benchmark through a TPF client.</p>
+ * <p>
+ * Requests are sent by a number of concurrent clients, optionally at a fixed
+ * overall rate. Latencies are measured from the moment a request was
+ * scheduled, so a slow server cannot hide its queueing delay. Throughput,
+ * latency percentiles and garbage collection are reported per datasource.</p>
+ * <p>
+ * Without a target server, an embedded server is started, either with a
+ * given configuration file or with a generated dataset served by every
+ * datasource type that can load it.</p>
+ *
+ * @author Bart Hanssens
+ */
+public class LoadTester {
+    private final static String BASE = "http://example.org/";
+    private final static String[] PREDICATES = {
+        "knows", "likes", "name", "type", "label", "related", "created"
+    };
+
+    /**
+     * Measurements of a run
+     */
+    private static class Result {
+        private final long[] latencies;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private long duration;
+        private long gcCount;
+        private long gcTime;
+
+        Result(int maxRequests) {
+            this.latencies = new long[maxRequests];
+        }
+
+        void add(long latency, long size, boolean error) {
+            long index = count.getAndIncrement();
+            if (index < latencies.length) {
+                latencies[(int) index] = latency;
+            }
+            bytes.addAndGet(size);
+            if (error) {
+                errors.incrementAndGet();
+            }
+        }
+    }
+
+    private static void printHelp(Options options) {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.printHelp(LoadTester.class.getName() + " [urls.txt] [<options>]",
+                    "Replays fragment requests and reports throughput and latencies. "
+                    + "URLs are absolute or relative to the server. Options:", options,
+                    "Without -s, an embedded server is started with -c or -g. "
+                    + "With a remote server, only garbage collection of the load generator is reported.");
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new Options();
+        options.addOption("h", "help", false, "Print this help message and then exit.");
+        options.addOption("s", "server", true, "Base URL of the server to test.");
+        options.addOption("c", "config", true, "Start an embedded server with this configuration file.");
+        options.addOption("g", "generate", true, "Start an embedded server with a generated dataset "
+                                            + "of this number of triples, served by each datasource type.");
+        options.addOption("n", "concurrency", true, "Number of concurrent clients. The default is 8.");
+        options.addOption("r", "rate", true, "Requests per second over all clients. The default is unlimited.");
+        options.addOption("i", "iterations", true, "Number of times the URLs are replayed. The default is 1.");
+        options.addOption("d", "duration", true, "Replay the URLs for this number of seconds instead.");
+        options.addOption("w", "warmup", true, "Number of requests sent before measuring. The default is 100.");
+        options.addOption("a", "accept", true, "Accept header of the requests. The default is text/turtle.");
+        options.addOption("u", "urls", true, "Number of URLs to generate when no log is given. The default is 1000.");
+
+        CommandLineParser parser = new DefaultParser();
+        CommandLine commandLine = parser.parse(options, args);
+
+        String log = commandLine.getArgList().isEmpty() ? null : commandLine.getArgs()[0];
+        boolean generate = commandLine.hasOption('g');
+        if ((log == null && !generate) || commandLine.hasOption('h')
+                || (!commandLine.hasOption('s') && !commandLine.hasOption('c') && !generate)) {
+            printHelp(options);
+            System.exit(-1);
+        }
+        int concurrency = Integer.parseInt(commandLine.getOptionValue('n', "8"));
+        double rate = Double.parseDouble(commandLine.getOptionValue('r', "0"));
+        int iterations = Integer.parseInt(commandLine.getOptionValue('i', "1"));
+        long duration = TimeUnit.SECONDS.toNanos(Long.parseLong(commandLine.getOptionValue('d', "0")));
+        int warmup = Integer.parseInt(commandLine.getOptionValue('w', "100"));
+        String accept = commandLine.getOptionValue('a', "text/turtle");
+
+        // the workload of every datasource
+        Map<String, List<String>> workloads = new LinkedHashMap<>();
+        Server server = null;
+        String base = commandLine.getOptionValue('s');
+
+        if (generate) {
+            long triples = Long.parseLong(commandLine.getOptionValue('g'));
+            File dir = Files.createTempDirectory("ldf-load").toFile();
+            System.out.println("Generating " + triples + " triples in " + dir);
+            File config = generate(dir, triples);
+            server = startServer(config);
+            base = "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+
+            // replay the same workload on every datasource type
+            List<String> urls = log != null ? readUrls(log)
+                    : generateUrls(triples, Integer.parseInt(commandLine.getOptionValue('u', "1000")));
+            for (String type : new String[] { "hdt", "tdb" }) {
+                workloads.put(type, replaceDataSource(urls, type));
+            }
+        } else {
+            if (base == null) {
+                server = startServer(new File(commandLine.getOptionValue('c')));
+                base = "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+            }
+            // group the logged requests by datasource
+            for (String url : readUrls(log)) {
+                String dataSource = getDataSource(url);
+                if (!workloads.containsKey(dataSource)) {
+                    workloads.put(dataSource, new ArrayList<String>());
+                }
+                workloads.get(dataSource).add(url);
+            }
+        }
+
+        PoolingHttpClientConnectionManager connections = new PoolingHttpClientConnectionManager();
+        connections.setMaxTotal(concurrency);
+        connections.setDefaultMaxPerRoute(concurrency);
+        try (CloseableHttpClient client = HttpClients.custom().setConnectionManager(connections).build()) {
+            System.out.println(String.format("%-20s %9s %7s %9s %9s %9s %9s %9s %9s %6s %8s",
+                    "datasource", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms",
+                    "MB", "gcs", "gc ms"));
+            for (Map.Entry<String, List<String>> workload : workloads.entrySet()) {
+                List<String> urls = resolve(base, workload.getValue());
+                // the warmup is only limited by its number of requests
+                run(client, urls, concurrency, 0, Integer.MAX_VALUE, 0, warmup, accept);
+                Result result = run(client, urls, concurrency, rate, iterations, duration, Integer.MAX_VALUE, accept);
+                report(workload.getKey(), result);
+            }
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+
+    /**
+     * Sends the requests, and measures their latencies.
+     *
+     * @param client HTTP client
+     * @param urls URLs to request
+     * @param concurrency number of concurrent clients
+     * @param rate requests per second, or 0 for no limit
+     * @param iterations number of times the URLs are requested
+     * @param duration nanoseconds to keep requesting, or 0 to use iterations
+     * @param maxRequests maximum number of requests
+     * @param accept accept header
+     * @return measurements
+     * @throws InterruptedException
+     */
+    private static Result run(final CloseableHttpClient client, final List<String> urls, int concurrency,
+            double rate, int iterations, long duration, int maxRequests, final String accept)
+            throws InterruptedException {
+        final long total = Math.min(maxRequests, duration > 0 ? Integer.MAX_VALUE : (long) urls.size() * iterations);
+        final long interval = rate > 0 ? (long) (1e9 / rate) : 0;
+        final long start = System.nanoTime();
+        final long end = duration > 0 ? start + duration : Long.MAX_VALUE;
+        final AtomicLong next = new AtomicLong();
+        final Result result = new Result((int) Math.min(total, 10000000));
+
+        long[] gc = getGarbageCollection();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long index;
+                    while ((index = next.getAndIncrement()) < total) {
+                        // wait for the scheduled time, which is the start of the latency
+                        long scheduled = interval > 0 ? start + index * interval : System.nanoTime();
+                        long wait = scheduled - System.nanoTime();
+                        if (wait > 0) {
+                            try {
+                                TimeUnit.NANOSECONDS.sleep(wait);
+                            } catch (InterruptedException e) {
+                                return;
+                            }
+                        }
+                        if (scheduled > end) {
+                            return;
+                        }
+                        HttpGet get = new HttpGet(urls.get((int) (index % urls.size())));
+                        get.setHeader("Accept", accept);
+                        long size = 0;
+                        boolean error;
+                        try (CloseableHttpResponse response = client.execute(get)) {
+                            size = EntityUtils.toByteArray(response.getEntity()).length;
+                            error = response.getStatusLine().getStatusCode() >= 400;
+                        } catch (IOException e) {
+                            error = true;
+                        }
+                        result.add(System.nanoTime() - scheduled, size, error);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+        result.duration = System.nanoTime() - start;
+        long[] gcAfter = getGarbageCollection();
+        result.gcCount = gcAfter[0] - gc[0];
+        result.gcTime = gcAfter[1] - gc[1];
+        return result;
+    }
+
+    /**
+     * Gets the number of garbage collections and their total time.
+     *
+     * @return number of collections, and milliseconds spent collecting
+     */
+    private static long[] getGarbageCollection() {
+        long[] gc = new long[2];
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gc[0] += Math.max(0, collector.getCollectionCount());
+            gc[1] += Math.max(0, collector.getCollectionTime());
+        }
+        return gc;
+    }
+
+    /**
+     * Prints the measurements of a datasource.
+     *
+     * @param dataSource the datasource
+     * @param result the measurements
+     */
+    private static void report(String dataSource, Result result) {
+        int count = (int) Math.min(result.count.get(), result.latencies.length);
+        long[] latencies = Arrays.copyOf(result.latencies, count);
+        Arrays.sort(latencies);
+        System.out.println(String.format("%-20s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.1f %6d %8d",
+                dataSource, result.count.get(), result.errors.get(),
+                result.count.get() * 1e9 / Math.max(1, result.duration),
+                percentile(latencies, 0.5), percentile(latencies, 0.99), percentile(latencies, 0.999),
+                percentile(latencies, 1), result.bytes.get() / 1048576.0,
+                result.gcCount, result.gcTime));
+    }
+
+    /**
+     * Gets a percentile of sorted latencies.
+     *
+     * @param latencies sorted latencies in nanoseconds
+     * @param fraction the percentile, as a fraction
+     * @return latency in milliseconds
+     */
+    private static double percentile(long[] latencies, double fraction) {
+        if (latencies.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * latencies.length) - 1;
+        return latencies[Math.max(0, index)] / 1e6;
+    }
+
+    /**
+     * Reads the URLs of a log, one per line.
+     *
+     * @param log log file
+     * @return URLs
+     * @throws IOException
+     */
+    private static List<String> readUrls(String log) throws IOException {
+        List<String> urls = new ArrayList<>();
+        for (String line : Files.readAllLines(new File(log).toPath(), StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                urls.add(line);
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Gets the path and query of a URL.
+     *
+     * @param url absolute or relative URL
+     * @return path and query
+     */
+    private static String getPath(String url) {
+        int scheme = url.indexOf("://");
+        if (scheme < 0) {
+            return url.startsWith("/") ? url : "/" + url;
+        }
+        int path = url.indexOf('/', scheme + 3);
+        return path < 0 ? "/" : url.substring(path);
+    }
+
+    /**
+     * Gets the datasource of a URL, which is the first segment of the path.
+     *
+     * @param url absolute or relative URL
+     * @return datasource name
+     */
+    private static String getDataSource(String url) {
+        String path = getPath(url);
+        int end = path.length();
+        for (char c : new char[] { '/', '?' }) {
+            int i = path.indexOf(c, 1);
+            if (i > 0) {
+                end = Math.min(end, i);
+            }
+        }
+        return path.substring(1, end);
+    }
+
+    /**
+     * Replaces the datasource of the URLs.
+     *
+     * @param urls URLs
+     * @param dataSource datasource name
+     * @return URLs of the datasource
+     */
+    private static List<String> replaceDataSource(List<String> urls, String dataSource) {
+        List<String> replaced = new ArrayList<>();
+        for (String url : urls) {
+            String path = getPath(url);
+            replaced.add("/" + dataSource + path.substring(1 + getDataSource(url).length()));
+        }
+        return replaced;
+    }
+
+    /**
+     * Resolves the URLs against the server.
+     *
+     * @param base base URL of the server
+     * @param urls URLs
+     * @return absolute URLs
+     */
+    private static List<String> resolve(String base, List<String> urls) {
+        base = base.endsWith("/") ? base.substring(0, base.length() - 1) : base;
+        List<String> resolved = new ArrayList<>();
+        for (String url : urls) {
+            resolved.add(base + getPath(url));
+        }
+        return resolved;
+    }
+
+    /**
+     * Generates a dataset, and a configuration serving it from HDT and TDB.
+     * Subjects have a few triples each, linking to other subjects.
+     *
+     * @param dir directory of the dataset
+     * @param triples number of triples
+     * @return configuration file
+     * @throws Exception
+     */
+    private static File generate(File dir, long triples) throws Exception {
+        File nt = new File(dir, "generated.nt");
+        Random random = new Random(42);
+        long subjects = Math.max(1, triples / 5);
+        try (PrintWriter writer = new PrintWriter(nt, "UTF-8")) {
+            for (long i = 0; i < triples; i++) {
+                long subject = i / 5;
+                String predicate = PREDICATES[random.nextInt(PREDICATES.length)];
+                String object;
+                switch (predicate) {
+                    case "name":
+                    case "label":
+                        object = "\"" + predicate + " " + i + "\"";
+                        break;
+                    case "type":
+                        object = "<" + BASE + "Class" + random.nextInt(20) + ">";
+                        break;
+                    case "created":
+                        object = "\"" + (1900 + random.nextInt(120)) + "\"^^<http://www.w3.org/2001/XMLSchema#gYear>";
+                        break;
+                    default:
+                        object = "<" + BASE + "s" + (long) (random.nextDouble() * subjects) + ">";
+                }
+                writer.println("<" + BASE + "s" + subject + "> <" + BASE + predicate + "> " + object + " .");
+            }
+        }
+
+        File hdtFile = new File(dir, "generated.hdt");
+        HDT hdt = HDTManager.generateHDT(nt.getAbsolutePath(), BASE, RDFNotation.NTRIPLES,
+                new HDTSpecification(), null);
+        try {
+            hdt.saveToHDT(hdtFile.getAbsolutePath(), null);
+        } finally {
+            hdt.close();
+        }
+
+        File tdbDir = new File(dir, "tdb");
+        Dataset dataset = TDBFactory.createDataset(tdbDir.getAbsolutePath());
+        try (InputStream in = new FileInputStream(nt)) {
+            dataset.getDefaultModel().read(in, null, "N-TRIPLES");
+        }
+        TDB.sync(dataset);
+
+        JsonObject dataSources = new JsonObject();
+        dataSources.add("hdt", createDataSource(DataSourceFactory.HDT, hdtFile));
+        dataSources.add("tdb", createDataSource(DataSourceFactory.JENA_TDB, tdbDir));
+        JsonObject prefixes = new JsonObject();
+        prefixes.addProperty("ex", BASE);
+        JsonObject root = new JsonObject();
+        root.add("datasources", dataSources);
+        root.add("prefixes", prefixes);
+
+        File config = new File(dir, "config.json");
+        try (Writer writer = new FileWriter(config)) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(root, writer);
+        }
+        return config;
+    }
+
+    private static JsonObject createDataSource(String type, File file) {
+        JsonObject settings = new JsonObject();
+        settings.addProperty(type.equals(DataSourceFactory.HDT) ? "file" : "directory", file.getAbsolutePath());
+        JsonObject dataSource = new JsonObject();
+        dataSource.addProperty("title", type);
+        dataSource.addProperty("type", type);
+        dataSource.addProperty("description", "Generated dataset");
+        dataSource.add("settings", settings);
+        return dataSource;
+    }
+
+    /**
+     * Generates fragment requests for the generated dataset, mixing bound
+     * subjects, predicates and objects, and deeper pages.
+     *
+     * @param triples number of triples in the dataset
+     * @param count number of URLs
+     * @return relative URLs
+     * @throws IOException
+     */
+    private static List<String> generateUrls(long triples, int count) throws IOException {
+        Random random = new Random(7);
+        long subjects = Math.max(1, triples / 5);
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String subject = encode(BASE + "s" + (long) (random.nextDouble() * subjects));
+            String predicate = encode(BASE + PREDICATES[random.nextInt(PREDICATES.length)]);
+            switch (random.nextInt(5)) {
+                case 0:
+                    urls.add("/data?subject=" + subject);
+                    break;
+                case 1:
+                    urls.add("/data?subject=" + subject + "&predicate=" + predicate);
+                    break;
+                case 2:
+                    urls.add("/data?object=" + subject);
+                    break;
+                case 3:
+                    urls.add("/data?predicate=" + predicate + "&page=" + (1 + random.nextInt(10)));
+                    break;
+                default:
+                    urls.add("/data?page=" + (1 + random.nextInt(10)));
+            }
+        }
+        return urls;
+    }
+
+    private static String encode(String value) throws IOException {
+        return URLEncoder.encode(value, "UTF-8");
+    }
+
+    /**
+     * Starts an embedded server on a free port.
+     *
+     * @param config configuration file
+     * @return the server
+     * @throws Exception
+     */
+    private static Server startServer(File config) throws Exception {
+        Server server = new Server(0);
+        ServletHandler handler = new ServletHandler();
+        server.setHandler(handler);
+
+        ServletHolder tpfServletHolder = new ServletHolder(new TriplePatternFragmentServlet());
+        tpfServletHolder.setInitParameter(TriplePatternFragmentServlet.CFGFILE, config.getAbsolutePath());
+        handler.addServletWithMapping(tpfServletHolder, "/*");
+        server.start();
+        return server;
+    }
+}
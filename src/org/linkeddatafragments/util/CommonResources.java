@@ -15,6 +15,7 @@ public class CommonResources {
     public final static Property VOID_TRIPLES = createProperty(VOID + "triples");
     public final static Property VOID_SUBSET = createProperty(VOID + "subset");
     public final static Property VOID_DATASET = createProperty(VOID + "Dataset");
+    public final static Property VOID_SPARQLENDPOINT = createProperty(VOID + "sparqlEndpoint");
 
     public final static String HYDRA = "http://www.w3.org/ns/hydra/core#";
     public final static Property HYDRA_TOTALITEMS = createProperty(HYDRA + "totalItems");
@@ -24,6 +25,7 @@ public class CommonResources {
     public final static Property HYDRA_MAPPING = createProperty(HYDRA + "mapping");
     public final static Property HYDRA_VARIABLE = createProperty(HYDRA + "variable");
     public final static Property HYDRA_PROPERTY = createProperty(HYDRA + "property");
+    public final static Property HYDRA_FREETEXTQUERY = createProperty(HYDRA + "freetextQuery");
     public final static Property HYDRA_COLLECTION = createProperty(HYDRA + "Collection");
     public final static Property HYDRA_PAGEDCOLLECTION = createProperty(HYDRA + "PagedCollection");
     public final static Property HYDRA_FIRSTPAGE = createProperty(HYDRA + "firstPage");
@@ -31,6 +33,17 @@ public class CommonResources {
     public final static Property HYDRA_NEXTPAGE = createProperty(HYDRA + "nextPage");
     public final static Property HYDRA_PREVIOUSPAGE = createProperty(HYDRA + "previousPage");
 
+    public final static String SD = "http://www.w3.org/ns/sparql-service-description#";
+    public final static Property SD_GRAPH = createProperty(SD + "graph");
+
+    public final static String LDF = "http://linkeddatafragments.org/ns#";
+    public final static Property LDF_ORDEREDBY = createProperty(LDF + "orderedBy");
+    public final static Property LDF_COLLATION = createProperty(LDF + "collation");
+    public final static Property LDF_TERMORDER = createProperty(LDF + "TermOrder");
+    public final static Property LDF_INDEXORDER = createProperty(LDF + "IndexOrder");
+    public final static Property LDF_STARPATTERN = createProperty(LDF + "starPattern");
+    public final static Property LDF_VERSION = createProperty(LDF + "version");
+
     public final static Property INVALID_URI = createProperty("urn:invalid");
 
     private static Property createProperty(String uri) {
@@ -0,0 +1,44 @@
+package org.linkeddatafragments.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream counting the number of bytes written to it.
+ *
+ * @author Bart Hanssens
+ */
+public class CountingOutputStream extends FilterOutputStream {
+    private long count = 0;
+
+    /**
+     * Creates a new CountingOutputStream.
+     *
+     * @param out the stream to write to
+     */
+    public CountingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    /**
+     * Gets the number of bytes written.
+     *
+     * @return number of bytes
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        count += len;
+    }
+}
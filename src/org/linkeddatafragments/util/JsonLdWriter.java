@@ -0,0 +1,210 @@
+package org.linkeddatafragments.util;
+
+import com.google.gson.stream.JsonWriter;
+import com.hp.hpl.jena.rdf.model.Literal;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.ResIterator;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+import com.hp.hpl.jena.rdf.model.Statement;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes models as JSON-LD while iterating them, without building a
+ * document tree or running the compaction algorithm.
+ * <p>
+ * The output is a flat list of node objects, one per subject, in a graph
+ * with a context of the prefixes. IRIs are compacted with the prefixes
+ * directly; the context is serialized only once.</p>
+ *
+ * @author Bart Hanssens
+ */
+public class JsonLdWriter {
+    private final List<Map.Entry<String, String>> namespaces;
+    private final String context;
+
+    /**
+     * Creates a new JsonLdWriter.
+     *
+     * @param prefixes map of prefixes to namespaces
+     * @throws IOException
+     */
+    public JsonLdWriter(Map<String, String> prefixes) throws IOException {
+        // try the longest namespaces first; JSON-LD has no empty prefix
+        namespaces = new ArrayList<>();
+        for (Map.Entry<String, String> prefix : prefixes.entrySet()) {
+            if (!prefix.getKey().isEmpty() && !prefix.getValue().isEmpty()) {
+                namespaces.add(prefix);
+            }
+        }
+        Collections.sort(namespaces, new Comparator<Map.Entry<String, String>>() {
+            @Override
+            public int compare(Map.Entry<String, String> a, Map.Entry<String, String> b) {
+                return Integer.compare(b.getValue().length(), a.getValue().length());
+            }
+        });
+
+        StringWriter contextWriter = new StringWriter();
+        JsonWriter json = new JsonWriter(contextWriter);
+        json.beginObject();
+        for (Map.Entry<String, String> namespace : namespaces) {
+            json.name(namespace.getKey()).value(namespace.getValue());
+        }
+        json.endObject();
+        json.flush();
+        context = contextWriter.toString();
+    }
+
+    /**
+     * Writes a model.
+     *
+     * @param writer the writer
+     * @param model the model
+     * @throws IOException
+     */
+    public void write(Writer writer, Model model) throws IOException {
+        JsonWriter json = new JsonWriter(writer);
+        json.beginObject();
+        json.name("@context").jsonValue(context);
+        json.name("@graph").beginArray();
+
+        ResIterator subjects = model.listSubjects();
+        try {
+            while (subjects.hasNext()) {
+                writeNode(json, model, subjects.next());
+            }
+        } finally {
+            subjects.close();
+        }
+        json.endArray();
+        json.endObject();
+        json.flush();
+    }
+
+    /**
+     * Writes the node object of a subject.
+     *
+     * @param json the writer
+     * @param model the model
+     * @param subject the subject
+     * @throws IOException
+     */
+    private void writeNode(JsonWriter json, Model model, Resource subject) throws IOException {
+        // the values of each property are written together
+        Map<Property, List<RDFNode>> properties = new LinkedHashMap<>();
+        StmtIterator statements = model.listStatements(subject, null, (RDFNode) null);
+        try {
+            while (statements.hasNext()) {
+                Statement statement = statements.next();
+                List<RDFNode> values = properties.get(statement.getPredicate());
+                if (values == null) {
+                    values = new ArrayList<>();
+                    properties.put(statement.getPredicate(), values);
+                }
+                values.add(statement.getObject());
+            }
+        } finally {
+            statements.close();
+        }
+
+        json.beginObject();
+        json.name("@id").value(getId(subject));
+        for (Map.Entry<Property, List<RDFNode>> property : properties.entrySet()) {
+            List<RDFNode> values = property.getValue();
+            if (property.getKey().equals(CommonResources.RDF_TYPE) && !hasLiteral(values)) {
+                json.name("@type").beginArray();
+                for (RDFNode value : values) {
+                    json.value(getId(value.asResource()));
+                }
+                json.endArray();
+                continue;
+            }
+            json.name(compact(property.getKey().getURI())).beginArray();
+            for (RDFNode value : values) {
+                writeValue(json, value);
+            }
+            json.endArray();
+        }
+        json.endObject();
+    }
+
+    /**
+     * Writes a value of a property.
+     *
+     * @param json the writer
+     * @param value the value
+     * @throws IOException
+     */
+    private void writeValue(JsonWriter json, RDFNode value) throws IOException {
+        if (!value.isLiteral()) {
+            json.beginObject().name("@id").value(getId(value.asResource())).endObject();
+            return;
+        }
+        Literal literal = value.asLiteral();
+        String language = literal.getLanguage();
+        String datatype = literal.getDatatypeURI();
+        if (!language.isEmpty()) {
+            json.beginObject().name("@value").value(literal.getLexicalForm())
+                    .name("@language").value(language).endObject();
+        } else if (datatype != null) {
+            json.beginObject().name("@value").value(literal.getLexicalForm())
+                    .name("@type").value(compact(datatype)).endObject();
+        } else {
+            json.value(literal.getLexicalForm());
+        }
+    }
+
+    /**
+     * Checks if any of the values is a literal.
+     *
+     * @param values the values
+     * @return true if a value is a literal
+     */
+    private static boolean hasLiteral(List<RDFNode> values) {
+        for (RDFNode value : values) {
+            if (value.isLiteral()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the identifier of a resource: a compacted IRI or a blank node label.
+     *
+     * @param resource the resource
+     * @return the identifier
+     */
+    private String getId(Resource resource) {
+        return resource.isAnon()
+                ? "_:" + resource.getId().getLabelString()
+                : compact(resource.getURI());
+    }
+
+    /**
+     * Compacts an IRI with the longest matching namespace.
+     *
+     * @param iri the IRI
+     * @return the compact IRI, or the IRI itself
+     */
+    private String compact(String iri) {
+        for (Map.Entry<String, String> namespace : namespaces) {
+            String uri = namespace.getValue();
+            // a suffix starting with two slashes would be read as an absolute IRI
+            if (iri.startsWith(uri) && !iri.startsWith("//", uri.length())) {
+                return namespace.getKey() + ":" + iri.substring(uri.length());
+            }
+        }
+        return iri;
+    }
+}
@@ -0,0 +1,476 @@
+package org.linkeddatafragments.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Two-tier cache of serialized responses.
+ * <p>
+ * Recent responses are kept on the heap, up to a number of bytes. All
+ * responses are also appended to memory-mapped segment files on disk, which
+ * are indexed by an open-addressing hash table outside the heap. The index
+ * is rebuilt from the segments on start, so a restarted server keeps its
+ * cache. When the segments exceed their total size, the oldest segment is
+ * deleted; responses older than their maximum age are not served.</p>
+ * <p>
+ * Lookups do not wait for writers: the heap tier is a concurrent map, which
+ * drops the least recently queued responses that were not read since, and
+ * the disk index is read under a shared lock. Only appending to the
+ * segments and evicting them are serialized.</p>
+ *
+ * @author Bart Hanssens
+ */
+public class ResponseCache implements Closeable {
+    // record header: expiry time, key length, content type length, body length
+    private final static int HEADER = 8 + 4 + 4 + 4;
+    // index slot: key hash, segment, offset
+    private final static int SLOT = 8 + 4 + 4;
+
+    /**
+     * A cached response
+     */
+    public static class Response {
+        private final String contentType;
+        private final byte[] body;
+
+        public Response(String contentType, byte[] body) {
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        /**
+         * @return content type of the response
+         */
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * @return serialized response
+         */
+        public byte[] getBody() {
+            return body;
+        }
+    }
+
+    /**
+     * Response on the heap, with the time it expires
+     */
+    private static class Entry {
+        private final String key;
+        private final Response response;
+        private final long expires;
+        // read since it was queued for eviction
+        private volatile boolean used = false;
+
+        Entry(String key, Response response, long expires) {
+            this.key = key;
+            this.response = response;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * Memory-mapped segment file
+     */
+    private static class Segment {
+        private final File file;
+        private final RandomAccessFile raf;
+        private final MappedByteBuffer buffer;
+        private int size = 0;
+        private long expires = 0;
+
+        Segment(File file, int length) throws IOException {
+            this.file = file;
+            this.raf = new RandomAccessFile(file, "rw");
+            if (raf.length() < length) {
+                raf.setLength(length);
+            }
+            this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+        }
+
+        void delete() throws IOException {
+            raf.close();
+            file.delete();
+        }
+    }
+
+    private final Map<String, Entry> memory = new ConcurrentHashMap<>();
+    // heap entries in the order they are dropped, bytes held by the queue
+    private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong memoryUsed = new AtomicLong();
+    private final long memorySize;
+
+    private final File directory;
+    private final long diskSize;
+    private final int segmentSize;
+    private final long maxAge;
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+
+    // guards the appends to the segments, and their eviction
+    private final Object diskLock = new Object();
+    private final ReadWriteLock indexLock = new ReentrantReadWriteLock();
+    private ByteBuffer index;
+    private int indexUsed = 0;
+
+    /**
+     * Creates a new ResponseCache, and indexes the segments in the directory.
+     *
+     * @param memorySize maximum number of bytes kept on the heap
+     * @param directory directory of the segments, or null to only cache on the heap
+     * @param diskSize maximum number of bytes of all segments
+     * @param segmentSize number of bytes of a segment
+     * @param maxAge default maximum age of a response in milliseconds, or 0 for no maximum
+     * @throws IOException if the segments cannot be read
+     */
+    public ResponseCache(long memorySize, File directory, long diskSize, int segmentSize, long maxAge)
+            throws IOException {
+        this.memorySize = memorySize;
+        this.directory = directory;
+        this.diskSize = diskSize;
+        this.segmentSize = segmentSize;
+        this.maxAge = maxAge;
+        this.index = ByteBuffer.allocateDirect(1024 * SLOT);
+
+        if (directory != null) {
+            directory.mkdirs();
+            File[] files = directory.listFiles(new FileFilter() {
+                @Override
+                public boolean accept(File file) {
+                    return file.getName().matches("segment-\\d+\\.dat");
+                }
+            });
+            Arrays.sort(files);
+            for (File file : files) {
+                int id = Integer.parseInt(file.getName().replaceAll("\\D", ""));
+                Segment segment = new Segment(file, segmentSize);
+                segments.put(id, segment);
+                scan(id, segment);
+            }
+            evict();
+        }
+    }
+
+    /**
+     * Gets a cached response.
+     *
+     * @param key the key
+     * @return the response, or null if not cached
+     */
+    public Response get(String key) {
+        Entry entry = memory.get(key);
+        if (entry != null) {
+            if (!isExpired(entry.expires)) {
+                if (!entry.used) {
+                    entry.used = true;
+                }
+                return entry.response;
+            }
+            // its bytes are released when the entry leaves the queue
+            memory.remove(key, entry);
+        }
+        if (directory == null) {
+            return null;
+        }
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(keyBytes);
+        int id = 0;
+        int offset = 0;
+        indexLock.readLock().lock();
+        try {
+            int mask = index.capacity() / SLOT - 1;
+            for (int slot = (int) hash & mask; index.getLong(slot * SLOT) != 0; slot = (slot + 1) & mask) {
+                if (index.getLong(slot * SLOT) == hash) {
+                    id = index.getInt(slot * SLOT + 8);
+                    offset = index.getInt(slot * SLOT + 12);
+                    break;
+                }
+            }
+        } finally {
+            indexLock.readLock().unlock();
+        }
+
+        // records are never changed once indexed, so they are read unlocked
+        Segment segment = id == 0 ? null : segments.get(id);
+        if (segment == null) {
+            return null;
+        }
+        entry = read(segment, offset, key, keyBytes);
+        if (entry == null) {
+            return null;
+        }
+        addToMemory(entry);
+        return entry.response;
+    }
+
+    /**
+     * Caches a response, for the default maximum age.
+     *
+     * @param key the key
+     * @param response the response
+     * @throws IOException if the response cannot be written to disk
+     */
+    public void put(String key, Response response) throws IOException {
+        put(key, response, maxAge);
+    }
+
+    /**
+     * Caches a response.
+     *
+     * @param key the key
+     * @param response the response
+     * @param maxAge maximum age of the response in milliseconds, or 0 for no maximum
+     * @throws IOException if the response cannot be written to disk
+     */
+    public void put(String key, Response response, long maxAge) throws IOException {
+        long expires = maxAge > 0 ? System.currentTimeMillis() + maxAge : Long.MAX_VALUE;
+        addToMemory(new Entry(key, response, expires));
+        if (directory == null) {
+            return;
+        }
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] typeBytes = response.getContentType().getBytes(StandardCharsets.UTF_8);
+        int length = HEADER + keyBytes.length + typeBytes.length + response.getBody().length;
+        if (length > segmentSize) {
+            return;
+        }
+
+        synchronized (diskLock) {
+            // start a new segment when the current one is full
+            int id = segments.isEmpty() ? 1 : segments.lastKey();
+            Segment segment = segments.get(id);
+            if (segment == null || segment.size + length > segmentSize) {
+                id = segment == null ? id : id + 1;
+                File file = new File(directory, String.format("segment-%010d.dat", id));
+                segment = new Segment(file, segmentSize);
+                segments.put(id, segment);
+                evict();
+            }
+
+            // write the expiry time last, a record without it ends the segment
+            int offset = segment.size;
+            ByteBuffer buffer = segment.buffer.duplicate();
+            buffer.position(offset + 8);
+            buffer.putInt(keyBytes.length).putInt(typeBytes.length).putInt(response.getBody().length);
+            buffer.put(keyBytes).put(typeBytes).put(response.getBody());
+            if (offset + length + 8 <= segmentSize) {
+                buffer.putLong(0);
+            }
+            segment.buffer.putLong(offset, expires);
+            segment.size += length;
+            segment.expires = Math.max(segment.expires, expires);
+
+            indexLock.writeLock().lock();
+            try {
+                addToIndex(hash(keyBytes), id, offset);
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (diskLock) {
+            for (Segment segment : segments.values()) {
+                segment.buffer.force();
+                segment.raf.close();
+            }
+            segments.clear();
+        }
+    }
+
+    /**
+     * Checks if a response is too old to be served.
+     *
+     * @param expires time the response expires
+     * @return true if too old
+     */
+    private static boolean isExpired(long expires) {
+        return expires < System.currentTimeMillis();
+    }
+
+    /**
+     * Adds a response to the heap tier. While the tier is too large, the
+     * responses queued first are dropped; those read since are queued again
+     * instead, once.
+     *
+     * @param entry the response with its key and the time it expires
+     */
+    private void addToMemory(Entry entry) {
+        memory.put(entry.key, entry);
+        memoryUsed.addAndGet(entry.response.getBody().length);
+        queue.add(entry);
+        if (memoryUsed.get() <= memorySize) {
+            return;
+        }
+        synchronized (queue) {
+            while (memoryUsed.get() > memorySize) {
+                Entry eldest = queue.poll();
+                if (eldest == null) {
+                    break;
+                }
+                if (eldest.used && memory.get(eldest.key) == eldest) {
+                    eldest.used = false;
+                    queue.add(eldest);
+                    continue;
+                }
+                // replaced or expired entries are only dropped from the queue
+                memory.remove(eldest.key, eldest);
+                memoryUsed.addAndGet(-eldest.response.getBody().length);
+            }
+        }
+    }
+
+    /**
+     * Reads a record, if it has the key and is not too old.
+     *
+     * @param segment the segment
+     * @param offset offset of the record
+     * @param key the key
+     * @param keyBytes the key, encoded
+     * @return the response with the time it expires, or null
+     */
+    private Entry read(Segment segment, int offset, String key, byte[] keyBytes) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(offset);
+        long expires = buffer.getLong();
+        if (isExpired(expires)) {
+            return null;
+        }
+        int keyLength = buffer.getInt();
+        int typeLength = buffer.getInt();
+        int bodyLength = buffer.getInt();
+        if (keyLength != keyBytes.length) {
+            return null;
+        }
+        byte[] stored = new byte[keyLength];
+        buffer.get(stored);
+        if (!Arrays.equals(stored, keyBytes)) {
+            return null;
+        }
+        byte[] type = new byte[typeLength];
+        buffer.get(type);
+        byte[] body = new byte[bodyLength];
+        buffer.get(body);
+        return new Entry(key, new Response(new String(type, StandardCharsets.UTF_8), body), expires);
+    }
+
+    /**
+     * Indexes the records of a segment, and finds its end.
+     *
+     * @param id number of the segment
+     * @param segment the segment
+     */
+    private void scan(int id, Segment segment) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int offset = 0;
+        while (offset + HEADER <= buffer.capacity()) {
+            long expires = buffer.getLong(offset);
+            int keyLength = buffer.getInt(offset + 8);
+            int typeLength = buffer.getInt(offset + 12);
+            int bodyLength = buffer.getInt(offset + 16);
+            long length = (long) HEADER + keyLength + typeLength + bodyLength;
+            // stop at the end, or at a partially written record
+            if (expires == 0 || keyLength < 0 || typeLength < 0 || bodyLength < 0
+                    || offset + length > buffer.capacity()) {
+                break;
+            }
+            byte[] keyBytes = new byte[keyLength];
+            buffer.position(offset + HEADER);
+            buffer.get(keyBytes);
+            addToIndex(hash(keyBytes), id, offset);
+            segment.expires = Math.max(segment.expires, expires);
+            offset += length;
+        }
+        segment.size = offset;
+    }
+
+    /**
+     * Deletes the oldest segments while the segments are too large, and
+     * segments with only expired responses. Called with the disk lock held.
+     *
+     * @throws IOException
+     */
+    private void evict() throws IOException {
+        while (segments.size() > 1) {
+            Map.Entry<Integer, Segment> oldest = segments.firstEntry();
+            boolean tooLarge = (long) segments.size() * segmentSize > diskSize;
+            boolean expired = isExpired(oldest.getValue().expires);
+            if (!tooLarge && !expired) {
+                break;
+            }
+            segments.remove(oldest.getKey());
+            oldest.getValue().delete();
+        }
+    }
+
+    /**
+     * Points the slot of a key hash to a record, growing the index when it
+     * is half full. Slots of deleted segments are dropped while growing.
+     * Called with the index write lock held, or while constructing.
+     *
+     * @param hash hash of the key
+     * @param segment number of the segment
+     * @param offset offset of the record
+     */
+    private void addToIndex(long hash, int segment, int offset) {
+        if (2 * (indexUsed + 1) > index.capacity() / SLOT) {
+            ByteBuffer old = index;
+            index = ByteBuffer.allocateDirect(old.capacity() * 2);
+            indexUsed = 0;
+            for (int slot = 0; slot < old.capacity() / SLOT; slot++) {
+                long oldHash = old.getLong(slot * SLOT);
+                int oldSegment = old.getInt(slot * SLOT + 8);
+                if (oldHash != 0 && segments.containsKey(oldSegment)) {
+                    addToIndex(oldHash, oldSegment, old.getInt(slot * SLOT + 12));
+                }
+            }
+        }
+        int mask = index.capacity() / SLOT - 1;
+        int slot = (int) hash & mask;
+        while (index.getLong(slot * SLOT) != 0 && index.getLong(slot * SLOT) != hash) {
+            slot = (slot + 1) & mask;
+        }
+        if (index.getLong(slot * SLOT) == 0) {
+            indexUsed++;
+        }
+        index.putLong(slot * SLOT, hash);
+        index.putInt(slot * SLOT + 8, segment);
+        index.putInt(slot * SLOT + 12, offset);
+    }
+
+    /**
+     * Hashes a key with 64-bit FNV-1a; 0 marks empty slots, so it is never
+     * returned.
+     *
+     * @param bytes the key
+     * @return the hash
+     */
+    private static long hash(byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+}
@@ -0,0 +1,50 @@
+package org.linkeddatafragments.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Coalesces identical concurrent computations.
+ * <p>
+ * The first caller for a key runs the computation, callers arriving while it
+ * is running wait for it and share its result. Nothing is kept afterwards,
+ * so a later call for the same key computes again.</p>
+ *
+ * @param <K> type of the key
+ * @param <V> type of the result
+ * @author Bart Hanssens
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentMap<K, FutureTask<V>> running = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the result of a computation, sharing it with concurrent callers
+     * using the same key.
+     *
+     * @param key identifies the computation
+     * @param computation computes the result
+     * @return the result
+     * @throws ExecutionException if the computation failed or was interrupted
+     */
+    public V get(K key, Callable<V> computation) throws ExecutionException {
+        FutureTask<V> task = new FutureTask<>(computation);
+        FutureTask<V> call = running.putIfAbsent(key, task);
+        if (call == null) {
+            call = task;
+            try {
+                task.run();
+            } finally {
+                running.remove(key, task);
+            }
+        }
+        try {
+            return call.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ExecutionException(ex);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package org.linkeddatafragments.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.hp.hpl.jena.datatypes.TypeMapper;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+
+/**
+ * Parses the terms of a triple pattern request into Jena nodes.
+ * <p>
+ * Supported are IRIs (with or without angular brackets), prefixed names
+ * using the configured prefixes, and literals with a language tag or a
+ * datatype. Literals may use the N-Triples escape sequences.</p>
+ *
+ * @author Bart Hanssens
+ */
+public class TermParser {
+    private final static TypeMapper TYPES = TypeMapper.getInstance();
+    private final static Node INVALID = CommonResources.INVALID_URI.asNode();
+
+    private final Map<String, String> prefixes;
+
+    /**
+     * Creates a new TermParser.
+     *
+     * @param prefixes map of prefixes to namespaces
+     */
+    public TermParser(Map<String, String> prefixes) {
+        this.prefixes = new HashMap<>(prefixes);
+    }
+
+    /**
+     * Parses the given value as an RDF node.
+     *
+     * @param value the value
+     * @return the parsed node, null if unspecified or the invalid URI if malformed
+     */
+    public Node parse(String value) {
+        // nothing or empty indicates an unknown
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        // find the kind of entity based on the first character
+        switch (value.charAt(0)) {
+            // variable or blank node indicates an unknown
+            case '?':
+            case '_':
+                return null;
+            // angular brackets indicate a URI
+            case '<':
+                return NodeFactory.createURI(unescape(value, 1, value.length() - 1));
+            // quotes indicate a string
+            case '"':
+                return parseLiteral(value);
+            // a prefixed name, or a URI without angular brackets
+            default:
+                return NodeFactory.createURI(expand(value));
+        }
+    }
+
+    /**
+     * Parses the given value into the string form of terms in HDT dictionaries:
+     * IRIs without angular brackets, and literals with their language tag or
+     * datatype IRI in angular brackets. No Jena nodes are created.
+     *
+     * @param value the value
+     * @return the term, null if unspecified or the invalid URI if malformed
+     */
+    public String parseAsString(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        switch (value.charAt(0)) {
+            case '?':
+            case '_':
+                return null;
+            case '<':
+                return unescape(value, 1, value.length() - 1);
+            case '"':
+                String[] literal = splitLiteral(value);
+                if (literal == null) {
+                    return INVALID.getURI();
+                }
+                return literal[1] != null ? '"' + literal[0] + "\"@" + literal[1]
+                        : literal[2] != null ? '"' + literal[0] + "\"^^<" + literal[2] + '>'
+                        : '"' + literal[0] + '"';
+            default:
+                return expand(value);
+        }
+    }
+
+    /**
+     * Parses a literal, with an optional language tag or datatype.
+     *
+     * @param value the quoted value
+     * @return the literal node, or the invalid URI if malformed
+     */
+    private Node parseLiteral(String value) {
+        String[] literal = splitLiteral(value);
+        if (literal == null) {
+            return INVALID;
+        }
+        if (literal[1] != null) {
+            return NodeFactory.createLiteral(literal[0], literal[1], false);
+        }
+        if (literal[2] != null) {
+            return NodeFactory.createLiteral(literal[0], null, TYPES.getSafeTypeByName(literal[2]));
+        }
+        return NodeFactory.createLiteral(literal[0]);
+    }
+
+    /**
+     * Splits a literal into its unescaped body, language tag and datatype.
+     *
+     * @param value the quoted value
+     * @return body, language tag (or null) and datatype IRI (or null),
+     * or null if malformed
+     */
+    private String[] splitLiteral(String value) {
+        int end = value.lastIndexOf('"');
+        if (end < 1) {
+            return null;
+        }
+        String body = unescape(value, 1, end);
+
+        int suffix = end + 1;
+        if (suffix == value.length()) {
+            return new String[] { body, null, null };
+        }
+        if (value.charAt(suffix) == '@' && suffix + 1 < value.length()) {
+            return new String[] { body, value.substring(suffix + 1), null };
+        }
+        if (value.startsWith("^^", suffix) && suffix + 2 < value.length()) {
+            String type = value.charAt(suffix + 2) == '<'
+                    ? value.substring(suffix + 3, value.endsWith(">") ? value.length() - 1 : value.length())
+                    : expand(value.substring(suffix + 2));
+            return new String[] { body, null, type };
+        }
+        return null;
+    }
+
+    /**
+     * Expands a prefixed name, if it starts with a known prefix.
+     *
+     * @param value the name
+     * @return the full URI
+     */
+    private String expand(String value) {
+        int colon = value.indexOf(':');
+        if (colon >= 0) {
+            String namespace = prefixes.get(value.substring(0, colon));
+            if (namespace != null) {
+                return namespace + value.substring(colon + 1);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Resolves the N-Triples escape sequences in part of a string.
+     *
+     * @param value the string
+     * @param start start index
+     * @param end end index (exclusive)
+     * @return the unescaped part
+     */
+    private static String unescape(String value, int start, int end) {
+        int escape = value.indexOf('\\', start);
+        if (escape < 0 || escape >= end) {
+            return value.substring(start, end);
+        }
+
+        StringBuilder result = new StringBuilder(end - start);
+        result.append(value, start, escape);
+        for (int i = escape; i < end; i++) {
+            char c = value.charAt(i);
+            if (c != '\\' || i + 1 == end) {
+                result.append(c);
+                continue;
+            }
+            char next = value.charAt(++i);
+            switch (next) {
+                case 't': result.append('\t'); break;
+                case 'b': result.append('\b'); break;
+                case 'n': result.append('\n'); break;
+                case 'r': result.append('\r'); break;
+                case 'f': result.append('\f'); break;
+                case '"':
+                case '\'':
+                case '\\': result.append(next); break;
+                case 'u':
+                case 'U':
+                    int digits = next == 'u' ? 4 : 8;
+                    if (i + digits < end) {
+                        try {
+                            int codePoint = Integer.parseInt(value.substring(i + 1, i + 1 + digits), 16);
+                            result.appendCodePoint(codePoint);
+                            i += digits;
+                            break;
+                        } catch (IllegalArgumentException ex) {
+                            // not a valid code point, keep as is
+                        }
+                    }
+                    result.append('\\').append(next);
+                    break;
+                default:
+                    result.append('\\').append(next);
+            }
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,205 @@
+package test.java.org.linkeddatafragments.datasource;
+
+import com.google.gson.JsonObject;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.Statement;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.linkeddatafragments.datasource.DataSourceFactory;
+import org.linkeddatafragments.datasource.IDataSource;
+import org.linkeddatafragments.datasource.IPatchDataSource;
+import org.linkeddatafragments.datasource.TriplePatternFragment;
+
+/**
+ *
+ * @author Bart Hanssens
+ */
+public class DeltaHdtDataSourceTest {
+    private final static String PREFIX = HdtFixture.PREFIX;
+
+    private Model model;
+    private HdtFixture fixture;
+    private File hdtFile;
+    private File patchFile;
+
+    @Before
+    public void setUp() throws Exception {
+        model = HdtFixture.generate(30, 5, 30, true);
+        fixture = new HdtFixture("ldf-delta-test");
+        hdtFile = fixture.writeHdt(model, "data");
+        patchFile = new File(fixture.getDirectory(), "data.patch");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fixture.delete();
+    }
+
+    private IDataSource create(long compactThreshold) throws Exception {
+        JsonObject config = new JsonObject();
+        config.addProperty("title", "delta test");
+        config.addProperty("description", "delta test");
+        config.addProperty("type", DataSourceFactory.HDT);
+
+        JsonObject delta = new JsonObject();
+        delta.addProperty("patch", patchFile.getAbsolutePath());
+        delta.addProperty("compactThreshold", compactThreshold);
+        JsonObject settings = new JsonObject();
+        settings.addProperty("file", hdtFile.getAbsolutePath());
+        settings.add("delta", delta);
+        config.add("settings", settings);
+
+        return DataSourceFactory.create(config);
+    }
+
+    /**
+     * Apply a patch to the data source and to the expected model.
+     *
+     * @param source the data source
+     * @param additions statements to add
+     * @param deletions statements to delete
+     */
+    private void patch(IDataSource source, Model additions, Model deletions) throws Exception {
+        StringWriter patch = new StringWriter();
+        for (String[] change : new String[][] { { "A ", toNTriples(additions) }, { "D ", toNTriples(deletions) } }) {
+            for (String line : change[1].split("\n")) {
+                if (!line.isEmpty()) {
+                    patch.write(change[0] + line + "\n");
+                }
+            }
+        }
+        ((IPatchDataSource) source).applyPatch(new StringReader(patch.toString()));
+        model.add(additions);
+        model.remove(deletions);
+    }
+
+    private static String toNTriples(Model model) {
+        StringWriter writer = new StringWriter();
+        RDFDataMgr.write(writer, model, Lang.NTRIPLES);
+        return writer.toString();
+    }
+
+    /**
+     * Check every kind of pattern against the model, page by page.
+     *
+     * @param source the data source
+     */
+    private void checkPatterns(IDataSource source) {
+        Resource[] subjs = { null, model.createResource(PREFIX + "s/3"), model.createResource(PREFIX + "new") };
+        Property[] preds = { null, model.createProperty(PREFIX + "p/2") };
+        RDFNode[] objs = { null, model.createResource(PREFIX + "s/0"), model.createLiteral("new \"quoted\"") };
+
+        for (Resource s : subjs) {
+            for (Property p : preds) {
+                for (RDFNode o : objs) {
+                    Model expected = ModelFactory.createDefaultModel().add(model.listStatements(s, p, o));
+                    Model actual = ModelFactory.createDefaultModel();
+                    long limit = 7;
+                    for (long offset = 0; offset < expected.size() + limit; offset += limit) {
+                        TriplePatternFragment fragment = source.getFragment(s, p, o, offset, limit);
+                        Assert.assertTrue(fragment.getTriples().size() <= limit);
+                        actual.add(fragment.getTriples());
+                        if (fragment.getTriples().isEmpty()) {
+                            Assert.assertTrue(s + " " + p + " " + o, fragment.getTotalSize() >= offset);
+                        }
+                    }
+                    Assert.assertTrue(s + " " + p + " " + o, expected.isIsomorphicWith(actual));
+                }
+            }
+        }
+    }
+
+    /**
+     * Patch: add new triples, delete some existing ones and an added one.
+     *
+     * @param source the data source
+     */
+    private void patchAll(IDataSource source) throws Exception {
+        Model additions = ModelFactory.createDefaultModel();
+        Resource added = additions.createResource(PREFIX + "new");
+        additions.add(added, additions.createProperty(PREFIX + "p/2"), additions.createResource(PREFIX + "s/0"));
+        additions.add(added, additions.createProperty(PREFIX + "name"), "new \"quoted\"");
+        additions.add(additions.createResource(PREFIX + "s/3"), additions.createProperty(PREFIX + "p/2"),
+                additions.createLiteral("new \"quoted\""));
+        Model deletions = ModelFactory.createDefaultModel();
+        for (Statement statement : model.listStatements(model.createResource(PREFIX + "s/3"), null, (RDFNode) null).toList()) {
+            if (statement.getObject().isURIResource()) {
+                deletions.add(statement);
+                break;
+            }
+        }
+        deletions.add(model.listStatements(null, model.createProperty(PREFIX + "p/2"), model.createResource(PREFIX + "s/0")).toList().get(0));
+        patch(source, additions, deletions);
+
+        Model more = ModelFactory.createDefaultModel();
+        more.add(more.createResource(PREFIX + "new"), more.createProperty(PREFIX + "p/1"), "gone");
+        patch(source, more, ModelFactory.createDefaultModel());
+        patch(source, ModelFactory.createDefaultModel(), more);
+    }
+
+    @Test
+    public void testPatterns() throws Exception {
+        IDataSource source = create(0);
+        checkPatterns(source);
+        patchAll(source);
+        checkPatterns(source);
+        Assert.assertTrue(((IPatchDataSource) source).getModified() > 0);
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        patchAll(create(0));
+        checkPatterns(create(0));
+    }
+
+    @Test
+    public void testCompact() throws Exception {
+        IDataSource source = create(3);
+        long before = hdtFile.lastModified();
+        patchAll(source);
+        for (int i = 0; i < 100 && hdtFile.lastModified() == before; i++) {
+            Thread.sleep(50);
+        }
+        Assert.assertTrue("compacted", hdtFile.lastModified() != before);
+        Thread.sleep(200);
+        checkPatterns(source);
+        // the patch file still gives the same data on the new file
+        checkPatterns(create(0));
+    }
+
+    @Test
+    public void testAppended() throws Exception {
+        IDataSource source = create(0);
+        // another process appends to the patch file
+        Model appended = ModelFactory.createDefaultModel();
+        appended.add(appended.createResource(PREFIX + "new"), appended.createProperty(PREFIX + "p/0"),
+                appended.createResource(PREFIX + "s/3"));
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(patchFile, true), StandardCharsets.UTF_8)) {
+            writer.write("A " + toNTriples(appended));
+        }
+        model.add(appended);
+        patchAll(source);
+        checkPatterns(source);
+        checkPatterns(create(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPatch() throws Exception {
+        ((IPatchDataSource) create(0)).applyPatch(new StringReader("X <a> <b> <c> .\n"));
+    }
+}
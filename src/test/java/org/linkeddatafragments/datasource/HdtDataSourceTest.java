@@ -0,0 +1,216 @@
+package test.java.org.linkeddatafragments.datasource;
+
+import com.google.gson.JsonObject;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.Statement;
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.linkeddatafragments.datasource.DataSourceFactory;
+import org.linkeddatafragments.datasource.HdtDataSource;
+import org.linkeddatafragments.datasource.ICountDataSource;
+import org.linkeddatafragments.datasource.IStarDataSource;
+import org.linkeddatafragments.datasource.TriplePatternFragment;
+import org.linkeddatafragments.exceptions.FragmentTimeoutException;
+
+/**
+ *
+ * @author Bart Hanssens
+ */
+public class HdtDataSourceTest {
+    private final static String PREFIX = HdtFixture.PREFIX;
+
+    private Model model;
+    private HdtFixture fixture;
+    private File hdtFile;
+    private IStarDataSource source;
+
+    @Before
+    public void setUp() throws Exception {
+        model = HdtFixture.generate(50, 4, 7, false);
+        fixture = new HdtFixture("ldf-hdt-test");
+        hdtFile = fixture.writeHdt(model, "data");
+
+        JsonObject config = new JsonObject();
+        config.addProperty("title", "hdt test");
+        config.addProperty("description", "hdt test");
+        config.addProperty("type", DataSourceFactory.HDT);
+        JsonObject settings = new JsonObject();
+        settings.addProperty("file", hdtFile.getAbsolutePath());
+        config.add("settings", settings);
+        source = (IStarDataSource) DataSourceFactory.create(config);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fixture.delete();
+    }
+
+    /**
+     * Gets the triples of the subjects that match every pattern of a star.
+     *
+     * @param subject the subject, or null
+     * @param predicates the predicates
+     * @param objects the objects, or null
+     * @return the expected triples
+     */
+    private Model expectStar(Resource subject, Property[] predicates, RDFNode[] objects) {
+        Set<Resource> subjects = null;
+        for (int i = 0; i < predicates.length; i++) {
+            Set<Resource> matches = new HashSet<>();
+            for (Statement statement : model.listStatements(subject, predicates[i], objects[i]).toList()) {
+                matches.add(statement.getSubject());
+            }
+            if (subjects == null) {
+                subjects = matches;
+            } else {
+                subjects.retainAll(matches);
+            }
+        }
+        Model expected = ModelFactory.createDefaultModel();
+        for (Resource match : subjects) {
+            for (int i = 0; i < predicates.length; i++) {
+                expected.add(model.listStatements(match, predicates[i], objects[i]));
+            }
+        }
+        return expected;
+    }
+
+    private void checkStar(Resource subject, Property[] predicates, RDFNode[] objects) {
+        String[] predicateStrings = new String[predicates.length];
+        String[] objectStrings = new String[objects.length];
+        for (int i = 0; i < predicates.length; i++) {
+            predicateStrings[i] = predicates[i].getURI();
+            objectStrings[i] = objects[i] == null ? null : objects[i].asResource().getURI();
+        }
+
+        Model expected = expectStar(subject, predicates, objects);
+        Model actual = ModelFactory.createDefaultModel();
+        long triples = 0;
+        long limit = 3;
+        for (long offset = 0; offset < expected.size() + limit; offset += limit) {
+            TriplePatternFragment fragment = source.getStarFragment(
+                    subject == null ? null : subject.getURI(), predicateStrings, objectStrings, offset, limit);
+            // pages are bounded by triples, and every triple is on one page
+            long size = fragment.getTriples().size();
+            Assert.assertTrue(size <= limit);
+            triples += size;
+            actual.add(fragment.getTriples());
+            if (size == limit) {
+                Assert.assertTrue(fragment.getTotalSize() > offset + limit - 1);
+            } else {
+                Assert.assertEquals(expected.size(), fragment.getTotalSize());
+            }
+        }
+        Assert.assertEquals(expected.size(), triples);
+        Assert.assertTrue(expected.isIsomorphicWith(actual));
+    }
+
+    @Test
+    public void testStar() throws Exception {
+        Property p0 = model.createProperty(PREFIX + "p/0");
+        Property p1 = model.createProperty(PREFIX + "p/1");
+        Property p3 = model.createProperty(PREFIX + "p/3");
+        Resource s0 = model.createResource(PREFIX + "s/0");
+
+        checkStar(null, new Property[] { p1 }, new RDFNode[] { null });
+        checkStar(null, new Property[] { p0, p1 }, new RDFNode[] { null, null });
+        checkStar(null, new Property[] { p1, p3 }, new RDFNode[] { s0, null });
+        checkStar(null, new Property[] { p0, p1, p3 }, new RDFNode[] { null, s0, s0 });
+        checkStar(model.createResource(PREFIX + "s/9"), new Property[] { p0, p1 }, new RDFNode[] { null, null });
+    }
+
+    @Test
+    public void testStarTotal() throws Exception {
+        Property p0 = model.createProperty(PREFIX + "p/0");
+        Property p1 = model.createProperty(PREFIX + "p/1");
+        long triples = expectStar(null, new Property[] { p0, p1 }, new RDFNode[] { null, null }).size();
+        TriplePatternFragment fragment = source.getStarFragment(null,
+                new String[] { p0.getURI(), p1.getURI() }, new String[2], 0, 1000);
+        Assert.assertEquals(triples, fragment.getTotalSize());
+
+        fragment = source.getStarFragment(null,
+                new String[] { p0.getURI(), PREFIX + "unknown" }, new String[2], 0, 10);
+        Assert.assertEquals(0, fragment.getTotalSize());
+        Assert.assertTrue(fragment.getTriples().isEmpty());
+    }
+
+    @Test
+    public void testCount() throws Exception {
+        Resource[] subjs = { null, model.createResource(PREFIX + "s/3"), model.createResource(PREFIX + "unknown") };
+        Property[] preds = { null, model.createProperty(PREFIX + "p/2") };
+        RDFNode[] objs = { null, model.createResource(PREFIX + "s/0") };
+        for (Resource s : subjs) {
+            for (Property p : preds) {
+                for (RDFNode o : objs) {
+                    long expected = model.listStatements(s, p, o).toList().size();
+                    long count = ((ICountDataSource) source).getCount(s, p, o);
+                    Assert.assertEquals(s + " " + p + " " + o, expected, count);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        HdtDataSource hdt = new HdtDataSource("hdt test", "hdt test", hdtFile.getAbsolutePath());
+        hdt.enablePrefetch(1, 16, 256);
+        HdtFixture.checkSequential(hdt, model);
+        // walking the pages again takes the pages read ahead
+        HdtFixture.checkSequential(hdt, model);
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        // a data source that is always out of time
+        HdtDataSource hdt = new HdtDataSource("hdt test", "hdt test", hdtFile.getAbsolutePath()) {
+            @Override
+            protected long getDeadline() {
+                return 1;
+            }
+        };
+        Property p2 = model.createProperty(PREFIX + "p/2");
+        // pages reached without skipping matches one by one are unaffected
+        Assert.assertEquals(7, hdt.getFragment(null, null, null, 7, 7).getTriples().size());
+        Assert.assertEquals(7, hdt.getFragment(null, p2, null, 0, 7).getTriples().size());
+        try {
+            hdt.getFragment(null, p2, null, 7, 7);
+            Assert.fail("expected a timeout");
+        } catch (FragmentTimeoutException ex) {
+            // the page is not returned half-read
+        }
+    }
+
+    @Test
+    public void testText() throws Exception {
+        Model names = HdtFixture.generate(30, 5, 30, true);
+        HdtDataSource hdt = new HdtDataSource("hdt test", "hdt test",
+                fixture.writeHdt(names, "names").getAbsolutePath());
+        hdt.enableTextIndex();
+        Property name = names.createProperty(PREFIX + "name");
+        Model expected = ModelFactory.createDefaultModel().add(names.listStatements(null, name, (RDFNode) null));
+        Model actual = ModelFactory.createDefaultModel();
+        long limit = 7;
+        for (long offset = 0; offset < expected.size() + limit; offset += limit) {
+            TriplePatternFragment fragment = hdt.getTextFragment("subject", offset, limit);
+            // totals of full pages are lower bounds that still reach the next page
+            if (fragment.getTriples().size() == limit) {
+                Assert.assertTrue(fragment.getTotalSize() >= offset + limit);
+                Assert.assertTrue(fragment.getTotalSize() <= expected.size());
+            } else {
+                Assert.assertEquals(expected.size(), fragment.getTotalSize());
+            }
+            actual.add(fragment.getTriples());
+        }
+        Assert.assertTrue(expected.isIsomorphicWith(actual));
+        Assert.assertEquals(1, hdt.getTextFragment("subject 12", 0, limit).getTotalSize());
+    }
+}
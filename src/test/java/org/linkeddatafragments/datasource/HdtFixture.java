@@ -0,0 +1,138 @@
+package test.java.org.linkeddatafragments.datasource;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.Assert;
+import org.linkeddatafragments.datasource.IDataSource;
+import org.linkeddatafragments.datasource.TriplePatternFragment;
+import org.rdfhdt.hdt.enums.RDFNotation;
+import org.rdfhdt.hdt.exceptions.ParserException;
+import org.rdfhdt.hdt.hdt.HDT;
+import org.rdfhdt.hdt.hdt.HDTManager;
+import org.rdfhdt.hdt.options.HDTSpecification;
+
+/**
+ * Generated test data in HDT files, in a temporary directory.
+ *
+ * @author Bart Hanssens
+ */
+public class HdtFixture {
+    public final static String PREFIX = "http://test.ldf.org/";
+
+    private final File directory;
+
+    /**
+     * Creates a new temporary directory.
+     *
+     * @param name prefix of the directory name
+     * @throws IOException
+     */
+    public HdtFixture(String name) throws IOException {
+        directory = Files.createTempDirectory(name).toFile();
+    }
+
+    /**
+     * Generates a model with subjects s/0, s/1, ... and predicates p/0 to
+     * p/3, with (s + p) % values objects per subject and predicate, taken
+     * from the first subjects.
+     *
+     * @param subjects number of subjects
+     * @param values number of different numbers of objects
+     * @param objects number of subjects used as objects
+     * @param names whether every subject gets a name with a language tag
+     * @return the model
+     */
+    public static Model generate(int subjects, int values, int objects, boolean names) {
+        Model model = ModelFactory.createDefaultModel();
+        for (int s = 0; s < subjects; s++) {
+            Resource subj = model.createResource(PREFIX + "s/" + s);
+            for (int p = 0; p < 4; p++) {
+                Property pred = model.createProperty(PREFIX + "p/" + p);
+                for (int o = 0; o < (s + p) % values; o++) {
+                    model.add(subj, pred, model.createResource(PREFIX + "s/" + (s * o) % objects));
+                }
+            }
+            if (names) {
+                model.add(subj, model.createProperty(PREFIX + "name"), "subject " + s, "en");
+            }
+        }
+        return model;
+    }
+
+    /**
+     * Writes a model to an HDT file in the directory.
+     *
+     * @param model the model
+     * @param name name of the file, without extension
+     * @return the HDT file
+     * @throws IOException
+     * @throws ParserException
+     */
+    public File writeHdt(Model model, String name) throws IOException, ParserException {
+        File rdf = new File(directory, name + ".nt");
+        try (OutputStream out = new FileOutputStream(rdf)) {
+            RDFDataMgr.write(out, model, Lang.NTRIPLES);
+        }
+        File hdtFile = new File(directory, name + ".hdt");
+        HDT hdt = HDTManager.generateHDT(rdf.getPath(), PREFIX, RDFNotation.NTRIPLES, new HDTSpecification(), null);
+        try (OutputStream out = new FileOutputStream(hdtFile)) {
+            hdt.saveToHDT(out, null);
+        }
+        hdt.close();
+        return hdtFile;
+    }
+
+    /**
+     * Page sequentially through the fragments of some patterns, up to two
+     * pages past the end, giving read-aheads time to finish.
+     *
+     * @param dataSource the data source
+     * @param model the data of the data source
+     */
+    public static void checkSequential(IDataSource dataSource, Model model) throws Exception {
+        Property[] preds = { null, model.createProperty(PREFIX + "p/2") };
+        for (Property p : preds) {
+            Model expected = ModelFactory.createDefaultModel().add(model.listStatements(null, p, (RDFNode) null));
+            Model actual = ModelFactory.createDefaultModel();
+            long limit = 7;
+            for (long offset = 0; offset < expected.size() + 3 * limit; offset += limit) {
+                TriplePatternFragment fragment = dataSource.getFragment(null, p, null, offset, limit);
+                if (offset >= expected.size()) {
+                    Assert.assertTrue(p + " " + offset, fragment.getTriples().isEmpty());
+                }
+                actual.add(fragment.getTriples());
+                Thread.sleep(20);
+            }
+            Assert.assertTrue(String.valueOf(p), expected.isIsomorphicWith(actual));
+        }
+    }
+
+    /**
+     * Gets the temporary directory.
+     *
+     * @return the directory
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Deletes the directory with its files.
+     */
+    public void delete() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+}
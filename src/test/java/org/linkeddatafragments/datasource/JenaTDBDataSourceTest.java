@@ -20,6 +20,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.linkeddatafragments.datasource.DataSourceFactory;
 import org.linkeddatafragments.datasource.IDataSource;
+import org.linkeddatafragments.datasource.IQuadDataSource;
 import org.linkeddatafragments.datasource.TriplePatternFragment;
 
 /**
@@ -108,6 +109,29 @@ public class JenaTDBDataSourceTest {
         Assert.assertTrue("Estimate is fake: " + totalSize, totalSize != 51);        
     }
     
+    /**
+     * Check if triples in a named graph are only found in that graph.
+     * 
+     */
+    @Test
+    public void testNamedGraph() {
+        Model named = dataset.getNamedModel(PREFIX + "g/1");
+        Resource subj = named.createResource(PREFIX + "s/named");
+        Property pred = named.createProperty(PREFIX + "p/named");
+        named.add(subj, pred, named.createResource(PREFIX + "o/1"));
+        named.add(subj, pred, named.createResource(PREFIX + "o/2"));
+        named.commit();
+
+        Resource graph = named.createResource(PREFIX + "g/1");
+        TriplePatternFragment fragment = 
+                ((IQuadDataSource) tdb).getFragment(graph, subj, null, null, 0, 50);
+        Assert.assertEquals(2, fragment.getTriples().size());
+        Assert.assertEquals(2, fragment.getTotalSize());
+
+        fragment = tdb.getFragment(subj, null, null, 0, 50);
+        Assert.assertEquals(0, fragment.getTotalSize());
+    }
+
     @After
     public void tearDown() throws Exception {
     }
@@ -0,0 +1,236 @@
+package test.java.org.linkeddatafragments.datasource;
+
+import com.google.gson.JsonObject;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.Statement;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.linkeddatafragments.datasource.DataSourceFactory;
+import org.linkeddatafragments.datasource.IDataSource;
+import org.linkeddatafragments.datasource.IOrderedDataSource;
+import org.linkeddatafragments.datasource.TriplePatternFragment;
+
+/**
+ *
+ * @author Bart Hanssens
+ */
+public class MemoryDataSourceTest {
+    private static Model model;
+    private static File rdf;
+    private static File snapshot;
+
+    private final static String PREFIX = "http://test.ldf.org/";
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        model = ModelFactory.createDefaultModel();
+        for (int s = 0; s < 40; s++) {
+            Resource subj = model.createResource(PREFIX + "s/" + s);
+            for (int p = 0; p < 5; p++) {
+                Property pred = model.createProperty(PREFIX + "p/" + p + "/");
+                for (int o = 0; o < (s + p) % 7; o++) {
+                    model.add(subj, pred, model.createResource(PREFIX + "s/" + (s * o) % 40));
+                }
+            }
+            model.add(subj, model.createProperty(PREFIX + "name"), "subject " + s, "en");
+            model.addLiteral(subj, model.createProperty(PREFIX + "number"), s % 3);
+        }
+        // terms that sort differently by UTF-16 unit or unescaped string
+        Property pred = model.createProperty(PREFIX + "p/2/");
+        Resource blank = model.createResource();
+        model.add(blank, pred, "\uD83D\uDE00 smile");
+        model.add(blank, pred, "\uFF21 wide");
+        model.add(blank, pred, "say \"hi\"");
+        model.add(blank, pred, "say #");
+        model.add(model.createResource(PREFIX + "s/0"), pred, blank);
+
+        rdf = File.createTempFile("ldf-memory-test", ".nt");
+        snapshot = new File(rdf.getPath() + ".snapshot");
+        try (OutputStream out = new FileOutputStream(rdf)) {
+            RDFDataMgr.write(out, model, Lang.NTRIPLES);
+            // duplicates are stored once
+            RDFDataMgr.write(out, model, Lang.NTRIPLES);
+        }
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        rdf.delete();
+        snapshot.delete();
+    }
+
+    private static IDataSource create() throws Exception {
+        JsonObject config = new JsonObject();
+        config.addProperty("title", "memory test");
+        config.addProperty("description", "memory test");
+        config.addProperty("type", DataSourceFactory.MEMORY);
+
+        JsonObject settings = new JsonObject();
+        settings.addProperty("file", rdf.getAbsolutePath());
+        settings.addProperty("snapshot", snapshot.getAbsolutePath());
+        config.add("settings", settings);
+
+        return DataSourceFactory.create(config);
+    }
+
+    /**
+     * Check every kind of pattern against the model, page by page.
+     *
+     * @param memory the data source
+     */
+    private static void checkPatterns(IDataSource memory) {
+        Resource subj = model.createResource(PREFIX + "s/3");
+        Property pred = model.createProperty(PREFIX + "p/2/");
+        RDFNode obj = model.createResource(PREFIX + "s/0");
+        Resource[] subjs = { null, subj };
+        Property[] preds = { null, pred };
+        RDFNode[] objs = { null, obj, model.createTypedLiteral(1) };
+
+        for (Resource s : subjs) {
+            for (Property p : preds) {
+                for (RDFNode o : objs) {
+                    Model expected = ModelFactory.createDefaultModel()
+                            .add(model.listStatements(s, p, o));
+                    Model actual = ModelFactory.createDefaultModel();
+                    long limit = 7;
+                    for (long offset = 0; offset < expected.size() + limit; offset += limit) {
+                        TriplePatternFragment fragment = memory.getFragment(s, p, o, offset, limit);
+                        Assert.assertEquals(s + " " + p + " " + o, expected.size(), fragment.getTotalSize());
+                        Assert.assertTrue(fragment.getTriples().size() <= limit);
+                        actual.add(fragment.getTriples());
+                    }
+                    Assert.assertTrue(s + " " + p + " " + o, expected.isIsomorphicWith(actual));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPatterns() throws Exception {
+        snapshot.delete();
+        checkPatterns(create());
+        Assert.assertTrue(snapshot.exists());
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        create();
+        snapshot.setLastModified(System.currentTimeMillis() + 1000);
+        checkPatterns(create());
+    }
+
+    @Test
+    public void testUnknownTerm() throws Exception {
+        IDataSource memory = create();
+        Resource unknown = model.createResource(PREFIX + "unknown");
+        TriplePatternFragment fragment = memory.getFragment(unknown, null, null, 0, 10);
+        Assert.assertEquals(0, fragment.getTotalSize());
+        Assert.assertTrue(fragment.getTriples().isEmpty());
+    }
+
+    /**
+     * Gets the canonical N-Triples form of a term, as sorted by the data
+     * source.
+     *
+     * @param node the term
+     * @return the string
+     */
+    private static String toString(RDFNode node) {
+        Node term = node.asNode();
+        if (term.isURI()) {
+            return "<" + term.getURI() + ">";
+        }
+        if (term.isBlank()) {
+            return "_:" + term.getBlankNodeLabel();
+        }
+        String language = term.getLiteralLanguage();
+        String datatype = term.getLiteralDatatypeURI();
+        String lexical = term.getLiteralLexicalForm().replace("\\", "\\\\").replace("\"", "\\\"")
+                .replace("\n", "\\n").replace("\r", "\\r");
+        return '"' + lexical + '"'
+                + (language != null && !language.isEmpty() ? "@" + language
+                : datatype != null ? "^^<" + datatype + ">" : "");
+    }
+
+    /**
+     * Compares two strings by their Unicode code points.
+     *
+     * @param a the first string
+     * @param b the second string
+     * @return negative, zero or positive
+     */
+    private static int compareCodePoints(String a, String b) {
+        int i = 0;
+        while (i < a.length() && i < b.length()) {
+            int x = a.codePointAt(i);
+            int y = b.codePointAt(i);
+            if (x != y) {
+                return Integer.compare(x, y);
+            }
+            i += Character.charCount(x);
+        }
+        return Integer.compare(a.length() - i, b.length() - i);
+    }
+
+    @Test
+    public void testOrder() throws Exception {
+        IOrderedDataSource memory = (IOrderedDataSource) create();
+        Property pred = model.createProperty(PREFIX + "p/2/");
+        RDFNode obj = model.createResource(PREFIX + "s/0");
+        Object[][] patterns = { { null, null, null }, { null, pred, null }, { null, null, obj }, { null, pred, obj } };
+
+        for (Object[] pattern : patterns) {
+            final List<Property> order = memory.getOrder(false, pattern[1] != null, pattern[2] != null);
+            Comparator<Statement> comparator = new Comparator<Statement>() {
+                @Override
+                public int compare(Statement a, Statement b) {
+                    for (Property component : order) {
+                        String name = component.getLocalName();
+                        RDFNode x = name.equals("subject") ? a.getSubject() : name.equals("predicate") ? a.getPredicate() : a.getObject();
+                        RDFNode y = name.equals("subject") ? b.getSubject() : name.equals("predicate") ? b.getPredicate() : b.getObject();
+                        int cmp = compareCodePoints(MemoryDataSourceTest.toString(x), MemoryDataSourceTest.toString(y));
+                        if (cmp != 0) {
+                            return cmp;
+                        }
+                    }
+                    return 0;
+                }
+            };
+
+            // the pages are consecutive ranges of the order
+            List<Statement> statements = new ArrayList<>();
+            // single triple pages expose the whole order
+            long limit = 1;
+            for (long offset = 0; ; offset += limit) {
+                List<Statement> page = memory.getFragment(null, (Property) pattern[1], (RDFNode) pattern[2],
+                        offset, limit).getTriples().listStatements().toList();
+                if (page.isEmpty()) {
+                    break;
+                }
+                Collections.sort(page, comparator);
+                statements.addAll(page);
+            }
+            Assert.assertEquals(3 - (pattern[1] != null ? 1 : 0) - (pattern[2] != null ? 1 : 0), order.size());
+            for (int i = 1; i < statements.size(); i++) {
+                Assert.assertTrue(order + " " + statements.get(i),
+                        comparator.compare(statements.get(i - 1), statements.get(i)) <= 0);
+            }
+        }
+    }
+}
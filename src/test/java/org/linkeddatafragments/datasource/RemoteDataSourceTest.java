@@ -0,0 +1,196 @@
+package test.java.org.linkeddatafragments.datasource;
+
+import com.google.gson.JsonObject;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.linkeddatafragments.datasource.DataSourceFactory;
+import org.linkeddatafragments.datasource.IDataSource;
+import org.linkeddatafragments.datasource.RemoteDataSource;
+import org.linkeddatafragments.datasource.TriplePatternFragment;
+import org.linkeddatafragments.exceptions.FragmentTimeoutException;
+
+/**
+ * Runs the remote datasource against an in-process stand-in TPF server.
+ *
+ * @author Bart Hanssens
+ */
+public class RemoteDataSourceTest {
+    private static Server server;
+    private static String url;
+    private static IDataSource remote;
+    private static File cache;
+
+    private final static AtomicInteger HITS = new AtomicInteger();
+    private final static String PREFIX = "http://test.ldf.org/";
+    private final static int TOTAL = 250;
+
+    /**
+     * Serves pages of 100 triples of the same fragment for every request;
+     * every 50th triple uses the VoID vocabulary, as data
+     */
+    public static class StandInServlet extends HttpServlet {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+            HITS.incrementAndGet();
+            if (request.getRequestURI().endsWith("/slow")) {
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            String page = request.getParameter("page");
+            int start = (page == null ? 0 : Integer.parseInt(page) - 1) * 100;
+            StringBuilder data = new StringBuilder();
+            for (int i = start; i < Math.min(start + 100, TOTAL); i++) {
+                data.append(i % 50 == 0
+                        ? "<" + PREFIX + "s/" + i + "> void:triples " + i + " .\n"
+                        : "<" + PREFIX + "s/" + i + "> <" + PREFIX + "knows> <" + PREFIX + "o/" + i + "> .\n");
+            }
+            // the stand-in names its fragments differently from the request
+            String fragment = "http://localhost/test?" + request.getQueryString();
+            response.setContentType("text/turtle");
+            response.getWriter().write(
+                "@prefix hydra: <http://www.w3.org/ns/hydra/core#> .\n"
+                + "@prefix void: <http://rdfs.org/ns/void#> .\n"
+                + data
+                + "<http://localhost/test#dataset> void:subset <" + fragment + "> ;\n"
+                + "    hydra:search [ hydra:template \"http://localhost/test{?s,p,o}\" ;\n"
+                + "                   hydra:mapping [ hydra:variable \"subject\" ] ] .\n"
+                + "<" + fragment + "> void:triples " + TOTAL + " ; hydra:totalItems " + TOTAL + " ;\n"
+                + "    hydra:itemsPerPage 100 .\n");
+        }
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        server = new Server(0);
+        ServletHandler handler = new ServletHandler();
+        handler.addServletWithMapping(new ServletHolder(new StandInServlet()), "/*");
+        server.setHandler(handler);
+        server.start();
+        url = "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+
+        cache = new File(System.getProperty("java.io.tmpdir"), "ldf-remote-test");
+
+        JsonObject config = new JsonObject();
+        config.addProperty("title", "remote test");
+        config.addProperty("description", "remote test");
+        config.addProperty("type", DataSourceFactory.REMOTE);
+
+        JsonObject settings = new JsonObject();
+        settings.addProperty("url", url + "/test");
+        settings.addProperty("cacheDirectory", cache.getAbsolutePath());
+        config.add("settings", settings);
+
+        remote = DataSourceFactory.create(config);
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        server.stop();
+        File[] files = cache.listFiles();
+        for (File f : files) {
+            f.delete();
+        }
+        cache.delete();
+    }
+
+    /**
+     * Check if a page holds exactly the triples at its offsets.
+     *
+     * @param triples the triples of the page
+     * @param offset the triple index at which the page starts
+     * @param limit the number of triples on the page
+     */
+    private static void checkPage(Model triples, long offset, long limit) {
+        Assert.assertEquals(Math.min(limit, TOTAL - offset), triples.size());
+        for (long i = offset; i < Math.min(offset + limit, TOTAL); i++) {
+            Assert.assertTrue(String.valueOf(i),
+                    triples.containsResource(ResourceFactory.createResource(PREFIX + "s/" + i)));
+        }
+    }
+
+    /**
+     * Check if metadata of the upstream server is stripped from the data,
+     * but data in the same vocabulary is kept.
+     */
+    @Test
+    public void testFragment() {
+        Property pred = ResourceFactory.createProperty(PREFIX + "knows");
+        TriplePatternFragment fragment = remote.getFragment(null, pred, null, 0, 100);
+
+        checkPage(fragment.getTriples(), 0, 100);
+        Assert.assertEquals(TOTAL, fragment.getTotalSize());
+    }
+
+    /**
+     * Check if pages that do not match upstream pages are cut from them.
+     */
+    @Test
+    public void testSlice() {
+        Property pred = ResourceFactory.createProperty(PREFIX + "sees");
+        long[][] pages = { { 0, 1 }, { 150, 7 }, { 95, 10 }, { 190, 100 }, { 245, 7 } };
+        for (long[] page : pages) {
+            checkPage(remote.getFragment(null, pred, null, page[0], page[1]).getTriples(), page[0], page[1]);
+        }
+    }
+
+    /**
+     * Check if a repeated request is served from the cache.
+     */
+    @Test
+    public void testCache() {
+        Property pred = ResourceFactory.createProperty(PREFIX + "likes");
+        int before = HITS.get();
+        remote.getFragment(null, pred, null, 100, 100);
+        TriplePatternFragment fragment = remote.getFragment(null, pred, null, 100, 100);
+
+        Assert.assertEquals(before + 1, HITS.get());
+        checkPage(fragment.getTriples(), 100, 100);
+    }
+
+    /**
+     * Check if the cache stays within its size.
+     */
+    @Test
+    public void testCacheSize() {
+        File small = new File(System.getProperty("java.io.tmpdir"), "ldf-remote-test-small");
+        RemoteDataSource source = new RemoteDataSource("remote test", "remote test", url + "/test", 100,
+                small, 3600, 1, 2);
+        Property pred = ResourceFactory.createProperty(PREFIX + "hates");
+        source.getFragment(null, pred, null, 0, 100);
+        source.getFragment(null, pred, null, 100, 100);
+        Assert.assertEquals(0, small.listFiles().length);
+        small.delete();
+    }
+
+    /**
+     * Check if a slow upstream server does not hold the request beyond
+     * its time budget.
+     */
+    @Test(expected = FragmentTimeoutException.class)
+    public void testTimeout() {
+        RemoteDataSource source = new RemoteDataSource("remote test", "remote test", url + "/slow", 100,
+                null, 3600, 0, 2);
+        source.setTimeout(200);
+        source.getFragment(null, null, null, 0, 100);
+    }
+}
@@ -0,0 +1,145 @@
+package test.java.org.linkeddatafragments.datasource;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Statement;
+import java.io.File;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.linkeddatafragments.datasource.DataSourceFactory;
+import org.linkeddatafragments.datasource.IDataSource;
+import org.linkeddatafragments.datasource.ShardedHdtDataSource;
+import org.linkeddatafragments.datasource.TriplePatternFragment;
+import org.linkeddatafragments.exceptions.FragmentTimeoutException;
+
+/**
+ *
+ * @author Bart Hanssens
+ */
+public class ShardedHdtDataSourceTest {
+    private Model model;
+    private HdtFixture fixture;
+    private IDataSource source;
+
+    @Before
+    public void setUp() throws Exception {
+        model = HdtFixture.generate(40, 5, 40, true);
+        fixture = new HdtFixture("ldf-sharded-test");
+
+        // the subjects are spread over the shards
+        Model[] shards = { ModelFactory.createDefaultModel(), ModelFactory.createDefaultModel() };
+        for (Statement statement : model.listStatements().toList()) {
+            shards[Math.abs(statement.getSubject().getURI().hashCode()) % 2].add(statement);
+        }
+        source = create(shards, "shard");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fixture.delete();
+    }
+
+    /**
+     * Creates a sharded data source.
+     *
+     * @param shards the data of every shard
+     * @param name prefix of the names of the HDT files
+     * @return the data source
+     */
+    private IDataSource create(Model[] shards, String name) throws Exception {
+        JsonArray files = new JsonArray();
+        for (int i = 0; i < shards.length; i++) {
+            files.add(fixture.writeHdt(shards[i], name + i).getAbsolutePath());
+        }
+
+        JsonObject config = new JsonObject();
+        config.addProperty("title", "sharded test");
+        config.addProperty("description", "sharded test");
+        config.addProperty("type", DataSourceFactory.HDT_SHARDED);
+        JsonObject settings = new JsonObject();
+        settings.add("files", files);
+        config.add("settings", settings);
+        return DataSourceFactory.create(config);
+    }
+
+    @Test
+    public void testSequential() throws Exception {
+        HdtFixture.checkSequential(source, model);
+    }
+
+    @Test
+    public void testTotal() throws Exception {
+        Assert.assertEquals(model.size(), source.getFragment(null, null, null, 0, 10).getTotalSize());
+    }
+
+    @Test
+    public void testDuplicates() throws Exception {
+        // the second shard has all triples, the first one every other subject
+        Model first = ModelFactory.createDefaultModel();
+        for (Statement statement : model.listStatements().toList()) {
+            if (statement.getSubject().getURI().hashCode() % 2 == 0) {
+                first.add(statement);
+            }
+        }
+        IDataSource overlapping = create(new Model[] { first, model }, "overlap");
+
+        // every triple is on exactly one page
+        long limit = 7;
+        long triples = 0;
+        Model actual = ModelFactory.createDefaultModel();
+        for (long offset = 0; offset < first.size() + model.size(); offset += limit) {
+            Model page = overlapping.getFragment(null, null, null, offset, limit).getTriples();
+            triples += page.size();
+            actual.add(page);
+        }
+        Assert.assertEquals(model.size(), triples);
+        Assert.assertTrue(model.isIsomorphicWith(actual));
+        Assert.assertEquals(first.size() + model.size(),
+                overlapping.getFragment(null, null, null, 0, limit).getTotalSize());
+    }
+
+    @Test
+    public void testCountDeadline() throws Exception {
+        // a data source that is out of time until told otherwise
+        final boolean[] expired = { true };
+        ShardedHdtDataSource sharded = new ShardedHdtDataSource("sharded test", "sharded test",
+                Arrays.asList(new File(fixture.getDirectory(), "shard0.hdt").getAbsolutePath(),
+                        new File(fixture.getDirectory(), "shard1.hdt").getAbsolutePath()), 2) {
+            @Override
+            protected long getDeadline() {
+                return expired[0] ? 1 : super.getDeadline();
+            }
+        };
+        // ?P? patterns are not counted by the index, and pages are never
+        // cut at estimated counts
+        Property p2 = model.createProperty(HdtFixture.PREFIX + "p/2");
+        try {
+            sharded.getFragment(null, p2, null, 0, 7);
+            Assert.fail("expected a timeout");
+        } catch (FragmentTimeoutException ex) {
+            // no page instead of a wrong one
+        }
+
+        expired[0] = false;
+        Model expected = ModelFactory.createDefaultModel().add(model.listStatements(null, p2, (RDFNode) null));
+        Model actual = ModelFactory.createDefaultModel();
+        long triples = 0;
+        long limit = 7;
+        for (long offset = 0; offset < expected.size() + limit; offset += limit) {
+            TriplePatternFragment fragment = sharded.getFragment(null, p2, null, offset, limit);
+            Assert.assertEquals(expected.size(), fragment.getTotalSize());
+            Assert.assertTrue(fragment.isComplete());
+            triples += fragment.getTriples().size();
+            actual.add(fragment.getTriples());
+        }
+        Assert.assertEquals(expected.size(), triples);
+        Assert.assertTrue(expected.isIsomorphicWith(actual));
+    }
+}
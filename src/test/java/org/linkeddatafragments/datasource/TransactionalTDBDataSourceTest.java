@@ -0,0 +1,115 @@
+package test.java.org.linkeddatafragments.datasource;
+
+import com.google.gson.JsonObject;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+import com.hp.hpl.jena.tdb.StoreConnection;
+import com.hp.hpl.jena.tdb.base.file.Location;
+import java.io.File;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.linkeddatafragments.datasource.DataSourceFactory;
+import org.linkeddatafragments.datasource.IDataSource;
+import org.linkeddatafragments.datasource.IPatchDataSource;
+import org.linkeddatafragments.datasource.TriplePatternFragment;
+
+/**
+ *
+ * @author Bart Hanssens
+ */
+public class TransactionalTDBDataSourceTest {
+    private final static String PREFIX = "http://test.ldf.org/";
+
+    private File directory;
+    private IDataSource tdb;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("ldf-tdb-test").toFile();
+
+        JsonObject config = new JsonObject();
+        config.addProperty("title", "tdb test");
+        config.addProperty("description", "transactional tdb test");
+        config.addProperty("type", DataSourceFactory.JENA_TDB);
+        JsonObject settings = new JsonObject();
+        settings.addProperty("directory", directory.getAbsolutePath());
+        settings.addProperty("transactional", true);
+        config.add("settings", settings);
+        tdb = DataSourceFactory.create(config);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        StoreConnection.release(Location.create(directory.getAbsolutePath()));
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    /**
+     * Creates a patch adding or deleting triples of a subject.
+     *
+     * @param operation "A" or "D"
+     * @param subject number of the subject
+     * @param from number of the first object
+     * @param count number of triples
+     * @return the patch
+     */
+    private static String patch(String operation, int subject, int from, int count) {
+        StringBuilder patch = new StringBuilder();
+        for (int o = from; o < from + count; o++) {
+            patch.append(operation).append(" <").append(PREFIX).append("s/").append(subject).append("> <")
+                    .append(PREFIX).append("p> <").append(PREFIX).append("o/").append(o).append("> .\n");
+        }
+        return patch.toString();
+    }
+
+    @Test
+    public void testPatch() throws Exception {
+        Resource subj = ResourceFactory.createResource(PREFIX + "s/1");
+        ((IPatchDataSource) tdb).applyPatch(new StringReader(patch("A", 1, 0, 50)));
+        Assert.assertEquals(50, tdb.getFragment(subj, null, null, 0, 100).getTriples().size());
+        Assert.assertTrue(((IPatchDataSource) tdb).getModified() > 0);
+
+        ((IPatchDataSource) tdb).applyPatch(new StringReader(patch("D", 1, 0, 20)));
+        TriplePatternFragment fragment = tdb.getFragment(subj, null, null, 0, 100);
+        Assert.assertEquals(30, fragment.getTriples().size());
+        Assert.assertEquals(30, fragment.getTotalSize());
+    }
+
+    /**
+     * Check that readers see whole patches, with counts of the same data.
+     */
+    @Test
+    public void testConcurrentReads() throws Exception {
+        final Resource subj = ResourceFactory.createResource(PREFIX + "s/2");
+        final Property pred = ResourceFactory.createProperty(PREFIX + "p");
+        final AtomicReference<String> failure = new AtomicReference<>();
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 200 && failure.get() == null; i++) {
+                    TriplePatternFragment fragment = tdb.getFragment(subj, pred, null, 0, 1000);
+                    long size = fragment.getTriples().size();
+                    if (size % 10 != 0 || (size > 0 && fragment.getTotalSize() != size)) {
+                        failure.set(size + " triples, total " + fragment.getTotalSize());
+                    }
+                }
+            }
+        };
+        reader.start();
+        for (int i = 0; i < 20; i++) {
+            ((IPatchDataSource) tdb).applyPatch(new StringReader(patch("A", 2, 10 * i, 10)));
+        }
+        reader.join();
+        Assert.assertNull(failure.get());
+        Assert.assertEquals(200, tdb.getFragment(subj, pred, null, 0, 1000).getTriples().size());
+    }
+}
@@ -0,0 +1,177 @@
+package test.java.org.linkeddatafragments.datasource;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.Statement;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.linkeddatafragments.datasource.DataSourceFactory;
+import org.linkeddatafragments.datasource.IVersionedDataSource;
+import org.linkeddatafragments.datasource.TriplePatternFragment;
+
+/**
+ *
+ * @author Bart Hanssens
+ */
+public class VersionedHdtDataSourceTest {
+    private final static String PREFIX = HdtFixture.PREFIX;
+
+    private HdtFixture fixture;
+    private File hdtFile;
+    // expected model of every version, in order
+    private final Map<String, Model> versions = new LinkedHashMap<>();
+
+    @Before
+    public void setUp() throws Exception {
+        Model model = HdtFixture.generate(30, 5, 30, true);
+        fixture = new HdtFixture("ldf-versioned-test");
+        hdtFile = fixture.writeHdt(model, "data");
+        versions.put("2016-01", model);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fixture.delete();
+    }
+
+    /**
+     * Write the patch of a new version, and keep its expected model.
+     *
+     * @param name name of the version
+     * @param additions statements to add
+     * @param deletions statements to delete
+     * @return the version settings
+     */
+    private JsonObject version(String name, Model additions, Model deletions) throws Exception {
+        File patchFile = new File(fixture.getDirectory(), name + ".patch");
+        try (Writer patch = new OutputStreamWriter(new FileOutputStream(patchFile), StandardCharsets.UTF_8)) {
+            for (String[] change : new String[][] { { "A ", toNTriples(additions) }, { "D ", toNTriples(deletions) } }) {
+                for (String line : change[1].split("\n")) {
+                    if (!line.isEmpty()) {
+                        patch.write(change[0] + line + "\n");
+                    }
+                }
+            }
+        }
+        Model previous = null;
+        for (Model model : versions.values()) {
+            previous = model;
+        }
+        versions.put(name, ModelFactory.createDefaultModel().add(previous).add(additions).remove(deletions));
+
+        JsonObject version = new JsonObject();
+        version.addProperty("name", name);
+        version.addProperty("patch", patchFile.getAbsolutePath());
+        return version;
+    }
+
+    private static String toNTriples(Model model) {
+        StringWriter writer = new StringWriter();
+        RDFDataMgr.write(writer, model, Lang.NTRIPLES);
+        return writer.toString();
+    }
+
+    private IVersionedDataSource create(JsonArray patches) throws Exception {
+        JsonObject config = new JsonObject();
+        config.addProperty("title", "versioned test");
+        config.addProperty("description", "versioned test");
+        config.addProperty("type", DataSourceFactory.HDT_VERSIONED);
+        JsonObject settings = new JsonObject();
+        settings.addProperty("file", hdtFile.getAbsolutePath());
+        settings.addProperty("baseVersion", "2016-01");
+        settings.add("versions", patches);
+        config.add("settings", settings);
+        return (IVersionedDataSource) DataSourceFactory.create(config);
+    }
+
+    /**
+     * Check every kind of pattern against the model of a version, page by page.
+     *
+     * @param source the data source
+     * @param version name of the version
+     */
+    private void checkPatterns(IVersionedDataSource source, String version) {
+        Model model = versions.get(version);
+        String[] subjs = { null, PREFIX + "s/3", PREFIX + "new" };
+        String[] preds = { null, PREFIX + "p/2" };
+        String[] objs = { null, PREFIX + "s/0", PREFIX + "s/12" };
+
+        for (String s : subjs) {
+            for (String p : preds) {
+                for (String o : objs) {
+                    Model expected = ModelFactory.createDefaultModel().add(model.listStatements(
+                            s == null ? null : model.createResource(s),
+                            p == null ? null : model.createProperty(p),
+                            o == null ? null : model.createResource(o)));
+                    Model actual = ModelFactory.createDefaultModel();
+                    long limit = 7;
+                    for (long offset = 0; offset < expected.size() + limit; offset += limit) {
+                        TriplePatternFragment fragment = source.getVersionFragment(version, s, p, o, offset, limit);
+                        Assert.assertTrue(fragment.getTriples().size() <= limit);
+                        actual.add(fragment.getTriples());
+                        if (fragment.getTriples().size() == limit) {
+                            Assert.assertTrue(fragment.getTotalSize() >= offset + limit);
+                        }
+                    }
+                    Assert.assertTrue(version + " " + s + " " + p + " " + o, expected.isIsomorphicWith(actual));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testVersions() throws Exception {
+        Model base = versions.get("2016-01");
+        Resource s3 = base.createResource(PREFIX + "s/3");
+        Property p2 = base.createProperty(PREFIX + "p/2");
+
+        Model additions = ModelFactory.createDefaultModel();
+        Resource added = additions.createResource(PREFIX + "new");
+        additions.add(added, p2, base.createResource(PREFIX + "s/0"));
+        additions.add(added, additions.createProperty(PREFIX + "name"), "new \"quoted\"");
+        additions.add(s3, p2, base.createResource(PREFIX + "s/12"));
+        Model deletions = ModelFactory.createDefaultModel();
+        for (Statement statement : base.listStatements(s3, null, (RDFNode) null).toList()) {
+            if (statement.getObject().isURIResource()) {
+                deletions.add(statement);
+            }
+        }
+        deletions.add(base.listStatements(null, p2, base.createResource(PREFIX + "s/0")).toList().get(0));
+        JsonArray patches = new JsonArray();
+        patches.add(version("2016-02", additions, deletions));
+
+        // restore part of the base version, and remove part of the previous one
+        Model restored = ModelFactory.createDefaultModel().add(deletions.listStatements().toList().get(0));
+        Model removed = ModelFactory.createDefaultModel().add(additions.listStatements(added, p2, (RDFNode) null));
+        patches.add(version("2016-03", restored, removed));
+
+        IVersionedDataSource source = create(patches);
+        Assert.assertEquals(Arrays.asList("2016-01", "2016-02", "2016-03"), source.getVersions());
+        for (String version : versions.keySet()) {
+            checkPatterns(source, version);
+        }
+        Assert.assertNull(source.getVersionFragment("2015-12", null, null, null, 0, 10));
+
+        // fragments without a version are of the latest one
+        Model latest = versions.get("2016-03");
+        Assert.assertTrue(latest.isIsomorphicWith(source.getFragment(null, null, null, 0, latest.size()).getTriples()));
+    }
+}
@@ -0,0 +1,241 @@
+package test.java.org.linkeddatafragments.sparql;
+
+import com.google.gson.JsonObject;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.linkeddatafragments.datasource.DataSourceFactory;
+import org.linkeddatafragments.datasource.IDataSource;
+import org.linkeddatafragments.datasource.TriplePatternFragment;
+import org.linkeddatafragments.datasource.TriplePatternFragmentBase;
+import org.linkeddatafragments.exceptions.FragmentTimeoutException;
+import org.linkeddatafragments.sparql.BgpQuery;
+import org.linkeddatafragments.sparql.PlanState;
+import org.linkeddatafragments.sparql.PreemptableExecutor;
+
+/**
+ *
+ * @author Bart Hanssens
+ */
+public class PreemptableExecutorTest {
+    private static Model model;
+    private static File rdf;
+    private static IDataSource source;
+
+    private final static String PREFIX = "http://test.ldf.org/";
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        model = ModelFactory.createDefaultModel();
+        for (int s = 0; s < 30; s++) {
+            Resource subj = model.createResource(PREFIX + "s/" + s);
+            for (int p = 0; p < 3; p++) {
+                Property pred = model.createProperty(PREFIX + "p/" + p);
+                for (int o = 0; o < (s + p) % 4; o++) {
+                    model.add(subj, pred, model.createResource(PREFIX + "s/" + (s * o + p) % 30));
+                }
+            }
+            model.add(subj, model.createProperty(PREFIX + "name"), "subject " + s, "en");
+        }
+
+        rdf = File.createTempFile("ldf-sparql-test", ".nt");
+        try (OutputStream out = new FileOutputStream(rdf)) {
+            RDFDataMgr.write(out, model, Lang.NTRIPLES);
+        }
+        JsonObject config = new JsonObject();
+        config.addProperty("title", "sparql test");
+        config.addProperty("description", "sparql test");
+        config.addProperty("type", DataSourceFactory.MEMORY);
+        JsonObject settings = new JsonObject();
+        settings.addProperty("file", rdf.getAbsolutePath());
+        config.add("settings", settings);
+        source = DataSourceFactory.create(config);
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        rdf.delete();
+    }
+
+    /**
+     * Evaluates a query with preemption after every quantum, passing the
+     * state through a token as a client would.
+     *
+     * @param sparql the query
+     * @param quantum the time quantum in milliseconds
+     * @return the solutions, one string per solution
+     */
+    private static List<String> evaluate(String sparql, long quantum) throws Exception {
+        return evaluate(source, sparql, quantum);
+    }
+
+    /**
+     * Evaluates a query over a data source with preemption after every
+     * quantum, passing the state through a token as a client would.
+     *
+     * @param dataSource the data source
+     * @param sparql the query
+     * @param quantum the time quantum in milliseconds
+     * @return the solutions, one string per solution
+     */
+    private static List<String> evaluate(IDataSource dataSource, String sparql, long quantum) throws Exception {
+        final BgpQuery query = BgpQuery.parse(sparql);
+        PreemptableExecutor executor = new PreemptableExecutor(dataSource, query);
+        final List<String> solutions = new ArrayList<>();
+        PlanState state = executor.plan();
+        while (state != null) {
+            state = executor.execute(state, quantum, new PreemptableExecutor.SolutionHandler() {
+                @Override
+                public void solution(Node[] bindings) {
+                    solutions.add(Arrays.toString(query.project(bindings)));
+                }
+            });
+            if (state != null) {
+                state = PlanState.fromToken(state.toToken(), query.getPatterns().length);
+            }
+        }
+        return solutions;
+    }
+
+    /**
+     * Evaluates a query with Jena.
+     *
+     * @param sparql the query
+     * @return the solutions, one string per solution
+     */
+    private static List<String> expect(String sparql) {
+        List<String> solutions = new ArrayList<>();
+        try (QueryExecution execution = QueryExecutionFactory.create(sparql, model)) {
+            ResultSet results = execution.execSelect();
+            while (results.hasNext()) {
+                QuerySolution solution = results.next();
+                Node[] values = new Node[results.getResultVars().size()];
+                for (int i = 0; i < values.length; i++) {
+                    RDFNode value = solution.get(results.getResultVars().get(i));
+                    values[i] = value == null ? null : value.asNode();
+                }
+                solutions.add(Arrays.toString(values));
+            }
+        }
+        return solutions;
+    }
+
+    private static void check(String sparql) throws Exception {
+        List<String> expected = expect(sparql);
+        for (long quantum : new long[] { 0, 1000 }) {
+            List<String> actual = evaluate(sparql, quantum);
+            Collections.sort(expected);
+            Collections.sort(actual);
+            Assert.assertEquals(sparql, expected, actual);
+        }
+    }
+
+    @Test
+    public void testJoins() throws Exception {
+        String prefix = "PREFIX ex: <" + PREFIX + "> PREFIX p: <" + PREFIX + "p/> ";
+        check(prefix + "SELECT * WHERE { ?s p:0 ?o }");
+        check(prefix + "SELECT ?s ?n WHERE { ?s p:1 ?o . ?o p:2 ?x . ?x ex:name ?n }");
+        check(prefix + "SELECT * WHERE { ?s p:1 ?o . ?s p:2 ?o }");
+        check(prefix + "SELECT * WHERE { ?s ?p ?s }");
+        check(prefix + "SELECT ?n WHERE { <" + PREFIX + "s/3> ?p ?o . ?o ex:name ?n }");
+        check(prefix + "SELECT * WHERE { ?s p:0 <" + PREFIX + "unknown> . ?s ?p ?o }");
+        check(prefix + "SELECT * WHERE { ?s ex:name ?n . ?o p:0 ?s }");
+    }
+
+    @Test
+    public void testLimit() throws Exception {
+        String query = "SELECT * WHERE { ?s <" + PREFIX + "p/1> ?o . ?o ?p ?x }";
+        List<String> all = evaluate(query, 1000);
+        Assert.assertEquals(expect(query).size(), all.size());
+        Assert.assertEquals(all.subList(10, 15), evaluate(query + " LIMIT 5 OFFSET 10", 0));
+        Assert.assertEquals(0, evaluate(query + " LIMIT 0", 0).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedQuery() throws Exception {
+        BgpQuery.parse("SELECT ?s WHERE { ?s ?p ?o FILTER(?o > 3) }");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidToken() throws Exception {
+        PlanState.fromToken(new PlanState(new int[] { 0, 0 }, new long[] { 0 }, 0).toToken(), 2);
+    }
+
+    /**
+     * Check that pages with fewer triples than requested do not end a scan,
+     * like pages of which duplicate triples were merged.
+     */
+    @Test
+    public void testShortPages() throws Exception {
+        // every triple is listed twice, but only kept once on a page
+        IDataSource doubled = new IDataSource() {
+            @Override
+            public TriplePatternFragment getFragment(Resource subject, Property predicate, RDFNode object,
+                    long offset, long limit) {
+                long start = offset / 2;
+                long end = (offset + limit + 1) / 2;
+                TriplePatternFragment fragment = source.getFragment(subject, predicate, object, start, end - start);
+                return new TriplePatternFragmentBase(fragment.getTriples(), 2 * fragment.getTotalSize());
+            }
+
+            @Override
+            public String getTitle() {
+                return source.getTitle();
+            }
+
+            @Override
+            public String getDescription() {
+                return source.getDescription();
+            }
+        };
+        String query = "SELECT * WHERE { ?s ?p ?o . ?o <" + PREFIX + "p/1> ?x }";
+        List<String> expected = expect(query);
+        List<String> actual = evaluate(doubled, query, 1000);
+        Collections.sort(expected);
+        Collections.sort(actual);
+        Assert.assertEquals(expected, actual);
+    }
+
+    @Test(expected = FragmentTimeoutException.class)
+    public void testIncompletePage() throws Exception {
+        // a data source that runs out of time before finding any triple
+        IDataSource degraded = new IDataSource() {
+            @Override
+            public TriplePatternFragment getFragment(Resource subject, Property predicate, RDFNode object,
+                    long offset, long limit) {
+                return new TriplePatternFragmentBase(null, 1000, false);
+            }
+
+            @Override
+            public String getTitle() {
+                return source.getTitle();
+            }
+
+            @Override
+            public String getDescription() {
+                return source.getDescription();
+            }
+        };
+        evaluate(degraded, "SELECT * WHERE { ?s ?p ?o }", 1000);
+    }
+}
@@ -0,0 +1,71 @@
+package test.java.org.linkeddatafragments.util;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.Assert;
+import org.junit.Test;
+import org.linkeddatafragments.util.CommonResources;
+import org.linkeddatafragments.util.JsonLdWriter;
+
+/**
+ *
+ * @author Bart Hanssens
+ */
+public class JsonLdWriterTest {
+    private final static String PREFIX = "http://test.ldf.org/";
+
+    /**
+     * Writes a model as JSON-LD, and reads it back with Jena.
+     *
+     * @param model the model
+     * @param prefixes the prefixes
+     * @return the model read back
+     */
+    private static Model roundTrip(Model model, Map<String, String> prefixes) throws Exception {
+        StringWriter writer = new StringWriter();
+        new JsonLdWriter(prefixes).write(writer, model);
+        Model read = ModelFactory.createDefaultModel();
+        RDFDataMgr.read(read, new StringReader(writer.toString()), null, Lang.JSONLD);
+        return read;
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Model model = ModelFactory.createDefaultModel();
+        Resource subj = model.createResource(PREFIX + "s/1");
+        Property name = model.createProperty(PREFIX + "name");
+        subj.addProperty(CommonResources.RDF_TYPE, model.createResource(PREFIX + "Thing"));
+        subj.addProperty(CommonResources.RDF_TYPE, model.createResource("http://other.org/Thing"));
+        subj.addProperty(name, "plain \"quoted\"\n");
+        subj.addProperty(name, "tagged", "en");
+        subj.addLiteral(model.createProperty(PREFIX + "number"), model.createTypedLiteral("42", XSDDatatype.XSDinteger));
+        subj.addProperty(model.createProperty(PREFIX + "link"), model.createResource(PREFIX + "s/2"));
+        Resource blank = model.createResource();
+        subj.addProperty(model.createProperty(PREFIX + "blank"), blank);
+        blank.addProperty(name, "inside");
+        blank.addProperty(model.createProperty(PREFIX + "link"), model.createResource(PREFIX + "//slashes"));
+        model.add(model.createResource(PREFIX + "s/3"), model.createProperty("http://other.org/p"), "other");
+
+        Map<String, String> prefixes = new HashMap<>();
+        prefixes.put("ex", PREFIX);
+        prefixes.put("s", PREFIX + "s/");
+        prefixes.put("xsd", "http://www.w3.org/2001/XMLSchema#");
+        Assert.assertTrue(model.isIsomorphicWith(roundTrip(model, prefixes)));
+        Assert.assertTrue(model.isIsomorphicWith(roundTrip(model, new HashMap<String, String>())));
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        Model model = ModelFactory.createDefaultModel();
+        Assert.assertTrue(roundTrip(model, new HashMap<String, String>()).isEmpty());
+    }
+}
@@ -0,0 +1,152 @@
+package test.java.org.linkeddatafragments.util;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.linkeddatafragments.util.ResponseCache;
+
+/**
+ *
+ * @author Bart Hanssens
+ */
+public class ResponseCacheTest {
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("ldf-cache-test").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private static ResponseCache.Response response(int i) {
+        byte[] body = ("<s> <p> \"" + i + "\" .\n").getBytes(StandardCharsets.UTF_8);
+        return new ResponseCache.Response("text/turtle", body);
+    }
+
+    private static void assertResponse(int i, ResponseCache.Response actual) {
+        Assert.assertNotNull("response " + i, actual);
+        Assert.assertEquals("text/turtle", actual.getContentType());
+        Assert.assertArrayEquals(response(i).getBody(), actual.getBody());
+    }
+
+    @Test
+    public void testRestart() throws Exception {
+        try (ResponseCache cache = new ResponseCache(1024, directory, 1 << 20, 4096, 0)) {
+            for (int i = 0; i < 2000; i++) {
+                cache.put("key" + i, response(i));
+            }
+            assertResponse(1999, cache.get("key1999"));
+            Assert.assertNull(cache.get("unknown"));
+        }
+        // only the disk tier is left after a restart
+        try (ResponseCache cache = new ResponseCache(1024, directory, 1 << 20, 4096, 0)) {
+            for (int i = 0; i < 2000; i++) {
+                assertResponse(i, cache.get("key" + i));
+            }
+            cache.put("key0", response(1));
+            assertResponse(1, cache.get("key0"));
+        }
+    }
+
+    @Test
+    public void testDiskSize() throws Exception {
+        try (ResponseCache cache = new ResponseCache(0, directory, 4 * 4096, 4096, 0)) {
+            for (int i = 0; i < 2000; i++) {
+                cache.put("key" + i, response(i));
+            }
+            Assert.assertTrue(directory.listFiles().length <= 4);
+            Assert.assertNull(cache.get("key0"));
+            assertResponse(1999, cache.get("key1999"));
+        }
+    }
+
+    @Test
+    public void testMaxAge() throws Exception {
+        try (ResponseCache cache = new ResponseCache(0, directory, 1 << 20, 4096, 1)) {
+            cache.put("key", response(0));
+            Thread.sleep(10);
+            Assert.assertNull(cache.get("key"));
+        }
+    }
+
+    @Test
+    public void testMemoryMaxAge() throws Exception {
+        try (ResponseCache cache = new ResponseCache(1024, null, 0, 0, 1)) {
+            cache.put("key", response(0));
+            Thread.sleep(10);
+            Assert.assertNull(cache.get("key"));
+        }
+        try (ResponseCache cache = new ResponseCache(1024, null, 0, 0, 0)) {
+            cache.put("key", response(0));
+            Thread.sleep(10);
+            assertResponse(0, cache.get("key"));
+        }
+    }
+
+    @Test
+    public void testEntryMaxAge() throws Exception {
+        try (ResponseCache cache = new ResponseCache(1024, directory, 1 << 20, 4096, 0)) {
+            cache.put("short", response(0), 1);
+            cache.put("long", response(1));
+            Thread.sleep(10);
+            Assert.assertNull(cache.get("short"));
+            assertResponse(1, cache.get("long"));
+        }
+        // the age is kept on disk
+        try (ResponseCache cache = new ResponseCache(1024, directory, 1 << 20, 4096, 0)) {
+            Assert.assertNull(cache.get("short"));
+            assertResponse(1, cache.get("long"));
+        }
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        try (final ResponseCache cache = new ResponseCache(4096, directory, 1 << 20, 8192, 0)) {
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            List<Future<Void>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final int thread = t;
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (int i = thread; i < 2000; i += 4) {
+                            cache.put("key" + i, response(i));
+                            // read back responses of all threads
+                            for (int j = Math.max(0, i - 40); j <= i; j++) {
+                                ResponseCache.Response response = cache.get("key" + j);
+                                if (response != null || j % 4 == thread) {
+                                    assertResponse(j, response);
+                                }
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+            executor.shutdown();
+            for (int i = 0; i < 2000; i++) {
+                assertResponse(i, cache.get("key" + i));
+            }
+        }
+    }
+}
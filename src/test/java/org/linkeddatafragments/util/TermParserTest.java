@@ -0,0 +1,83 @@
+package test.java.org.linkeddatafragments.util;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.linkeddatafragments.util.CommonResources;
+import org.linkeddatafragments.util.TermParser;
+import org.rdfhdt.hdtjena.NodeDictionary;
+
+/**
+ *
+ * @author Bart Hanssens
+ */
+public class TermParserTest {
+    private static TermParser parser;
+
+    @BeforeClass
+    public static void setUpClass() {
+        Map<String, String> prefixes = new HashMap<>();
+        prefixes.put("rdf", CommonResources.RDF);
+        prefixes.put("xsd", "http://www.w3.org/2001/XMLSchema#");
+        parser = new TermParser(prefixes);
+    }
+
+    @Test
+    public void testUnknowns() {
+        Assert.assertNull(parser.parse(null));
+        Assert.assertNull(parser.parse(""));
+        Assert.assertNull(parser.parse("?s"));
+        Assert.assertNull(parser.parse("_:b0"));
+    }
+
+    @Test
+    public void testURIs() {
+        Node type = NodeFactory.createURI(CommonResources.RDF + "type");
+        Assert.assertEquals(type, parser.parse("<" + CommonResources.RDF + "type>"));
+        Assert.assertEquals(type, parser.parse(CommonResources.RDF + "type"));
+        Assert.assertEquals(type, parser.parse("rdf:type"));
+        Assert.assertEquals(NodeFactory.createURI("foo:bar"), parser.parse("foo:bar"));
+    }
+
+    @Test
+    public void testLiterals() {
+        Assert.assertEquals(NodeFactory.createLiteral("John"), parser.parse("\"John\""));
+        Assert.assertEquals(NodeFactory.createLiteral("John", "en", false),
+                parser.parse("\"John\"@en"));
+        Node one = NodeFactory.createLiteral("1", null, XSDDatatype.XSDinteger);
+        Assert.assertEquals(one, parser.parse("\"1\"^^<http://www.w3.org/2001/XMLSchema#integer>"));
+        Assert.assertEquals(one, parser.parse("\"1\"^^http://www.w3.org/2001/XMLSchema#integer"));
+        Assert.assertEquals(one, parser.parse("\"1\"^^xsd:integer"));
+    }
+
+    @Test
+    public void testEscapes() {
+        Assert.assertEquals(NodeFactory.createLiteral("say \"hi\"\n\u00E9\uD83D\uDE00"),
+                parser.parse("\"say \\\"hi\\\"\\n\\u00E9\\U0001F600\""));
+        Assert.assertEquals(NodeFactory.createLiteral("a \"b\" c"), parser.parse("\"a \"b\" c\""));
+    }
+
+    @Test
+    public void testInvalid() {
+        Assert.assertEquals(CommonResources.INVALID_URI.asNode(), parser.parse("\"John\"#en"));
+        Assert.assertEquals(CommonResources.INVALID_URI.asNode(), parser.parse("\""));
+    }
+
+    @Test
+    public void testStrings() {
+        Assert.assertNull(parser.parseAsString("?s"));
+        String[] values = { "rdf:type", "<" + CommonResources.RDF + "type>", "\"John\"",
+                            "\"John\"@en", "\"1\"^^xsd:integer" };
+        for (String value : values) {
+            Assert.assertEquals(NodeDictionary.nodeToStr(parser.parse(value)), parser.parseAsString(value));
+        }
+        // dictionaries generated by hdt-java keep the lexical form unescaped
+        Assert.assertEquals("\"say \"hi\"\n\"", parser.parseAsString("\"say \\\"hi\\\"\\n\""));
+        Assert.assertEquals(CommonResources.INVALID_URI.getURI(), parser.parseAsString("\"John\"#en"));
+    }
+}